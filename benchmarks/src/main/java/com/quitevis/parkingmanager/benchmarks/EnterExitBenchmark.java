@@ -0,0 +1,112 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A car entering and then exiting the lot, measured from the caller like a request handler would see it.
+ * <p>
+ * The threads are spread over the gates, so with fewer gates than threads the cars queue at the gates. In a
+ * saturated lot, every car is turned away at the entry gate, so the cost of a rejection is measured instead.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class EnterExitBenchmark {
+    private static final int FREE_CAPACITY = 1 << 20;
+    private static final int SATURATED_CAPACITY = 10000;
+
+    @Param({"1", "4", "16"})
+    public int gates;
+
+    @Param({"locking", "lockfree"})
+    public String admissionEngine;
+
+    @Param({"free", "saturated"})
+    public String lot;
+
+    private ParkingManager parkingManager;
+    private AtomicInteger nextGate;
+
+    @State(Scope.Thread)
+    public static class Car {
+        private int gate;
+        private VehicleRecord vehicleRecord;
+
+        @Setup(Level.Trial)
+        public void setUp(EnterExitBenchmark benchmark) {
+            gate = benchmark.nextGate.getAndIncrement() % benchmark.gates;
+            vehicleRecord = VehicleRecord.builder().vehicleId("CAR-" + UUID.randomUUID()).build();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ExecutionException, InterruptedException {
+        nextGate = new AtomicInteger();
+        if ("saturated".equals(lot)) {
+            parkingManager = Lots.create(admissionEngine, SATURATED_CAPACITY, gates);
+            Lots.fill(parkingManager, "PARKED-", SATURATED_CAPACITY);
+        } else {
+            parkingManager = Lots.create(admissionEngine, FREE_CAPACITY, gates);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parkingManager.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean throughput(Car car) throws InterruptedException {
+        return enterAndExit(car);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean latency(Car car) throws InterruptedException {
+        return enterAndExit(car);
+    }
+
+    /**
+     * Returns whether the car got in
+     */
+    private boolean enterAndExit(Car car) throws InterruptedException {
+        try {
+            parkingManager.enter(car.gate, car.vehicleRecord).get();
+        } catch (ExecutionException e) {
+            return false;
+        }
+
+        try {
+            parkingManager.exit(car.gate, car.vehicleRecord).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A parked car could not exit", e);
+        }
+
+        return true;
+    }
+}
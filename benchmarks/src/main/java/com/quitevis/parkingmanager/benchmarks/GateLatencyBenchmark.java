@@ -0,0 +1,114 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.quitevis.parkingmanager.metrics.LatencyHistogram;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import com.quitevis.parkingmanager.server.manager.ParkingManagerModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What the latency histograms of the gates cost: a LatencyHistogram update and a clock read on their own, and a car
+ * entering and exiting a lot with the instrumentation of the gates on (recorded) and off (disabled, which also turns
+ * off the flow history, like the lots hosted by a server of many lots).
+ * <p>
+ * All the threads update the same histogram, like the cars of a gate handled by different pool threads. Run with -t to
+ * measure it contended.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GateLatencyBenchmark {
+    private static final int CAPACITY = 1 << 20;
+    private static final int GATES = 4;
+
+    @State(Scope.Benchmark)
+    public static class Histogram {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+    }
+
+    @State(Scope.Thread)
+    public static class Latency {
+        private long seed = System.nanoTime();
+
+        /**
+         * Returns a value between 0 and about 1 ms, so that the updates are spread over the buckets like the latencies
+         * of real cars
+         */
+        private long next() {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return seed >>> 44;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lot {
+        @Param({"recorded", "disabled"})
+        public String latencies;
+
+        private ParkingManager parkingManager;
+        private AtomicInteger nextGate;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            parkingManager = Lots.create(ParkingManagerModule.ADMISSION_ENGINE_LOCK_FREE, CAPACITY, GATES,
+                    "recorded".equals(latencies));
+            nextGate = new AtomicInteger();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            parkingManager.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Car {
+        private int gate;
+        private VehicleRecord vehicleRecord;
+
+        @Setup(Level.Trial)
+        public void setUp(Lot lot) {
+            gate = lot.nextGate.getAndIncrement() % GATES;
+            vehicleRecord = VehicleRecord.builder().vehicleId("CAR-" + UUID.randomUUID()).build();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void record(Histogram histogram, Latency latency) {
+        histogram.histogram.record(latency.next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void enterAndExit(Lot lot, Car car) throws ExecutionException, InterruptedException {
+        lot.parkingManager.enter(car.gate, car.vehicleRecord).get();
+        lot.parkingManager.exit(car.gate, car.vehicleRecord).get();
+    }
+}
@@ -0,0 +1,127 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.journal.FileParkingJournal;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A car entering and then exiting a lot that keeps a journal, for each sync mode of the journal, to measure what
+ * durability costs. "none" is the same lot without a journal. The journal is written to a temporary directory, so
+ * the results depend on the disk behind java.io.tmpdir.
+ * <p>
+ * Every thread has its own gate, so the threads only meet in the admission engine and the journal. Run it with -t 1
+ * and -t 16 to see how the commits of concurrent gates share the forces.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class JournalBenchmark {
+    private static final int CAPACITY = 1 << 20;
+    private static final int GATES = 64;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    @Param({"none", "sync", "group", "async"})
+    public String journal;
+
+    @Param({"0"})
+    public long groupWindowMicros;
+
+    @Param({"lockfree"})
+    public String admissionEngine;
+
+    private Path directory;
+    private ParkingJournal parkingJournal;
+    private ParkingManager parkingManager;
+    private AtomicInteger nextGate;
+
+    @State(Scope.Thread)
+    public static class Car {
+        private int gate;
+        private VehicleRecord vehicleRecord;
+
+        @Setup(Level.Trial)
+        public void setUp(JournalBenchmark benchmark) {
+            gate = benchmark.nextGate.getAndIncrement() % GATES;
+            vehicleRecord = VehicleRecord.builder().vehicleId("CAR-" + UUID.randomUUID()).build();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        nextGate = new AtomicInteger();
+        if ("none".equals(journal)) {
+            parkingJournal = new NoOpParkingJournal();
+        } else {
+            directory = Files.createTempDirectory("journal-benchmark");
+            parkingJournal = new FileParkingJournal(directory,
+                    FileParkingJournal.SyncMode.valueOf(journal.toUpperCase()), groupWindowMicros, SEGMENT_BYTES);
+        }
+
+        parkingManager = Lots.create(admissionEngine, CAPACITY, GATES, parkingJournal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parkingManager.close();
+        parkingJournal.close();
+        if (directory != null) {
+            List<Path> paths;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            }
+
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput(Car car) throws ExecutionException, InterruptedException {
+        enterAndExit(car);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency(Car car) throws ExecutionException, InterruptedException {
+        enterAndExit(car);
+    }
+
+    private void enterAndExit(Car car) throws ExecutionException, InterruptedException {
+        parkingManager.enter(car.gate, car.vehicleRecord).get();
+        parkingManager.exit(car.gate, car.vehicleRecord).get();
+    }
+}
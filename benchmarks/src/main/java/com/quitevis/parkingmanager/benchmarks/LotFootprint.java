@@ -0,0 +1,64 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.LockFreeAdmissionEngine;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Measures the heap taken by an empty lot, as hosted by a server of many lots (see ParkingManager.createHosted) and as
+ * the single lot of a server, with its flow history and latency histograms. Many lots of each kind are created on a
+ * shared gate pool, and the heap used after a full GC is compared with the heap used before.
+ * <p>
+ * Not a JMH benchmark, JMH measures time: run it with
+ * java -cp benchmarks/target/benchmarks.jar com.quitevis.parkingmanager.benchmarks.LotFootprint [lots] [gates]
+ */
+public final class LotFootprint {
+    private static final ParkingLogger NO_LOGGING = (vehicleRecord, state) -> true;
+    private static final int CAPACITY = 100;
+
+    private LotFootprint() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int lots = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int gates = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        ExecutorService gatePool = ParkingManager.createGatePool(1);
+
+        for (boolean hosted : new boolean[] {true, false}) {
+            long before = usedHeap();
+            List<ParkingManager> parkingManagers = Lists.newArrayListWithCapacity(lots);
+            for (int x = 0; x < lots; ++x) {
+                parkingManagers.add(hosted
+                        ? ParkingManager.createHosted(gates, gates, new LockFreeAdmissionEngine(CAPACITY), NO_LOGGING,
+                                gatePool, Integer.MAX_VALUE, new NoOpParkingJournal(), Tariff.FREE)
+                        : new ParkingManager(gates, gates, new LockFreeAdmissionEngine(CAPACITY), NO_LOGGING,
+                                gatePool, Integer.MAX_VALUE, new NoOpParkingJournal()));
+            }
+
+            long after = usedHeap();
+            System.out.printf("%s lot, %d entry and %d exit gates: %,d bytes per lot%n",
+                    hosted ? "hosted" : "single", gates, gates, (after - before) / lots);
+            parkingManagers.forEach(ParkingManager::close);
+        }
+
+        gatePool.shutdown();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int x = 0; x < 5; ++x) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
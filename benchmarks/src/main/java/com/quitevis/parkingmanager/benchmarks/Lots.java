@@ -0,0 +1,78 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.AdmissionEngine;
+import com.quitevis.parkingmanager.server.manager.LockFreeAdmissionEngine;
+import com.quitevis.parkingmanager.server.manager.LockingAdmissionEngine;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import com.quitevis.parkingmanager.server.manager.ParkingManagerModule;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Builds the parking lots used by the benchmarks: no journal, unless one is given, and a logger that does nothing, so
+ * that only the gates and the admission engine are measured
+ */
+final class Lots {
+    private static final ParkingLogger NO_LOGGING = (vehicleRecord, state) -> true;
+    private static final int FILL_BATCH_SIZE = 1000;
+
+    private Lots() {
+    }
+
+    static ParkingManager create(String admissionEngine, int capacity, int gates) {
+        return create(admissionEngine, capacity, gates, new NoOpParkingJournal());
+    }
+
+    static ParkingManager create(String admissionEngine, int capacity, int gates, ParkingJournal parkingJournal) {
+        return new ParkingManager(gates, gates, createAdmissionEngine(admissionEngine, capacity), NO_LOGGING,
+                ParkingManager.createGatePool(Runtime.getRuntime().availableProcessors()), Integer.MAX_VALUE,
+                parkingJournal);
+    }
+
+    /**
+     * Creates a lot with the gate instrumentation (latency histograms and flow history) on, or off like the lots hosted
+     * by a server of many lots
+     */
+    static ParkingManager create(String admissionEngine, int capacity, int gates, boolean instrumented) {
+        if (instrumented) {
+            return create(admissionEngine, capacity, gates);
+        }
+
+        return ParkingManager.createHosted(gates, gates, createAdmissionEngine(admissionEngine, capacity), NO_LOGGING,
+                ParkingManager.createGatePool(Runtime.getRuntime().availableProcessors()), Integer.MAX_VALUE,
+                new NoOpParkingJournal(), Tariff.FREE);
+    }
+
+    /**
+     * Parks the given number of cars, named prefix + number, through gate 0
+     */
+    static void fill(ParkingManager parkingManager, String prefix, int count)
+            throws ExecutionException, InterruptedException {
+        for (int x = 0; x < count; x += FILL_BATCH_SIZE) {
+            List<VehicleRecord> batch = Lists.newArrayListWithCapacity(FILL_BATCH_SIZE);
+            for (int y = x; y < Math.min(count, x + FILL_BATCH_SIZE); ++y) {
+                batch.add(VehicleRecord.builder().vehicleId(prefix + y).build());
+            }
+
+            parkingManager.enterBatch(0, batch).get();
+        }
+    }
+
+    private static AdmissionEngine createAdmissionEngine(String admissionEngine, int capacity) {
+        switch (admissionEngine) {
+            case ParkingManagerModule.ADMISSION_ENGINE_LOCKING:
+                return new LockingAdmissionEngine(capacity);
+            case ParkingManagerModule.ADMISSION_ENGINE_LOCK_FREE:
+                return new LockFreeAdmissionEngine(capacity);
+            default:
+                throw new IllegalArgumentException("Unknown admission engine: " + admissionEngine);
+        }
+    }
+}
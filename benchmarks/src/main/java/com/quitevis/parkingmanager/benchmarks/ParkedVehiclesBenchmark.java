@@ -0,0 +1,136 @@
+package com.quitevis.parkingmanager.benchmarks;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reading the parked vehicles on a lot that already holds many cars: the locked copy of getParkedVehicleIds, a walk
+ * of the weakly-consistent iterator (what /rest/parked streams) and one page of getParkedVehicleIdPage. Each is
+ * measured alone and while other threads keep cars entering and exiting. The writers are measured as well, to show
+ * how much the reads slow them down.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkedVehiclesBenchmark {
+    private static final int WRITERS = 3;
+    private static final int PAGE_SIZE = 1000;
+
+    @Param({"1000", "100000"})
+    public int parked;
+
+    @Param({"locking", "lockfree"})
+    public String admissionEngine;
+
+    private ParkingManager parkingManager;
+    private AtomicInteger nextGate;
+
+    @State(Scope.Thread)
+    public static class Car {
+        private int gate;
+        private VehicleRecord vehicleRecord;
+
+        @Setup(Level.Trial)
+        public void setUp(ParkedVehiclesBenchmark benchmark) {
+            gate = benchmark.nextGate.getAndIncrement() % WRITERS;
+            vehicleRecord = VehicleRecord.builder().vehicleId("CAR-" + UUID.randomUUID()).build();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ExecutionException, InterruptedException {
+        nextGate = new AtomicInteger();
+        parkingManager = Lots.create(admissionEngine, parked + WRITERS, WRITERS);
+        Lots.fill(parkingManager, "PARKED-", parked);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parkingManager.close();
+    }
+
+    @Benchmark
+    @Group("alone")
+    public int readAlone() {
+        return parkingManager.getParkedVehicleIds().size();
+    }
+
+    @Benchmark
+    @Group("underWriteLoad")
+    @GroupThreads(1)
+    public int read() {
+        return parkingManager.getParkedVehicleIds().size();
+    }
+
+    @Benchmark
+    @Group("underWriteLoad")
+    @GroupThreads(WRITERS)
+    public void write(Car car) throws ExecutionException, InterruptedException {
+        writeCar(car);
+    }
+
+    @Benchmark
+    @Group("iterateAlone")
+    public int iterateAlone() {
+        return iterate();
+    }
+
+    @Benchmark
+    @Group("iterateUnderWriteLoad")
+    @GroupThreads(1)
+    public int iterateRead() {
+        return iterate();
+    }
+
+    @Benchmark
+    @Group("iterateUnderWriteLoad")
+    @GroupThreads(WRITERS)
+    public void iterateWrite(Car car) throws ExecutionException, InterruptedException {
+        writeCar(car);
+    }
+
+    @Benchmark
+    @Group("pageAlone")
+    public int pageAlone() {
+        return parkingManager.getParkedVehicleIdPage(null, PAGE_SIZE).size();
+    }
+
+    private int iterate() {
+        int count = 0;
+        Iterator<VehicleRecord> iterator = parkingManager.iterateParkedVehicles();
+        while (iterator.hasNext()) {
+            count += iterator.next().getVehicleId().length();
+        }
+
+        return count;
+    }
+
+    private void writeCar(Car car) throws ExecutionException, InterruptedException {
+        parkingManager.enter(car.gate, car.vehicleRecord).get();
+        parkingManager.exit(car.gate, car.vehicleRecord).get();
+    }
+}
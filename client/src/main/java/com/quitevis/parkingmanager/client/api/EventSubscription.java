@@ -0,0 +1,137 @@
+package com.quitevis.parkingmanager.client.api;
+
+import com.quitevis.parkingmanager.model.ParkingFlow;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A subscription to /rest/events. A background thread reads the server-sent events and hands them to the listener.
+ * If the stream is lost, the listener is told and the subscription reconnects after RECONNECT_MILLIS, until it is
+ * closed.
+ */
+@Slf4j
+public class EventSubscription implements AutoCloseable {
+    private static final long RECONNECT_MILLIS = 2000;
+
+    private final WebResource webResource;
+    private final ParkingEventListener listener;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile InputStream stream;
+
+    EventSubscription(WebResource webResource, ParkingEventListener listener) {
+        this.webResource = webResource;
+        this.listener = listener;
+        this.thread = new Thread(this::run, "parking-events-subscription");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the subscription. The listener is not called anymore once this returns, except for an event that was
+     * being handed to it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        IOUtils.closeQuietly(stream);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                read();
+                if (!closed) {
+                    throw new IOException("The server closed the event stream");
+                }
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+
+                log.warn("Lost the parking event stream: {}", e.getMessage());
+                listener.onError(e);
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        ClientResponse response = webResource.accept("text/event-stream").get(ClientResponse.class);
+        if (response.getStatus() != 200) {
+            response.close();
+            throw new IOException("Unable to subscribe to the parking events: " + response.getStatus());
+        }
+
+        stream = response.getEntityInputStream();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String event = "message";
+            StringBuilder data = new StringBuilder();
+            String line;
+            while (!closed && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    dispatch(event, data.toString());
+                    event = "message";
+                    data.setLength(0);
+                    continue;
+                }
+
+                //Comments, such as the heartbeat of the server
+                if (line.startsWith(":")) {
+                    continue;
+                }
+
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(colon + 1);
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+
+                if (field.equals("event")) {
+                    event = value;
+                } else if (field.equals("data")) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+
+                    data.append(value);
+                }
+            }
+        }
+    }
+
+    private void dispatch(String event, String data) {
+        if (data.isEmpty()) {
+            return;
+        }
+
+        switch (event) {
+            case "occupancy":
+                listener.onOccupancy(ParkingManagerInfo.fromJson(data));
+                break;
+            case "flow":
+                listener.onFlow(ParkingFlow.fromJson(data));
+                break;
+            default:
+                log.debug("Ignoring the unknown parking event {}", event);
+        }
+    }
+}
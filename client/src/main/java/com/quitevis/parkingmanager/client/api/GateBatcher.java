@@ -0,0 +1,126 @@
+package com.quitevis.parkingmanager.client.api;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.model.GateResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the vehicles sent to the same gate by concurrent callers into one batch request.
+ * <p>
+ * The first vehicle of a gate opens a batch and schedules it to be sent after windowMicros. Vehicles added meanwhile
+ * join it, and it is sent right away once it holds maxBatchSize vehicles. The results of the batch are handed back
+ * to the future of each vehicle, in order. If the batch request itself fails, every vehicle of the batch fails with
+ * the same exception.
+ */
+class GateBatcher {
+    /**
+     * Sends the vehicles of one batch, returns one result per vehicle in the same order
+     */
+    @FunctionalInterface
+    interface BatchSender {
+        List<GateResult> send(List<String> vehicleIds, int gate) throws ParkingManagerException;
+    }
+
+    private final BatchSender sender;
+    private final int maxBatchSize;
+    private final long windowMicros;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Integer, Batch> openBatches;
+
+    GateBatcher(BatchSender sender, int maxBatchSize, long windowMicros, Executor executor,
+                ScheduledExecutorService scheduler) {
+        this.sender = sender;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMicros = windowMicros;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.openBatches = Maps.newHashMap();
+    }
+
+    /**
+     * Adds the vehicle to the open batch of the gate. The future completes with the result of the vehicle once the
+     * batch has been answered.
+     */
+    CompletableFuture<GateResult> submit(String vehicleId, int gate) {
+        CompletableFuture<GateResult> future = new CompletableFuture<>();
+        Batch full = null;
+
+        synchronized (openBatches) {
+            Batch batch = openBatches.get(gate);
+            if (batch == null) {
+                batch = new Batch(gate);
+                openBatches.put(gate, batch);
+                Batch opened = batch;
+                scheduler.schedule(() -> close(opened), windowMicros, TimeUnit.MICROSECONDS);
+            }
+
+            batch.vehicleIds.add(vehicleId);
+            batch.futures.add(future);
+            if (batch.vehicleIds.size() >= maxBatchSize) {
+                openBatches.remove(gate);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends the batch when its window is over, unless it was already sent because it was full
+     */
+    private void close(Batch batch) {
+        synchronized (openBatches) {
+            if (openBatches.get(batch.gate) != batch) {
+                return;
+            }
+
+            openBatches.remove(batch.gate);
+        }
+
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        executor.execute(() -> {
+            List<GateResult> results;
+            try {
+                results = sender.send(batch.vehicleIds, batch.gate);
+                if (results.size() != batch.vehicleIds.size()) {
+                    throw new ParkingManagerException(500, "Expected " + batch.vehicleIds.size()
+                            + " results but got " + results.size());
+                }
+            } catch (ParkingManagerException | RuntimeException e) {
+                batch.futures.forEach(p -> p.completeExceptionally(e));
+                return;
+            }
+
+            for (int x = 0; x < results.size(); ++x) {
+                batch.futures.get(x).complete(results.get(x));
+            }
+        });
+    }
+
+    private static final class Batch {
+        private final int gate;
+        private final List<String> vehicleIds;
+        private final List<CompletableFuture<GateResult>> futures;
+
+        private Batch(int gate) {
+            this.gate = gate;
+            this.vehicleIds = Lists.newArrayList();
+            this.futures = Lists.newArrayList();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.quitevis.parkingmanager.client.api;
+
+import com.quitevis.parkingmanager.model.ParkingFlow;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
+
+/**
+ * Receives the events of /rest/events. It is called from the thread of the subscription, one event at a time.
+ */
+public interface ParkingEventListener {
+    /**
+     * Called on connect (and reconnect) with the current info, then every time it changes
+     */
+    void onOccupancy(ParkingManagerInfo info);
+
+    /**
+     * Called with the number of cars that entered / exited since the previous call
+     */
+    default void onFlow(ParkingFlow flow) {
+    }
+
+    /**
+     * Called when the stream is lost, before the subscription reconnects
+     */
+    default void onError(Exception e) {
+    }
+}
@@ -1,118 +1,411 @@
 package com.quitevis.parkingmanager.client.api;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.quitevis.parkingmanager.model.GateResult;
+import com.quitevis.parkingmanager.model.ParkedVehiclePage;
 import com.quitevis.parkingmanager.model.ParkingManagerInfo;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
-import org.apache.commons.io.IOUtils;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Talks to the Parking Manager API server using Jersey client
+ * <p>
+ * A single Jersey client is created with the ParkingManagerClient and shared by all the calls, from any thread.
+ * Jersey sends the requests through HttpURLConnection, which keeps the connections alive and hands them to the
+ * next request once the body of a response has been read to the end, so every response is read (or drained) fully.
+ * The JDK keeps at most http.maxConnections idle connections to a server (5 by default). Unless that system property
+ * is set already, it is raised to the number of threads of the client, which only works if no HTTP connection was
+ * made before the client is created.
+ * <p>
+ * The async variants run the call on the threads of the client (client.threads) and fail the future with a
+ * TimeoutException if it takes longer than the timeout given. The call itself is bounded by the connect and read
+ * timeouts of the client (client.connect.timeout.millis and client.read.timeout.millis).
+ * <p>
+ * If client.batch.size is more than 0, the vehicles parked / unparked through the same gate by concurrent callers
+ * are sent together to the batch endpoints, up to client.batch.size per request, waiting at most
+ * client.batch.window.micros for more vehicles to join (see GateBatcher). The calls work the same for the callers: a
+ * vehicle turned away by the batch fails with a ParkingManagerException of status 400, as the single endpoints do.
  */
-public class ParkingManagerClient {
+public class ParkingManagerClient implements AutoCloseable {
+    private static final Gson GSON = new Gson();
+    private static final Type STRING_SET = new TypeToken<Set<String>>() { }.getType();
+    private static final Type GATE_RESULT_LIST = new TypeToken<List<GateResult>>() { }.getType();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("parking-client-scheduler").setDaemon(true).build());
+
     private final String hostAndPort;
+    private final Client client;
+    private final ExecutorService executor;
+    private final GateBatcher enterBatcher;
+    private final GateBatcher exitBatcher;
+    private volatile CachedInfo cachedInfo;
+
+    public ParkingManagerClient(String hostname, int port) {
+        this(hostname, port, 5000, 30000, 64, 0, 0);
+    }
 
     @Inject
     public ParkingManagerClient(
             @Named("server.hostname") String hostname,
-            @Named("server.port") int port) {
+            @Named("server.port") int port,
+            @Named("client.connect.timeout.millis") int connectTimeoutMillis,
+            @Named("client.read.timeout.millis") int readTimeoutMillis,
+            @Named("client.threads") int threads,
+            @Named("client.batch.size") int batchSize,
+            @Named("client.batch.window.micros") long batchWindowMicros) {
         this.hostAndPort = "http://" + hostname + ":" + port;
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(threads));
+        }
+
+        ClientConfig config = new DefaultClientConfig();
+        config.getProperties().put(ClientConfig.PROPERTY_CONNECT_TIMEOUT, connectTimeoutMillis);
+        config.getProperties().put(ClientConfig.PROPERTY_READ_TIMEOUT, readTimeoutMillis);
+        this.client = Client.create(config);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("parking-client-%d").setDaemon(true).build());
+
+        if (batchSize > 0) {
+            this.enterBatcher = new GateBatcher(this::parkVehicles, batchSize, batchWindowMicros, executor, SCHEDULER);
+            this.exitBatcher = new GateBatcher(this::unparkVehicles, batchSize, batchWindowMicros, executor, SCHEDULER);
+        } else {
+            this.enterBatcher = null;
+            this.exitBatcher = null;
+        }
     }
 
+    /**
+     * Returns the info of the parking lot. The last info received is kept with its ETag, and is returned again
+     * without a body being sent when the server answers 304 Not Modified.
+     */
     public ParkingManagerInfo getInfo() throws ParkingManagerException {
-        Client client = Client.create();
-        WebResource webResource = client.resource(hostAndPort + "/rest/info");
+        WebResource.Builder request = client.resource(hostAndPort + "/rest/info").accept("application/json");
+        CachedInfo cached = cachedInfo;
+        if (cached != null) {
+            request = request.header("If-None-Match", cached.etag);
+        }
 
-        ClientResponse response = webResource.accept("application/json")
-                .get(ClientResponse.class);
+        ClientResponse response = request.get(ClientResponse.class);
 
-        if (response.getStatus() != 200) {
-            throw new ParkingManagerException(response.getStatus(), "Unable to get the parking manager info");
+        if (response.getStatus() == 304 && cached != null) {
+            discard(response);
+            return cached.info;
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (InputStream is = new BufferedInputStream(response.getEntityInputStream())) {
-            IOUtils.copy(is, baos);
-            String json = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-            return ParkingManagerInfo.fromJson(json);
-        } catch (IOException e) {
-            throw new ParkingManagerException(500, "Unable to get the parking manager info", e);
-        }
+        ParkingManagerInfo info = read(response, ParkingManagerInfo.class, "Unable to get the parking manager info");
+        String etag = response.getHeaders().getFirst("ETag");
+        cachedInfo = etag == null ? null : new CachedInfo(etag, info);
+        return info;
+    }
+
+    public CompletableFuture<ParkingManagerInfo> getInfoAsync(long timeoutMillis) {
+        return async(this::getInfo, timeoutMillis);
+    }
+
+    /**
+     * Subscribes to the changes of the parking lot pushed on /rest/events. The listener gets the current info right
+     * away, then every change, from a background thread. Close the returned subscription to stop.
+     */
+    public EventSubscription subscribe(ParkingEventListener listener) {
+        EventSubscription subscription = new EventSubscription(client.resource(hostAndPort + "/rest/events"), listener);
+        subscription.start();
+        return subscription;
     }
 
     public UUID parkVehicle(String vehicleId, int gate) throws ParkingManagerException {
-        Client client = Client.create();
-        WebResource webResource = client.resource(hostAndPort + "/rest/enter?vehicleId=" + vehicleId + "&gateId=" + gate);
+        if (enterBatcher != null) {
+            return await(admitted(enterBatcher.submit(vehicleId, gate))).getTicketId();
+        }
+
+        WebResource webResource = client.resource(hostAndPort + "/rest/enter")
+                .queryParam("vehicleId", vehicleId)
+                .queryParam("gateId", Integer.toString(gate));
 
         ClientResponse response = webResource.accept("application/json")
                 .post(ClientResponse.class);
 
-        if (response.getStatus() != 200) {
-            throw new ParkingManagerException(response.getStatus(), "Unable to park the vehicle");
-        }
+        JsonObject json = read(response, JsonObject.class, "Unable to park the vehicle");
+        return UUID.fromString(json.get("ticketId").getAsString());
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (InputStream is = new BufferedInputStream(response.getEntityInputStream())) {
-            IOUtils.copy(is, baos);
-            String json = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-            Gson gson = new Gson();
-            Map<String, Object> jsonAsMap = gson.fromJson(json, Map.class);
-            return UUID.fromString(jsonAsMap.get("ticketId").toString());
-        } catch (IOException e) {
-            throw new ParkingManagerException(500, "Unable to park the vehicle", e);
+    public CompletableFuture<UUID> parkVehicleAsync(String vehicleId, int gate, long timeoutMillis) {
+        if (enterBatcher != null) {
+            return withTimeout(admitted(enterBatcher.submit(vehicleId, gate)).thenApply(GateResult::getTicketId),
+                    timeoutMillis, () -> { });
         }
+
+        return async(() -> parkVehicle(vehicleId, gate), timeoutMillis);
     }
 
     public void unparkVehicle(String vehicleId, int gate) throws ParkingManagerException {
-        Client client = Client.create();
-        WebResource webResource = client.resource(hostAndPort + "/rest/exit?vehicleId=" + vehicleId + "&gateId=" + gate);
+        if (exitBatcher != null) {
+            await(admitted(exitBatcher.submit(vehicleId, gate)));
+            return;
+        }
+
+        WebResource webResource = client.resource(hostAndPort + "/rest/exit")
+                .queryParam("vehicleId", vehicleId)
+                .queryParam("gateId", Integer.toString(gate));
 
         ClientResponse response = webResource.accept("application/json")
                 .post(ClientResponse.class);
 
         if (response.getStatus() != 200) {
-            throw new ParkingManagerException(response.getStatus(), "Unable to park the vehicle");
+            discard(response);
+            throw new ParkingManagerException(response.getStatus(), "Unable to unpark the vehicle");
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (InputStream is = new BufferedInputStream(response.getEntityInputStream())) {
-            IOUtils.copy(is, baos);
-        } catch (IOException e) {
-            throw new ParkingManagerException(500, "Unable to park the vehicle", e);
+        discard(response);
+    }
+
+    public CompletableFuture<Void> unparkVehicleAsync(String vehicleId, int gate, long timeoutMillis) {
+        if (exitBatcher != null) {
+            return withTimeout(admitted(exitBatcher.submit(vehicleId, gate)).thenApply(p -> null),
+                    timeoutMillis, () -> { });
         }
+
+        return async(() -> {
+            unparkVehicle(vehicleId, gate);
+            return null;
+        }, timeoutMillis);
+    }
+
+    /**
+     * Unparks the vehicle that holds the ticket. Returns the id of the vehicle that exited.
+     */
+    public String unparkVehicleByTicket(UUID ticketId, int gate) throws ParkingManagerException {
+        WebResource webResource = client.resource(hostAndPort + "/rest/exit")
+                .queryParam("ticketId", ticketId.toString())
+                .queryParam("gateId", Integer.toString(gate));
+
+        ClientResponse response = webResource.accept("application/json")
+                .post(ClientResponse.class);
+
+        JsonObject json = read(response, JsonObject.class, "Unable to unpark the vehicle");
+        return json.get("vehicleId").getAsString();
+    }
+
+    /**
+     * Parks a batch of vehicles that arrived at the same gate with a single request.
+     * Returns one result per vehicle, in the same order as vehicleIds.
+     */
+    public List<GateResult> parkVehicles(List<String> vehicleIds, int gate) throws ParkingManagerException {
+        return postBatch("/rest/enter/batch", gate, vehicleIds, "Unable to park the vehicles");
+    }
+
+    /**
+     * Unparks a batch of vehicles that arrived at the same gate with a single request.
+     * Returns one result per vehicle, in the same order as vehicleIds.
+     */
+    public List<GateResult> unparkVehicles(List<String> vehicleIds, int gate) throws ParkingManagerException {
+        return postBatch("/rest/exit/batch", gate, vehicleIds, "Unable to unpark the vehicles");
     }
 
     public Set<String> getParkedVehicleIds() throws ParkingManagerException {
-        Client client = Client.create();
-        WebResource webResource = client.resource(hostAndPort + "/rest/parked");
+        ClientResponse response = client.resource(hostAndPort + "/rest/parked")
+                .accept("application/json")
+                .get(ClientResponse.class);
+
+        return read(response, STRING_SET, "Unable to get the list of parked vehicles");
+    }
+
+    public CompletableFuture<Set<String>> getParkedVehicleIdsAsync(long timeoutMillis) {
+        return async(this::getParkedVehicleIds, timeoutMillis);
+    }
+
+    /**
+     * Returns one page of at most limit parked vehicle ids, in order, that come after the given id (null for the
+     * first page). Pass the next of a page as the after of the following call to walk the whole lot.
+     */
+    public ParkedVehiclePage getParkedVehicleIds(String after, int limit) throws ParkingManagerException {
+        WebResource webResource = client.resource(hostAndPort + "/rest/parked")
+                .queryParam("limit", Integer.toString(limit));
+        if (after != null) {
+            webResource = webResource.queryParam("after", after);
+        }
 
         ClientResponse response = webResource.accept("application/json")
                 .get(ClientResponse.class);
 
+        return read(response, ParkedVehiclePage.class, "Unable to get the list of parked vehicles");
+    }
+
+    public CompletableFuture<ParkedVehiclePage> getParkedVehicleIdsAsync(String after, int limit, long timeoutMillis) {
+        return async(() -> getParkedVehicleIds(after, limit), timeoutMillis);
+    }
+
+    /**
+     * Stops the threads of the async calls and releases the connections of the client
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        client.destroy();
+    }
+
+    private List<GateResult> postBatch(String path, int gate, List<String> vehicleIds, String errorMessage)
+            throws ParkingManagerException {
+        WebResource webResource = client.resource(hostAndPort + path)
+                .queryParam("gateId", Integer.toString(gate));
+
+        ClientResponse response = webResource.type("application/json")
+                .accept("application/json")
+                .post(ClientResponse.class, GSON.toJson(vehicleIds));
+
+        return read(response, GATE_RESULT_LIST, errorMessage);
+    }
+
+    /**
+     * Runs the call on the threads of the client. If it has not completed after timeoutMillis (0 for no timeout),
+     * the future fails with a TimeoutException and the thread running the call is interrupted.
+     */
+    private <T> CompletableFuture<T> async(Call<T> call, long timeoutMillis) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                future.complete(call.call());
+            } catch (ParkingManagerException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return withTimeout(future, timeoutMillis, () -> task.cancel(true));
+    }
+
+    /**
+     * Fails the future with a TimeoutException, and runs onTimeout, if it has not completed after timeoutMillis (0
+     * for no timeout)
+     */
+    private static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMillis,
+                                                        Runnable onTimeout) {
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> timeout = SCHEDULER.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("No response after " + timeoutMillis + " ms"))) {
+                    onTimeout.run();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> timeout.cancel(false));
+        }
+
+        return future;
+    }
+
+    /**
+     * Fails with a ParkingManagerException of status 400 if the vehicle was turned away by its batch
+     */
+    private static CompletableFuture<GateResult> admitted(CompletableFuture<GateResult> result) {
+        return result.thenCompose(p -> {
+            CompletableFuture<GateResult> admitted = new CompletableFuture<>();
+            if (p.isSuccess()) {
+                admitted.complete(p);
+            } else {
+                admitted.completeExceptionally(new ParkingManagerException(400, p.getMessage()));
+            }
+
+            return admitted;
+        });
+    }
+
+    /**
+     * Waits for the future of a batched call, and throws what it failed with
+     */
+    private static <T> T await(CompletableFuture<T> future) throws ParkingManagerException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParkingManagerException(500, "Interrupted while waiting for the batch", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParkingManagerException) {
+                throw (ParkingManagerException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new ParkingManagerException(500, "Unable to send the batch", e);
+        }
+    }
+
+    /**
+     * Decodes the json body of a 200 response straight from the stream. Any other status is thrown as a
+     * ParkingManagerException.
+     */
+    private static <T> T read(ClientResponse response, Type type, String errorMessage)
+            throws ParkingManagerException {
         if (response.getStatus() != 200) {
-            throw new ParkingManagerException(response.getStatus(), "Unable to get the list of parked vehicles");
+            discard(response);
+            throw new ParkingManagerException(response.getStatus(), errorMessage);
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (InputStream is = new BufferedInputStream(response.getEntityInputStream())) {
-            IOUtils.copy(is, baos);
-            String json = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-            Gson gson = new Gson();
-            return gson.fromJson(json, Set.class);
+        try (Reader reader = new InputStreamReader(response.getEntityInputStream(), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, type);
+        } catch (IOException | JsonParseException e) {
+            throw new ParkingManagerException(500, errorMessage, e);
+        }
+    }
+
+    /**
+     * Reads the body to the end, so that the connection can be reused
+     */
+    private static void discard(ClientResponse response) {
+        if (response.getEntityInputStream() == null) {
+            return;
+        }
+
+        byte[] buffer = new byte[512];
+        try (InputStream is = response.getEntityInputStream()) {
+            while (is.read(buffer) != -1) {
+                //Drain
+            }
         } catch (IOException e) {
-            throw new ParkingManagerException(500, "Unable to park the vehicle", e);
+            //The connection is dropped instead of reused
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws ParkingManagerException;
+    }
+
+    private static final class CachedInfo {
+        private final String etag;
+        private final ParkingManagerInfo info;
+
+        private CachedInfo(String etag, ParkingManagerInfo info) {
+            this.etag = etag;
+            this.info = info;
         }
     }
 }
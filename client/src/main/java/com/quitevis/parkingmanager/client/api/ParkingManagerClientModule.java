@@ -25,6 +25,16 @@ public class ParkingManagerClientModule extends AbstractModule {
                     .to(properties.getProperty("server.hostname"));
             bindConstant().annotatedWith(Names.named("server.port"))
                     .to(properties.getProperty("server.port"));
+            bindConstant().annotatedWith(Names.named("client.connect.timeout.millis"))
+                    .to(properties.getProperty("client.connect.timeout.millis", "5000").trim());
+            bindConstant().annotatedWith(Names.named("client.read.timeout.millis"))
+                    .to(properties.getProperty("client.read.timeout.millis", "30000").trim());
+            bindConstant().annotatedWith(Names.named("client.threads"))
+                    .to(properties.getProperty("client.threads", "64").trim());
+            bindConstant().annotatedWith(Names.named("client.batch.size"))
+                    .to(properties.getProperty("client.batch.size", "0").trim());
+            bindConstant().annotatedWith(Names.named("client.batch.window.micros"))
+                    .to(properties.getProperty("client.batch.window.micros", "1000").trim());
         } catch (IOException e) {
             throw new RuntimeException("Unable to find the client config file");
         }
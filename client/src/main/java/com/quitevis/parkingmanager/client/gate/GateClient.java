@@ -0,0 +1,164 @@
+package com.quitevis.parkingmanager.client.gate;
+
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.client.api.ParkingManagerException;
+import com.quitevis.parkingmanager.gate.GateProtocol;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Talks to the GateServer with the native gate protocol (see GateProtocol), over one TCP connection.
+ * <p>
+ * Requests are pipelined: enter and exit write the request and return right away, from any number of threads, and
+ * a reader thread completes the future of each request when its response arrives. A request that fails completes
+ * its future with a ParkingManagerException with the status its HTTP counterpart would have: 400 if the car was
+ * turned away, 429 if the gate was overloaded. If the connection is lost, every request in flight fails with 503.
+ */
+@Slf4j
+public class GateClient implements AutoCloseable {
+    private static final int BUFFER_BYTES = 32 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer writeBuffer;
+    private final ConcurrentMap<Integer, CompletableFuture<UUID>> inFlight;
+    private final AtomicInteger nextRequestId;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    public GateClient(String hostname, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(hostname, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.inFlight = Maps.newConcurrentMap();
+        this.nextRequestId = new AtomicInteger();
+        this.reader = new Thread(this::readResponses, "gate-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Parks the vehicle at the entry gate. The future completes with its ticket.
+     */
+    public CompletableFuture<UUID> enter(String vehicleId, int gate) {
+        return send(GateProtocol.OP_ENTER, vehicleId, gate);
+    }
+
+    /**
+     * Unparks the vehicle at the exit gate. The future completes with the ticket it was given when it entered.
+     */
+    public CompletableFuture<UUID> exit(String vehicleId, int gate) {
+        return send(GateProtocol.OP_EXIT, vehicleId, gate);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Unable to close the gate connection: {}", e.getMessage());
+        }
+
+        failInFlight();
+    }
+
+    private CompletableFuture<UUID> send(byte op, String vehicleId, int gate) {
+        CompletableFuture<UUID> future = new CompletableFuture<>();
+        byte[] plate = vehicleId.getBytes(StandardCharsets.UTF_8);
+        if (plate.length > GateProtocol.MAX_PLATE_BYTES) {
+            future.completeExceptionally(new ParkingManagerException(400,
+                    "The vehicle id is longer than " + GateProtocol.MAX_PLATE_BYTES + " bytes"));
+            return future;
+        }
+
+        int requestId = nextRequestId.incrementAndGet();
+        inFlight.put(requestId, future);
+        try {
+            synchronized (writeBuffer) {
+                writeBuffer.clear();
+                GateProtocol.writeRequest(writeBuffer, requestId, op, gate, plate);
+                writeBuffer.flip();
+                while (writeBuffer.hasRemaining()) {
+                    channel.write(writeBuffer);
+                }
+            }
+        } catch (IOException e) {
+            inFlight.remove(requestId);
+            future.completeExceptionally(new ParkingManagerException(503, "Unable to send the request", e));
+        }
+
+        //The connection may have been lost before the request was registered
+        if (closed && inFlight.remove(requestId) != null) {
+            future.completeExceptionally(new ParkingManagerException(503, "The gate connection is closed"));
+        }
+
+        return future;
+    }
+
+    private void readResponses() {
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        byte[] message = new byte[GateProtocol.MAX_MESSAGE_BYTES];
+        try {
+            while (channel.read(readBuffer) >= 0) {
+                readBuffer.flip();
+                while (readBuffer.remaining() >= 4) {
+                    int length = readBuffer.getInt(readBuffer.position());
+                    if (length < GateProtocol.RESPONSE_HEADER_BYTES - 4 || length > GateProtocol.MAX_FRAME_BYTES) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+
+                    if (readBuffer.remaining() < 4 + length) {
+                        break;
+                    }
+
+                    readBuffer.getInt();
+                    int requestId = readBuffer.getInt();
+                    byte status = readBuffer.get();
+                    long ticketMostSigBits = readBuffer.getLong();
+                    long ticketLeastSigBits = readBuffer.getLong();
+                    int messageLength = readBuffer.getShort() & 0xFFFF;
+                    readBuffer.get(message, 0, messageLength);
+
+                    CompletableFuture<UUID> future = inFlight.remove(requestId);
+                    if (future == null) {
+                        log.warn("Got a response to the unknown request {}", requestId);
+                    } else if (status == GateProtocol.STATUS_OK) {
+                        future.complete(new UUID(ticketMostSigBits, ticketLeastSigBits));
+                    } else {
+                        int errorCode = status == GateProtocol.STATUS_OVERLOADED ? 429 : 400;
+                        future.completeExceptionally(new ParkingManagerException(errorCode,
+                                new String(message, 0, messageLength, StandardCharsets.UTF_8)));
+                    }
+                }
+
+                readBuffer.compact();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Lost the gate connection: {}", e.getMessage());
+            }
+        }
+
+        closed = true;
+        failInFlight();
+    }
+
+    private void failInFlight() {
+        for (Integer requestId : inFlight.keySet()) {
+            CompletableFuture<UUID> future = inFlight.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(new ParkingManagerException(503, "The gate connection is closed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.quitevis.parkingmanager.client.load;
+
+import com.quitevis.parkingmanager.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The outcome of the requests made to one endpoint.
+ * <p>
+ * The latency of a request is counted from the time it was meant to be sent by the arrival schedule, not from the
+ * time it was actually sent: when the server (or the generator) falls behind, the requests that had to wait are
+ * charged for the wait, as the cars would be. The service time, from the actual send, is kept apart to show how
+ * much of the latency was spent waiting.
+ */
+public class EndpointStats {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String name;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram serviceTime;
+    private final AtomicLong successCount;
+    private final Map<Integer, AtomicLong> errorCounts;
+
+    public EndpointStats(String name) {
+        this.name = name;
+        this.latency = new LatencyHistogram();
+        this.serviceTime = new LatencyHistogram();
+        this.successCount = new AtomicLong();
+        this.errorCounts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records a request. status is the HTTP status, or 0 if the request did not get a response.
+     */
+    public void record(long intendedNanos, long sentNanos, long completedNanos, int status) {
+        latency.record(completedNanos - intendedNanos);
+        serviceTime.record(completedNanos - sentNanos);
+        if (status == 200) {
+            successCount.incrementAndGet();
+        } else {
+            errorCounts.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getErrorCount() {
+        return errorCounts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Appends the summary of the endpoint: request and error counts, then the latency and service time percentiles
+     * in milliseconds
+     */
+    public void report(StringBuilder report, double seconds) {
+        long count = getCount();
+        long errors = getErrorCount();
+        report.append(String.format("%-6s requests: %d (%.1f/s), errors: %d (%.2f%%)",
+                name, count, count / seconds, errors, count == 0 ? 0.0 : 100.0 * errors / count));
+        errorCounts.forEach((status, errorCount) -> report.append(String.format(", %s: %d",
+                status == 0 ? "no response" : "HTTP " + status, errorCount.get())));
+        report.append('\n');
+        appendPercentiles(report, "latency", latency);
+        appendPercentiles(report, "service", serviceTime);
+    }
+
+    private static void appendPercentiles(StringBuilder report, String label, LatencyHistogram histogram) {
+        report.append(String.format("       %-8s", label));
+        for (double percentile : PERCENTILES) {
+            report.append(String.format(" p%s %.2f ms", percentile == (long) percentile
+                            ? String.valueOf((long) percentile) : String.valueOf(percentile),
+                    histogram.getValueAtPercentile(percentile) / 1e6));
+        }
+
+        report.append(String.format(" max %.2f ms\n", histogram.getMaxNanos() / 1e6));
+    }
+}
@@ -0,0 +1,188 @@
+package com.quitevis.parkingmanager.client.load;
+
+import com.quitevis.parkingmanager.client.api.ParkingManagerClient;
+import com.quitevis.parkingmanager.client.api.ParkingManagerException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the enter and exit endpoints of the server with an open-loop arrival of cars: cars arrive at the configured
+ * rate whether or not the earlier ones were served, as they do at a real gate. Each car that got in leaves through an
+ * exit gate after the dwell time.
+ * <p>
+ * The arrival times are fixed up front, and the latency of each request is measured from its arrival time, so a
+ * server that stalls is charged for all the cars that piled up behind the stall instead of only for the one request
+ * that was slow (coordinated omission). When all the workers are busy, the requests wait in the queue of the worker
+ * pool and that wait is counted as well.
+ */
+@Slf4j
+public class LoadGenerator {
+    private final ParkingManagerClient client;
+    private final LoadSettings settings;
+    private final String runId;
+    private final EndpointStats enterStats;
+    private final EndpointStats exitStats;
+    private final AtomicLong vehicleCount;
+    private final AtomicLong carsInFlight;
+
+    public LoadGenerator(ParkingManagerClient client, LoadSettings settings) {
+        this.client = client;
+        this.settings = settings;
+        this.runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+        this.enterStats = new EndpointStats("enter");
+        this.exitStats = new EndpointStats("exit");
+        this.vehicleCount = new AtomicLong();
+        this.carsInFlight = new AtomicLong();
+    }
+
+    public EndpointStats getEnterStats() {
+        return enterStats;
+    }
+
+    public EndpointStats getExitStats() {
+        return exitStats;
+    }
+
+    /**
+     * Sends the cars for the configured duration, waits for the last ones to exit, then returns the report
+     */
+    public String run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(settings.getConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "load-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService exits = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-exit-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Random random = new Random();
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        long reportInterval = TimeUnit.SECONDS.toNanos(settings.getReportSeconds());
+        long nextReport = start + reportInterval;
+        double intended = start;
+
+        while (intended < end) {
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos((long) intended - now);
+                continue;
+            }
+
+            //Send every car that is due, even if the generator itself fell behind
+            long arrival = (long) intended;
+            long vehicle = vehicleCount.getAndIncrement();
+            carsInFlight.incrementAndGet();
+            workers.execute(() -> enter(vehicle, arrival, workers, exits));
+            intended += nextInterval(settings.isPoisson(), random, meanIntervalNanos);
+
+            if (now >= nextReport) {
+                log.info(progress(now - start));
+                nextReport += reportInterval;
+            }
+        }
+
+        //The exits of the last cars are still to come
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getDwellMillis())
+                + TimeUnit.MINUTES.toNanos(1);
+        while (carsInFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        if (carsInFlight.get() > 0) {
+            log.warn("Gave up waiting for {} cars", carsInFlight.get());
+        }
+
+        exits.shutdownNow();
+        workers.shutdownNow();
+
+        return report((System.nanoTime() - start) / 1e9);
+    }
+
+    private void enter(long vehicle, long arrival, ExecutorService workers, ScheduledExecutorService exits) {
+        String vehicleId = "LOAD-" + runId + "-" + vehicle;
+        int entryGate = (int) (vehicle % settings.getEntryGates());
+        long sent = System.nanoTime();
+        int status = 200;
+        try {
+            client.parkVehicle(vehicleId, entryGate);
+        } catch (ParkingManagerException e) {
+            status = e.getErrorCode();
+        } catch (RuntimeException e) {
+            //Jersey reports connection failures and timeouts as runtime exceptions
+            status = 0;
+        }
+
+        long completed = System.nanoTime();
+        enterStats.record(arrival, sent, completed, status);
+        if (status != 200 || settings.getDwellMillis() <= 0) {
+            carsInFlight.decrementAndGet();
+            return;
+        }
+
+        long departure = departure(arrival, completed, TimeUnit.MILLISECONDS.toNanos(settings.getDwellMillis()));
+        int exitGate = (int) (vehicle % settings.getExitGates());
+        exits.schedule(() -> workers.execute(() -> exit(vehicleId, exitGate, departure)),
+                departure - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns when a car that arrived and got in at the given times is meant to leave: a dwell time after it arrived,
+     * not after the server answered, so a slow entry does not shift the exits. A car cannot leave before it got in
+     * though, so the exit of a car whose entry took longer than the dwell time is due right away. Its latency is then
+     * charged to the entry only, not twice.
+     */
+    static long departure(long arrivalNanos, long enteredNanos, long dwellNanos) {
+        return Math.max(arrivalNanos + dwellNanos, enteredNanos);
+    }
+
+    /**
+     * Returns the time between an arrival and the next one
+     */
+    static double nextInterval(boolean poisson, Random random, double meanIntervalNanos) {
+        return poisson ? -Math.log(1.0 - random.nextDouble()) * meanIntervalNanos : meanIntervalNanos;
+    }
+
+    private void exit(String vehicleId, int exitGate, long departure) {
+        long sent = System.nanoTime();
+        int status = 200;
+        try {
+            client.unparkVehicle(vehicleId, exitGate);
+        } catch (ParkingManagerException e) {
+            status = e.getErrorCode();
+        } catch (RuntimeException e) {
+            status = 0;
+        }
+
+        exitStats.record(departure, sent, System.nanoTime(), status);
+        carsInFlight.decrementAndGet();
+    }
+
+    private String progress(long elapsedNanos) {
+        return String.format("%ds: %d cars sent, enter p99 %.2f ms (%d errors), exit p99 %.2f ms (%d errors)",
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), vehicleCount.get(),
+                enterStats.getLatency().getValueAtPercentile(99) / 1e6, enterStats.getErrorCount(),
+                exitStats.getLatency().getValueAtPercentile(99) / 1e6, exitStats.getErrorCount());
+    }
+
+    private String report(double seconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d cars at %.1f/s over %.1f s (%s arrivals, dwell %d ms, %d workers)\n",
+                vehicleCount.get(), settings.getRate(), seconds, settings.isPoisson() ? "poisson" : "uniform",
+                settings.getDwellMillis(), settings.getConcurrency()));
+        enterStats.report(report, seconds);
+        exitStats.report(report, seconds);
+        return report.toString();
+    }
+}
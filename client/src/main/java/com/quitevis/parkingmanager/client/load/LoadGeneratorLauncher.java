@@ -0,0 +1,47 @@
+package com.quitevis.parkingmanager.client.load;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.quitevis.parkingmanager.client.api.ParkingManagerClient;
+import com.quitevis.parkingmanager.client.api.ParkingManagerClientModule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Runs the load generator without the UI. The first argument is the client config file, the load.* settings in it
+ * can be overridden by the next arguments, e.g. load.rate=500 load.duration.seconds=120
+ */
+@Slf4j
+public class LoadGeneratorLauncher {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length <= 0) {
+            log.error("Please provide the path to the config file");
+            System.exit(-1);
+        }
+
+        Properties properties = new Properties();
+        try (InputStream is = new FileInputStream(args[0])) {
+            properties.load(is);
+        }
+
+        for (int x = 1; x < args.length; ++x) {
+            int separator = args[x].indexOf('=');
+            if (separator <= 0) {
+                log.error("Expected key=value but got {}", args[x]);
+                System.exit(-1);
+            }
+
+            properties.setProperty(args[x].substring(0, separator), args[x].substring(separator + 1));
+        }
+
+        Injector injector = Guice.createInjector(new ParkingManagerClientModule(Paths.get(args[0])));
+        LoadGenerator generator = new LoadGenerator(injector.getInstance(ParkingManagerClient.class),
+                LoadSettings.fromProperties(properties));
+        System.out.print(generator.run());
+    }
+}
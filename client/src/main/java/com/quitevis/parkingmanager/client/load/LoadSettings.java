@@ -0,0 +1,42 @@
+package com.quitevis.parkingmanager.client.load;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Properties;
+
+/**
+ * How the load generator drives the server. Read from the load.* properties:
+ * load.rate - cars arriving per second (default 100)
+ * load.duration.seconds - how long cars keep arriving (default 60)
+ * load.dwell.millis - how long a car stays parked before it exits, 0 for cars that never exit (default 1000)
+ * load.concurrency - the number of requests that can be in flight at once (default 64)
+ * load.entry.gates / load.exit.gates - the cars are spread evenly over the gates (default 1)
+ * load.poisson - true to space the arrivals randomly (a Poisson process) instead of evenly (default false)
+ * load.report.seconds - seconds between two progress lines (default 5)
+ */
+@Data
+@Builder
+public class LoadSettings {
+    private double rate;
+    private int durationSeconds;
+    private long dwellMillis;
+    private int concurrency;
+    private int entryGates;
+    private int exitGates;
+    private boolean poisson;
+    private int reportSeconds;
+
+    public static LoadSettings fromProperties(Properties properties) {
+        return LoadSettings.builder()
+                .rate(Double.parseDouble(properties.getProperty("load.rate", "100").trim()))
+                .durationSeconds(Integer.parseInt(properties.getProperty("load.duration.seconds", "60").trim()))
+                .dwellMillis(Long.parseLong(properties.getProperty("load.dwell.millis", "1000").trim()))
+                .concurrency(Integer.parseInt(properties.getProperty("load.concurrency", "64").trim()))
+                .entryGates(Integer.parseInt(properties.getProperty("load.entry.gates", "1").trim()))
+                .exitGates(Integer.parseInt(properties.getProperty("load.exit.gates", "1").trim()))
+                .poisson(Boolean.parseBoolean(properties.getProperty("load.poisson", "false").trim()))
+                .reportSeconds(Integer.parseInt(properties.getProperty("load.report.seconds", "5").trim()))
+                .build();
+    }
+}
@@ -2,6 +2,8 @@ package com.quitevis.parkingmanager.client.ui;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.quitevis.parkingmanager.client.api.EventSubscription;
+import com.quitevis.parkingmanager.client.api.ParkingEventListener;
 import com.quitevis.parkingmanager.client.api.ParkingManagerClient;
 import com.quitevis.parkingmanager.client.api.ParkingManagerException;
 import com.quitevis.parkingmanager.model.ParkingManagerInfo;
@@ -21,6 +23,7 @@ public class MainSceneController {
     private volatile boolean isSimulating = false;
     private volatile int entryCount;
     private volatile int exitCount;
+    private EventSubscription subscription;
 
     @Inject
     public MainSceneController(ParkingManagerClient client) {
@@ -31,16 +34,34 @@ public class MainSceneController {
         this.scene = scene;
     }
 
+    /**
+     * The values shown are kept up to date by the events pushed by the server, rather than by polling it after every
+     * car
+     */
     public void onSceneShow() {
         try {
-            updateValues();
+            showInfo(client.getInfo());
         } catch (Exception e) {
             scene.appendTextToEventLog("Unable to contact the Parking Management server");
         }
+
+        if (subscription == null) {
+            subscription = client.subscribe(new ParkingEventListener() {
+                @Override
+                public void onOccupancy(ParkingManagerInfo info) {
+                    showInfo(info);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Platform.runLater(() ->
+                            scene.appendTextToEventLog("Lost the updates of the Parking Management server"));
+                }
+            });
+        }
     }
 
-    private void updateValues() throws ParkingManagerException {
-        ParkingManagerInfo info = client.getInfo();
+    private void showInfo(ParkingManagerInfo info) {
         entryCount = info.getEntryCount();
         exitCount = info.getExitCount();
 
@@ -105,9 +126,7 @@ public class MainSceneController {
     }
 
     private UUID parkVehicle(String vehicleId, int gate) throws ParkingManagerException {
-        UUID uuid = client.parkVehicle(vehicleId.toString(), gate);
-        updateValues();
-        return uuid;
+        return client.parkVehicle(vehicleId.toString(), gate);
     }
 
     private String unparkRandomVehicle() throws ParkingManagerException {
@@ -121,7 +140,6 @@ public class MainSceneController {
         int random = RandomUtils.nextInt(0, vehicleIdsAsArray.length);
         String vehicleId = vehicleIdsAsArray[random];
         client.unparkVehicle(vehicleId, RandomUtils.nextInt(0, exitCount));
-        updateValues();
         return vehicleId;
     }
 
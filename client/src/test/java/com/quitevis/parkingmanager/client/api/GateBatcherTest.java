@@ -0,0 +1,91 @@
+package com.quitevis.parkingmanager.client.api;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.GateResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class GateBatcherTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<String>> sentBatches = Lists.newCopyOnWriteArrayList();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void fullBatchShouldBeSentRightAwayAndSplitBackToTheCallers() throws Exception {
+        GateBatcher batcher = new GateBatcher(this::answer, 3, TimeUnit.SECONDS.toMicros(60), Runnable::run,
+                scheduler);
+
+        CompletableFuture<GateResult> first = batcher.submit("A", 0);
+        CompletableFuture<GateResult> second = batcher.submit("B", 0);
+        assertThat(first.isDone(), is(false));
+        CompletableFuture<GateResult> third = batcher.submit("FULL", 0);
+
+        assertThat(sentBatches.size(), is(1));
+        assertThat(sentBatches.get(0), is(Lists.newArrayList("A", "B", "FULL")));
+        assertThat(first.get().getVehicleId(), is("A"));
+        assertThat(second.get().getVehicleId(), is("B"));
+        assertThat(third.get().isSuccess(), is(false));
+    }
+
+    @Test
+    public void batchShouldBeSentWhenItsWindowIsOverAndGatesShouldNotBeMixed() throws Exception {
+        GateBatcher batcher = new GateBatcher(this::answer, 100, 1000, Runnable::run, scheduler);
+
+        CompletableFuture<GateResult> first = batcher.submit("A", 0);
+        CompletableFuture<GateResult> second = batcher.submit("B", 1);
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getVehicleId(), is("A"));
+        assertThat(second.get(5, TimeUnit.SECONDS).getVehicleId(), is("B"));
+        assertThat(sentBatches.size(), is(2));
+    }
+
+    @Test
+    public void failedBatchShouldFailEveryCaller() throws Exception {
+        GateBatcher batcher = new GateBatcher((vehicleIds, gate) -> {
+            throw new ParkingManagerException(429, "Too many cars");
+        }, 2, TimeUnit.SECONDS.toMicros(60), Runnable::run, scheduler);
+
+        CompletableFuture<GateResult> first = batcher.submit("A", 0);
+        CompletableFuture<GateResult> second = batcher.submit("B", 0);
+
+        for (CompletableFuture<GateResult> future : Lists.newArrayList(first, second)) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(((ParkingManagerException) e.getCause()).getErrorCode(), is(429));
+            }
+        }
+    }
+
+    /**
+     * Turns away the vehicles named FULL
+     */
+    private List<GateResult> answer(List<String> vehicleIds, int gate) {
+        sentBatches.add(Lists.newArrayList(vehicleIds));
+        List<GateResult> results = Lists.newArrayList();
+        for (String vehicleId : vehicleIds) {
+            results.add(GateResult.builder()
+                    .vehicleId(vehicleId)
+                    .message(vehicleId.equals("FULL") ? "The parking lot is already full." : null)
+                    .build());
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,54 @@
+package com.quitevis.parkingmanager.client.load;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+
+public class EndpointStatsTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void latencyShouldBeCountedFromTheIntendedTimeAndServiceTimeFromTheSend() {
+        EndpointStats stats = new EndpointStats("enter");
+        //Due at 0, sent 30 ms late because the generator was behind, answered 2 ms later
+        stats.record(0, 30 * MILLIS, 32 * MILLIS, 200);
+
+        assertThat(stats.getCount(), is(1L));
+        assertThat(stats.getErrorCount(), is(0L));
+        assertThat(stats.getLatency().getMaxNanos(), is(32 * MILLIS));
+        assertThat(stats.getServiceTime().getMaxNanos(), is(2 * MILLIS));
+    }
+
+    @Test
+    public void errorsShouldBeCountedByStatus() {
+        EndpointStats stats = new EndpointStats("exit");
+        stats.record(0, 0, MILLIS, 200);
+        stats.record(0, 0, MILLIS, 409);
+        stats.record(0, 0, MILLIS, 409);
+        stats.record(0, 0, MILLIS, 0);
+
+        assertThat(stats.getCount(), is(4L));
+        assertThat(stats.getErrorCount(), is(3L));
+
+        StringBuilder report = new StringBuilder();
+        stats.report(report, 2.0);
+        assertThat(report.toString(), containsString("exit   requests: 4 (2.0/s), errors: 3 (75.00%)"));
+        assertThat(report.toString(), containsString("HTTP 409: 2"));
+        assertThat(report.toString(), containsString("no response: 1"));
+        assertThat(report.toString(), containsString("latency  p50 "));
+        assertThat(report.toString(), containsString("service  p50 "));
+    }
+
+    @Test
+    public void reportOfAnEndpointWithoutRequestsShouldHaveNoErrorRate() {
+        StringBuilder report = new StringBuilder();
+        new EndpointStats("exit").report(report, 1.0);
+
+        assertThat(report.toString(), containsString("requests: 0 (0.0/s), errors: 0 (0.00%)"));
+        assertThat(report.toString(), containsString("max 0.00 ms"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.quitevis.parkingmanager.client.load;
+
+import com.quitevis.parkingmanager.client.api.ParkingManagerClient;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void carShouldLeaveADwellTimeAfterItArrived() {
+        assertThat(LoadGenerator.departure(1000, 1200, 500), is(1500L));
+    }
+
+    @Test
+    public void carShouldNotLeaveBeforeItGotIn() {
+        assertThat(LoadGenerator.departure(1000, 1800, 500), is(1800L));
+    }
+
+    @Test
+    public void uniformArrivalsShouldBeEvenlySpaced() {
+        Random random = new Random(1);
+        for (int x = 0; x < 100; ++x) {
+            assertThat(LoadGenerator.nextInterval(false, random, 5000.0), is(5000.0));
+        }
+    }
+
+    @Test
+    public void poissonArrivalsShouldBeSpacedByTheMeanOnAverage() {
+        Random random = new Random(1);
+        double total = 0;
+        int count = 100000;
+        for (int x = 0; x < count; ++x) {
+            double interval = LoadGenerator.nextInterval(true, random, 5000.0);
+            assertThat(interval >= 0, is(true));
+            total += interval;
+        }
+
+        assertThat(Math.abs(total / count - 5000.0) < 100.0, is(true));
+    }
+
+    @Test
+    public void slowEntriesShouldNotBeChargedToTheExits() throws Exception {
+        //Every entry takes longer than the dwell time, so the cars are due to leave before they got in
+        ParkingManagerClient client = mock(ParkingManagerClient.class);
+        when(client.parkVehicle(anyString(), anyInt())).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return UUID.randomUUID();
+        });
+
+        LoadSettings settings = LoadSettings.builder()
+                .rate(100)
+                .durationSeconds(1)
+                .dwellMillis(10)
+                .concurrency(32)
+                .entryGates(2)
+                .exitGates(2)
+                .reportSeconds(10)
+                .build();
+        LoadGenerator generator = new LoadGenerator(client, settings);
+        generator.run();
+
+        assertThat(generator.getEnterStats().getCount(), is(100L));
+        assertThat(generator.getEnterStats().getErrorCount(), is(0L));
+        assertThat(generator.getEnterStats().getLatency().getValueAtPercentile(50)
+                >= TimeUnit.MILLISECONDS.toNanos(50), is(true));
+        assertThat(generator.getExitStats().getCount(), is(100L));
+        assertThat(generator.getExitStats().getLatency().getValueAtPercentile(50)
+                < TimeUnit.MILLISECONDS.toNanos(40), is(true));
+    }
+}
@@ -0,0 +1,79 @@
+package com.quitevis.parkingmanager.eventlog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Converts binary parking event log files to CSV, with the columns
+ * type,epochMicros,time,gate,ticketId,vehicleId
+ * <p>
+ * Usage: java -cp common.jar com.quitevis.parkingmanager.eventlog.EventLogCsv <event log file>... > events.csv
+ */
+public final class EventLogCsv {
+    public static final String HEADER = "type,epochMicros,time,gate,ticketId,vehicleId";
+
+    private EventLogCsv() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: EventLogCsv <event log file>...");
+            System.exit(1);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        writer.write(HEADER);
+        writer.write('\n');
+        for (String arg : args) {
+            convert(Paths.get(arg), writer);
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the events of the file to the writer as CSV lines, without the header.
+     * Returns the number of events written.
+     */
+    public static long convert(Path path, Writer writer) throws IOException {
+        long count = 0;
+        StringBuilder line = new StringBuilder(128);
+
+        try (EventLogReader reader = new EventLogReader(path)) {
+            while (reader.next()) {
+                long epochMicros = reader.getEpochMicros();
+                UUID ticketId = reader.getTicketId();
+
+                line.setLength(0);
+                line.append(reader.getType().name()).append(',')
+                        .append(epochMicros).append(',')
+                        .append(Instant.ofEpochSecond(Math.floorDiv(epochMicros, 1000000L),
+                                Math.floorMod(epochMicros, 1000000L) * 1000L)).append(',')
+                        .append(reader.getGate()).append(',')
+                        .append(ticketId == null ? "" : ticketId.toString()).append(',');
+                appendQuoted(line, reader.getVehicleId());
+                line.append('\n');
+                writer.append(line);
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    private static void appendQuoted(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,24 @@
+package com.quitevis.parkingmanager.eventlog;
+
+/**
+ * Layout of the binary parking event log files.
+ * <p>
+ * A file starts with [int MAGIC][int VERSION] and is followed by items, each starting with a tag byte:
+ * TAG_PLATE - [int plate id][int length][vehicle id UTF-8 bytes]. Defines the id of a vehicle id, the first time it
+ * is used in the file. Ids start at 0 in each file and go up by one, so every file can be read on its own.
+ * TAG_EVENT - [byte event type code][long epoch micros][int gate][long ticket msb][long ticket lsb][int plate id].
+ * Fixed size, EVENT_BYTES after the tag. A missing ticket is stored as 0 / 0.
+ * <p>
+ * All the numbers are big-endian.
+ */
+public final class EventLogFormat {
+    public static final int MAGIC = 0x50455654;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final byte TAG_PLATE = 1;
+    public static final byte TAG_EVENT = 2;
+    public static final int EVENT_BYTES = 1 + 8 + 4 + 8 + 8 + 4;
+
+    private EventLogFormat() {
+    }
+}
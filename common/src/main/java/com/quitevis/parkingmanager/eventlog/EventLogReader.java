@@ -0,0 +1,191 @@
+package com.quitevis.parkingmanager.eventlog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streams the events of a binary parking event log file, one at a time.
+ * <p>
+ * The reader does not create an object per event: next() moves to the following event and the getters return its
+ * fields, so files larger than the heap can be scanned quickly. An incomplete event at the end of the file, left by a
+ * crash, is ignored.
+ */
+public class EventLogReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final List<String> vehicleIds;
+    private boolean endOfFile;
+
+    private EventType type;
+    private long epochMicros;
+    private int gate;
+    private long ticketMostSigBits;
+    private long ticketLeastSigBits;
+    private int vehicleIdIndex;
+
+    public EventLogReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.buffer.limit(0);
+        this.vehicleIds = new ArrayList<>();
+
+        try {
+            if (!fill(EventLogFormat.HEADER_BYTES)
+                    || buffer.getInt() != EventLogFormat.MAGIC
+                    || buffer.getInt() != EventLogFormat.VERSION) {
+                throw new IOException(path + " is not a parking event log");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next event. Returns false once there are no more events.
+     */
+    public boolean next() throws IOException {
+        while (fill(1)) {
+            byte tag = buffer.get();
+            if (tag == EventLogFormat.TAG_EVENT) {
+                if (!fill(EventLogFormat.EVENT_BYTES)) {
+                    return false;
+                }
+
+                type = EventType.fromCode(buffer.get());
+                epochMicros = buffer.getLong();
+                gate = buffer.getInt();
+                ticketMostSigBits = buffer.getLong();
+                ticketLeastSigBits = buffer.getLong();
+                vehicleIdIndex = buffer.getInt();
+                if (vehicleIdIndex < 0 || vehicleIdIndex >= vehicleIds.size()) {
+                    throw new IOException(path + " refers to an undefined vehicle id: " + vehicleIdIndex);
+                }
+
+                return true;
+            } else if (tag == EventLogFormat.TAG_PLATE) {
+                if (!readPlate()) {
+                    return false;
+                }
+            } else {
+                throw new IOException(path + " has an unknown item: " + tag);
+            }
+        }
+
+        return false;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public long getEpochMicros() {
+        return epochMicros;
+    }
+
+    public int getGate() {
+        return gate;
+    }
+
+    /**
+     * Returns the ticket of the event, or null if the vehicle did not have one
+     */
+    public UUID getTicketId() {
+        if (ticketMostSigBits == 0 && ticketLeastSigBits == 0) {
+            return null;
+        }
+
+        return new UUID(ticketMostSigBits, ticketLeastSigBits);
+    }
+
+    public long getTicketMostSigBits() {
+        return ticketMostSigBits;
+    }
+
+    public long getTicketLeastSigBits() {
+        return ticketLeastSigBits;
+    }
+
+    /**
+     * Returns the id of the vehicle id in the dictionary of this file
+     */
+    public int getVehicleIdIndex() {
+        return vehicleIdIndex;
+    }
+
+    public String getVehicleId() {
+        return vehicleIds.get(vehicleIdIndex);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean readPlate() throws IOException {
+        if (!fill(8)) {
+            return false;
+        }
+
+        int index = buffer.getInt();
+        int length = buffer.getInt();
+        if (index != vehicleIds.size() || length < 0) {
+            throw new IOException(path + " has an invalid vehicle id definition: " + index);
+        }
+
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (!fill(1)) {
+                return false;
+            }
+
+            int chunk = Math.min(buffer.remaining(), length - read);
+            buffer.get(bytes, read, chunk);
+            read += chunk;
+        }
+
+        vehicleIds.add(new String(bytes, StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /**
+     * Makes sure at least the given number of bytes can be read from the buffer.
+     * Returns false if the file ends before that.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+
+        if (endOfFile) {
+            return false;
+        }
+
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    endOfFile = true;
+                    break;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+
+        return buffer.remaining() >= bytes;
+    }
+}
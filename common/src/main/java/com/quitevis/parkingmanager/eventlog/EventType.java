@@ -0,0 +1,30 @@
+package com.quitevis.parkingmanager.eventlog;
+
+/**
+ * Type of a parking event, as stored in the binary event log. The codes must never change, old files use them.
+ */
+public enum EventType {
+    PARKED(0),
+    EXITED_PARKING(1),
+    UNABLE_TO_PARK(2);
+
+    private static final EventType[] BY_CODE = {PARKED, EXITED_PARKING, UNABLE_TO_PARK};
+
+    private final int code;
+
+    EventType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static EventType fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown event type code: " + code);
+        }
+
+        return BY_CODE[code];
+    }
+}
@@ -0,0 +1,67 @@
+package com.quitevis.parkingmanager.gate;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Layout of the frames of the native gate protocol, a lighter alternative to /rest/enter and /rest/exit for gate
+ * controllers that keep a TCP connection open.
+ * <p>
+ * Every frame starts with [int length], the number of bytes that follow it.
+ * A request is [int length][int request id][byte op][int gate][short plate length][vehicle id UTF-8 bytes], where op
+ * is OP_ENTER or OP_EXIT.
+ * A response is [int length][int request id][byte status][long ticket msb][long ticket lsb][short message length]
+ * [message UTF-8 bytes]. The ticket is the one given to the car on enter and the one it held on exit, 0 / 0 if the
+ * request failed. The message tells why the request failed, it is empty on STATUS_OK.
+ * <p>
+ * Requests can be pipelined: a client does not have to wait for a response before sending the next request. The
+ * responses come back as the gates finish with the cars, so not always in the order of the requests; the request id,
+ * chosen by the client, tells which request a response is for. A connection that sends a malformed frame is answered
+ * with STATUS_MALFORMED and closed.
+ * <p>
+ * All the numbers are big-endian.
+ */
+public final class GateProtocol {
+    public static final byte OP_ENTER = 1;
+    public static final byte OP_EXIT = 2;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_REJECTED = 1;
+    public static final byte STATUS_OVERLOADED = 2;
+    public static final byte STATUS_MALFORMED = 3;
+
+    public static final int MAX_PLATE_BYTES = 255;
+    public static final int MAX_MESSAGE_BYTES = 255;
+    public static final int REQUEST_HEADER_BYTES = 4 + 4 + 1 + 4 + 2;
+    public static final int RESPONSE_HEADER_BYTES = 4 + 4 + 1 + 8 + 8 + 2;
+    public static final int MAX_FRAME_BYTES = RESPONSE_HEADER_BYTES + MAX_MESSAGE_BYTES;
+
+    private GateProtocol() {
+    }
+
+    /**
+     * Writes a request to the buffer, which must have REQUEST_HEADER_BYTES + plate.length bytes left
+     */
+    public static void writeRequest(ByteBuffer buffer, int requestId, byte op, int gate, byte[] plate) {
+        buffer.putInt(REQUEST_HEADER_BYTES - 4 + plate.length);
+        buffer.putInt(requestId);
+        buffer.put(op);
+        buffer.putInt(gate);
+        buffer.putShort((short) plate.length);
+        buffer.put(plate);
+    }
+
+    /**
+     * Writes a response to the buffer, which must have RESPONSE_HEADER_BYTES + message.length bytes left. ticket may
+     * be null.
+     */
+    public static void writeResponse(ByteBuffer buffer, int requestId, byte status, UUID ticket, byte[] message) {
+        buffer.putInt(RESPONSE_HEADER_BYTES - 4 + message.length);
+        buffer.putInt(requestId);
+        buffer.put(status);
+        buffer.putLong(ticket == null ? 0 : ticket.getMostSignificantBits());
+        buffer.putLong(ticket == null ? 0 : ticket.getLeastSignificantBits());
+        buffer.putShort((short) message.length);
+        buffer.put(message);
+    }
+}
@@ -0,0 +1,155 @@
+package com.quitevis.parkingmanager.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations, in nanoseconds, in log-linear buckets: every power of two is split in 8 buckets, so a value is
+ * known to within 12.5%. Values of 2^36 ns (about 69 seconds) and more are counted in the last bucket.
+ * <p>
+ * Recording a value is a few atomic increments, with no lock and no allocation, so it can be called from several
+ * threads on a hot path. The counts read while values are being recorded can be a little behind one another.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong sumNanos;
+    private final AtomicLong maxNanos;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.sumNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(nanos));
+        sumNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Adds the counts of the other histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int x = 0; x < BUCKETS; ++x) {
+            long count = other.counts.get(x);
+            if (count != 0) {
+                counts.addAndGet(x, count);
+            }
+        }
+
+        sumNanos.addAndGet(other.sumNanos.get());
+        long max = maxNanos.get();
+        long otherMax = other.maxNanos.get();
+        while (otherMax > max && !maxNanos.compareAndSet(max, otherMax)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int x = 0; x < BUCKETS; ++x) {
+            total += counts.get(x);
+        }
+
+        return total;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the number of values in the bucket
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Returns the number of values below 2^exponent ns
+     */
+    public long getCountBelowPowerOfTwo(int exponent) {
+        int end;
+        if (exponent <= SUB_BUCKET_BITS) {
+            end = 1 << Math.max(exponent, 0);
+        } else if (exponent >= MAX_EXPONENT) {
+            end = BUCKETS;
+        } else {
+            end = bucketOf(1L << exponent);
+        }
+
+        long total = 0;
+        for (int x = 0; x < end; ++x) {
+            total += counts.get(x);
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the value under which the given percentage (0 - 100) of the values are, rounded up to the end of its
+     * bucket. Returns 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int x = 0; x < BUCKETS; ++x) {
+            seen += counts.get(x);
+            if (seen >= rank) {
+                return Math.min(getUpperBound(x) - 1, maxNanos.get());
+            }
+        }
+
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the first value, in ns, that is past the bucket
+     */
+    public static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+}
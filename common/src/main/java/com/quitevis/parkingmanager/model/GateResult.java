@@ -0,0 +1,31 @@
+package com.quitevis.parkingmanager.model;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of one vehicle of a batch of vehicles entering or exiting through a gate.
+ * If the vehicle was turned away, message tells why. Vehicles that exited have the fee of their stay, in cents.
+ */
+@Data
+@Builder
+public class GateResult {
+    private final String vehicleId;
+    private final UUID ticketId;
+    private final String message;
+    private final Long fee;
+
+    public boolean isSuccess() {
+        return message == null;
+    }
+
+    public static List<GateResult> listFromJson(String json) {
+        Gson gson = new Gson();
+        return gson.fromJson(json, new TypeToken<List<GateResult>>() { }.getType());
+    }
+}
@@ -0,0 +1,27 @@
+package com.quitevis.parkingmanager.model;
+
+import com.google.gson.Gson;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of the ids of the parked vehicles, in order. next is the cursor of the following page (the last id of
+ * this one), or null if this is the last page.
+ */
+@Data
+@Builder
+public class ParkedVehiclePage {
+    private final List<String> vehicleIds;
+    private final String next;
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    public static ParkedVehiclePage fromJson(String json) {
+        Gson gson = new Gson();
+        return gson.fromJson(json, ParkedVehiclePage.class);
+    }
+}
@@ -0,0 +1,20 @@
+package com.quitevis.parkingmanager.model;
+
+import com.google.gson.Gson;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Number of cars that entered / exited the parking lot since the previous flow event of /rest/events
+ */
+@Data
+@Builder
+public class ParkingFlow {
+    private final long entered;
+    private final long exited;
+
+    public static ParkingFlow fromJson(String json) {
+        Gson gson = new Gson();
+        return gson.fromJson(json, ParkingFlow.class);
+    }
+}
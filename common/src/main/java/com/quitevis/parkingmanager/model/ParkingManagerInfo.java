@@ -4,14 +4,22 @@ import com.google.gson.Gson;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
+/**
+ * Occupancy of the parking lot. version goes up by one with every change of the parked vehicles, so two infos of the
+ * same server with the same version hold the same counts.
+ */
 @Data
 @Builder
 public class ParkingManagerInfo {
+    private final long version;
     private final int maxCapacity;
     private final int currentCapacity;
     private final int capacityLeft;
     private final int entryCount;
     private final int exitCount;
+    private final List<ZoneInfo> zones;
 
     public static ParkingManagerInfo fromJson(String json) {
         Gson gson = new Gson();
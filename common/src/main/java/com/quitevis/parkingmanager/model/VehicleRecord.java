@@ -10,9 +10,13 @@ import java.util.UUID;
 @Builder
 public class VehicleRecord {
     private String vehicleId;
+    private int entryGate;
+    private int exitGate;
     private UUID ticketId;
     private LocalDateTime dateEntered;
     private LocalDateTime dateExited;
+    //What the driver owes for the stay, in cents, set on exit
+    private long fee;
 
     @Override
     public boolean equals(Object o) {
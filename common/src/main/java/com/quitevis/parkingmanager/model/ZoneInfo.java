@@ -0,0 +1,13 @@
+package com.quitevis.parkingmanager.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ZoneInfo {
+    private final String name;
+    private final int maxCapacity;
+    private final int currentCapacity;
+    private final int capacityLeft;
+}
@@ -0,0 +1,111 @@
+package com.quitevis.parkingmanager.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void lowestAndHighestValuesOfEveryBucketShouldBeCountedInIt() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; ++bucket) {
+            long lowest = bucket == 0 ? 0 : LatencyHistogram.getUpperBound(bucket - 1);
+            long highest = LatencyHistogram.getUpperBound(bucket) - 1;
+            assertThat(lowest <= highest, is(true));
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(lowest);
+            histogram.record(highest);
+            assertThat("bucket " + bucket, histogram.getCount(bucket), is(2L));
+        }
+    }
+
+    @Test
+    public void bucketsShouldBeWithinAnEighthOfTheirValues() {
+        assertThat(LatencyHistogram.getUpperBound(7), is(8L));
+        assertThat(LatencyHistogram.getUpperBound(8), is(9L));
+        assertThat(LatencyHistogram.getUpperBound(16), is(18L));
+        for (int bucket = 16; bucket < LatencyHistogram.BUCKETS; ++bucket) {
+            long lowest = LatencyHistogram.getUpperBound(bucket - 1);
+            long width = LatencyHistogram.getUpperBound(bucket) - lowest;
+            assertThat(width * 8 <= lowest, is(true));
+        }
+    }
+
+    @Test
+    public void valuesOfAbout69SecondsAndMoreShouldBeCountedInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 36);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 2));
+
+        assertThat(LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 1), is(1L << 36));
+        assertThat(histogram.getCount(LatencyHistogram.BUCKETS - 1), is(3L));
+        assertThat(histogram.getCount(), is(3L));
+        assertThat(histogram.getMaxNanos(), is(Long.MAX_VALUE));
+        assertThat(histogram.getCountBelowPowerOfTwo(36), is(3L));
+        assertThat(histogram.getCountBelowPowerOfTwo(35), is(0L));
+    }
+
+    @Test
+    public void negativeValuesShouldBeCountedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.getCount(0), is(1L));
+        assertThat(histogram.getSumNanos(), is(0L));
+        assertThat(histogram.getMaxNanos(), is(0L));
+    }
+
+    @Test
+    public void countBelowPowerOfTwoShouldStopAtTheBucketOfThePower() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 1000; ++value) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getCountBelowPowerOfTwo(0), is(1L));
+        assertThat(histogram.getCountBelowPowerOfTwo(3), is(8L));
+        assertThat(histogram.getCountBelowPowerOfTwo(4), is(16L));
+        assertThat(histogram.getCountBelowPowerOfTwo(9), is(512L));
+        assertThat(histogram.getCountBelowPowerOfTwo(10), is(1000L));
+    }
+
+    @Test
+    public void percentilesShouldBeRoundedUpToTheEndOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getValueAtPercentile(50), is(0L));
+
+        for (long value = 1; value <= 100; ++value) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getSumNanos(), is(5050L));
+        //Rank 1 is the value 1, alone in its bucket
+        assertThat(histogram.getValueAtPercentile(0), is(1L));
+        //Rank 50 is the value 50, in the bucket of 48 - 51
+        assertThat(histogram.getValueAtPercentile(50), is(51L));
+        //Rank 99 is in the bucket of 96 - 103, which is capped by the largest value
+        assertThat(histogram.getValueAtPercentile(99), is(100L));
+        assertThat(histogram.getValueAtPercentile(100), is(100L));
+    }
+
+    @Test
+    public void addShouldMergeTheCountsSumAndMax() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(10);
+        first.record(1000);
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(10);
+        second.record(5000);
+
+        first.add(second);
+        assertThat(first.getCount(), is(4L));
+        assertThat(first.getCount(10), is(2L));
+        assertThat(first.getSumNanos(), is(6020L));
+        assertThat(first.getMaxNanos(), is(5000L));
+        assertThat(second.getCount(), is(2L));
+    }
+}
@@ -2,14 +2,36 @@ package com.quitevis.parkingmanager.server;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.quitevis.parkingmanager.server.gate.GateServer;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ReplicaJournal;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.JournalFollower;
+import com.quitevis.parkingmanager.server.manager.ParkingLots;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
 import com.quitevis.parkingmanager.server.manager.ParkingManagerModule;
+import com.quitevis.parkingmanager.server.webserver.LotsWebServer;
 import com.quitevis.parkingmanager.server.webserver.WebServer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Starts the http webserver using an embedded Jetty
+ * Starts the http webserver using an embedded Jetty, after rebuilding the parked vehicles from the journal.
+ * A snapshot of the parked vehicles is saved every parking.snapshot.interval.seconds (0 to disable) and on shutdown.
+ * If gate.server.port is set, the native gate protocol is served on that port as well (see GateServer).
+ * <p>
+ * If parking.replica.of is set, the server is a read-only replica that follows the journal of the leader in that
+ * directory (see JournalFollower) until it is promoted with a POST to /rest/replication.
+ * <p>
+ * If parking.lots.dir is set, the server hosts every lot configured in that directory instead (see ParkingLots and
+ * LotsServlet). The native gate protocol has no lot id, so it is not served in that mode.
  */
 @Slf4j
 public class WebServerLauncher {
@@ -21,7 +43,94 @@ public class WebServerLauncher {
 
         ParkingManagerModule parkingManagerModule = new ParkingManagerModule(Paths.get(args[0]));
         Injector injector = Guice.createInjector(parkingManagerModule);
-        WebServer server = injector.getInstance(WebServer.class);
+
+        String lotsDirectory = injector.getInstance(Key.get(String.class, Names.named("parking.lots.dir")));
+        if (!lotsDirectory.isEmpty()) {
+            startLots(injector);
+            return;
+        }
+
+        ParkingJournal parkingJournal = injector.getInstance(ParkingJournal.class);
+        ParkingLogger parkingLogger = injector.getInstance(ParkingLogger.class);
+        ParkingManager parkingManager = injector.getInstance(ParkingManager.class);
+        parkingManager.recover();
+
+        JournalFollower journalFollower = null;
+        if (parkingJournal instanceof ReplicaJournal) {
+            long pollMillis = injector.getInstance(Key.get(Long.class, Names.named("parking.replica.poll.millis")));
+            journalFollower = new JournalFollower(parkingManager, (ReplicaJournal) parkingJournal, pollMillis);
+            journalFollower.start();
+        }
+
+        ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor();
+        int snapshotInterval = injector.getInstance(Key.get(Integer.class, Names.named("parking.snapshot.interval.seconds")));
+        if (snapshotInterval > 0) {
+            snapshotScheduler.scheduleWithFixedDelay(
+                    () -> snapshot(parkingManager), snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+
+        int gateServerPort = injector.getInstance(Key.get(Integer.class, Names.named("gate.server.port")));
+        GateServer gateServer = gateServerPort > 0 ? new GateServer(parkingManager, gateServerPort) : null;
+        if (gateServer != null) {
+            gateServer.start();
+        }
+
+        JournalFollower follower = journalFollower;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (gateServer != null) {
+                gateServer.close();
+            }
+
+            if (follower != null) {
+                follower.close();
+            }
+
+            snapshotScheduler.shutdownNow();
+            snapshot(parkingManager);
+            parkingLogger.close();
+            try {
+                parkingJournal.close();
+            } catch (IOException e) {
+                log.error("Unable to close the journal", e);
+            }
+        }));
+
+        WebServer server = new WebServer(parkingManager,
+                injector.getInstance(Key.get(Integer.class, Names.named("server.port"))),
+                injector.getInstance(Key.get(Long.class, Names.named("server.events.period.millis"))),
+                journalFollower);
         server.start();
     }
+
+    private static void startLots(Injector injector) throws Exception {
+        ParkingLogger parkingLogger = injector.getInstance(ParkingLogger.class);
+        ParkingLots parkingLots = injector.getInstance(ParkingLots.class);
+        parkingLots.recover();
+
+        ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor();
+        int snapshotInterval =
+                injector.getInstance(Key.get(Integer.class, Names.named("parking.snapshot.interval.seconds")));
+        if (snapshotInterval > 0) {
+            snapshotScheduler.scheduleWithFixedDelay(
+                    parkingLots::snapshot, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            snapshotScheduler.shutdownNow();
+            parkingLots.snapshot();
+            parkingLogger.close();
+            parkingLots.close();
+        }));
+
+        LotsWebServer server = injector.getInstance(LotsWebServer.class);
+        server.start();
+    }
+
+    private static void snapshot(ParkingManager parkingManager) {
+        try {
+            parkingManager.snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to save a snapshot of the parked vehicles", e);
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.quitevis.parkingmanager.server.gate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the direct buffers of closed connections for the next ones, so that connections coming and going do not
+ * allocate (and leave to the garbage collector) direct memory. At most maxPooled buffers are kept.
+ * <p>
+ * Not thread-safe, it is only used by the selector thread of the GateServer.
+ */
+class DirectBufferPool {
+    private final int bufferBytes;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> buffers;
+
+    DirectBufferPool(int bufferBytes, int maxPooled) {
+        this.bufferBytes = bufferBytes;
+        this.maxPooled = maxPooled;
+        this.buffers = new ArrayDeque<>();
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffers.size() < maxPooled) {
+            buffers.push(buffer);
+        }
+    }
+}
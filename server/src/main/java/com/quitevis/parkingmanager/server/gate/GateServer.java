@@ -0,0 +1,376 @@
+package com.quitevis.parkingmanager.server.gate;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.quitevis.parkingmanager.gate.GateProtocol;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.GateOverloadedException;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves the native gate protocol (see GateProtocol) next to the Jetty server, for gate controllers that only enter
+ * and exit cars and do not want to pay for HTTP and json.
+ * <p>
+ * A single selector thread accepts the connections, reads and decodes the requests and writes the responses, all
+ * without blocking. Each decoded request goes straight to ParkingManager.enter / exit, so the cars of a connection
+ * queue on their gates like the cars of /rest/enter and /rest/exit do, and a connection can have many requests in
+ * flight. When the gate is done with a car, its response is queued on the connection and the selector thread is woken
+ * up to write it, at most once for all the responses that pile up in the meantime.
+ * <p>
+ * Every connection reads into and writes from direct buffers taken from a pool, which are given back when it closes.
+ */
+@Slf4j
+public class GateServer implements AutoCloseable {
+    private static final int BUFFER_BYTES = 32 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final byte[] NO_MESSAGE = new byte[0];
+
+    private final ParkingManager parkingManager;
+    private final int port;
+    private final DirectBufferPool bufferPool;
+    private final Queue<Connection> pendingFlushes;
+    private final Set<Connection> connections;
+    private final byte[] plate;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    public GateServer(ParkingManager parkingManager, int port) {
+        this.parkingManager = parkingManager;
+        this.port = port;
+        this.bufferPool = new DirectBufferPool(BUFFER_BYTES, MAX_POOLED_BUFFERS);
+        this.pendingFlushes = new ConcurrentLinkedQueue<>();
+        this.connections = Sets.newHashSet();
+        this.plate = new byte[GateProtocol.MAX_PLATE_BYTES];
+    }
+
+    /**
+     * Starts listening on the port (any free port if 0) and serving the connections, in a background thread
+     */
+    public synchronized void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::run, "gate-server");
+        thread.start();
+        log.info("Serving the gate protocol on port {}", getLocalPort());
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones. Responses still in flight are lost.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            //Swallow exception, the channels are closed anyway
+            log.error("Await termination of the gate server got interrupted", e);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+
+                Connection connection;
+                while ((connection = pendingFlushes.poll()) != null) {
+                    connection.flush();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Error in the gate server loop", e);
+            }
+        }
+
+        Lists.newArrayList(connections).forEach(Connection::close);
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the gate server channel: {}", e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(channel, key, bufferPool.acquire(), bufferPool.acquire());
+        key.attach(connection);
+        connections.add(connection);
+    }
+
+    private static final class Response {
+        private final int requestId;
+        private final byte status;
+        private final UUID ticket;
+        private final String message;
+
+        private Response(int requestId, byte status, UUID ticket, String message) {
+            this.requestId = requestId;
+            this.status = status;
+            this.ticket = ticket;
+            this.message = message;
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            byte[] messageBytes = NO_MESSAGE;
+            if (message != null) {
+                messageBytes = message.getBytes(StandardCharsets.UTF_8);
+                if (messageBytes.length > GateProtocol.MAX_MESSAGE_BYTES) {
+                    messageBytes = Arrays.copyOf(messageBytes, GateProtocol.MAX_MESSAGE_BYTES);
+                }
+            }
+
+            GateProtocol.writeResponse(buffer, requestId, status, ticket, messageBytes);
+        }
+    }
+
+    /**
+     * One gate controller. Everything but respond runs on the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer;
+        private final ByteBuffer writeBuffer;
+        private final Queue<Response> responses;
+        private final AtomicBoolean flushScheduled;
+        private volatile boolean closed;
+        private boolean closing;
+
+        private Connection(SocketChannel channel, SelectionKey key, ByteBuffer readBuffer, ByteBuffer writeBuffer) {
+            this.channel = channel;
+            this.key = key;
+            this.readBuffer = readBuffer;
+            this.writeBuffer = writeBuffer;
+            this.responses = new ConcurrentLinkedQueue<>();
+            this.flushScheduled = new AtomicBoolean();
+        }
+
+        /**
+         * Decodes and dispatches every complete request read so far. A partial request stays in the buffer until
+         * the rest of it arrives.
+         */
+        private void read() {
+            if (closing) {
+                return;
+            }
+
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                int plateLength = length - (GateProtocol.REQUEST_HEADER_BYTES - 4);
+                if (plateLength < 0 || plateLength > GateProtocol.MAX_PLATE_BYTES) {
+                    malformed(0, "Invalid frame length " + length);
+                    return;
+                }
+
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+
+                readBuffer.getInt();
+                int requestId = readBuffer.getInt();
+                byte op = readBuffer.get();
+                int gate = readBuffer.getInt();
+                int declaredPlateLength = readBuffer.getShort() & 0xFFFF;
+                if (declaredPlateLength != plateLength) {
+                    malformed(requestId, "The plate length does not match the frame length");
+                    return;
+                }
+
+                readBuffer.get(plate, 0, plateLength);
+                dispatch(requestId, op, gate, new String(plate, 0, plateLength, StandardCharsets.UTF_8));
+            }
+
+            readBuffer.compact();
+        }
+
+        private void dispatch(int requestId, byte op, int gate, String vehicleId) {
+            VehicleRecord vehicleRecord = VehicleRecord.builder().vehicleId(vehicleId).build();
+            CompletableFuture<UUID> future;
+            try {
+                switch (op) {
+                    case GateProtocol.OP_ENTER:
+                        future = parkingManager.enter(gate, vehicleRecord);
+                        break;
+                    case GateProtocol.OP_EXIT:
+                        future = parkingManager.exit(gate, vehicleRecord).thenApply(VehicleRecord::getTicketId);
+                        break;
+                    default:
+                        respond(new Response(requestId, GateProtocol.STATUS_REJECTED, null, "Unknown op " + op));
+                        return;
+                }
+            } catch (GateOverloadedException e) {
+                respond(new Response(requestId, GateProtocol.STATUS_OVERLOADED, null, e.getMessage()));
+                return;
+            } catch (RuntimeException e) {
+                respond(new Response(requestId, GateProtocol.STATUS_REJECTED, null, e.getMessage()));
+                return;
+            }
+
+            future.whenComplete((ticket, error) -> {
+                if (error == null) {
+                    respond(new Response(requestId, GateProtocol.STATUS_OK, ticket, null));
+                } else {
+                    respond(new Response(requestId, GateProtocol.STATUS_REJECTED, null,
+                            Throwables.getRootCause(error).getMessage()));
+                }
+            });
+        }
+
+        /**
+         * Answers the request with STATUS_MALFORMED, then closes the connection once the responses are written
+         */
+        private void malformed(int requestId, String message) {
+            log.warn("Closing a gate connection that sent a malformed frame: {}", message);
+            closing = true;
+            responses.add(new Response(requestId, GateProtocol.STATUS_MALFORMED, null, message));
+            flush();
+        }
+
+        /**
+         * Can be called from any thread. Queues the response and has the selector thread write it.
+         */
+        private void respond(Response response) {
+            responses.add(response);
+            if (flushScheduled.compareAndSet(false, true)) {
+                pendingFlushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Writes as many of the queued responses as the socket takes. What is left is written when the socket is
+         * writable again.
+         */
+        private void flush() {
+            if (closed) {
+                return;
+            }
+
+            //Reset first, so that a response queued while flushing schedules another flush
+            flushScheduled.set(false);
+            try {
+                Response response;
+                while (writeBuffer.remaining() >= GateProtocol.MAX_FRAME_BYTES
+                        && (response = responses.poll()) != null) {
+                    response.writeTo(writeBuffer);
+                }
+
+                writeBuffer.flip();
+                channel.write(writeBuffer);
+                writeBuffer.compact();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            boolean more = writeBuffer.position() > 0 || !responses.isEmpty();
+            if (closing && !more) {
+                close();
+                return;
+            }
+
+            int readInterest = closing ? 0 : SelectionKey.OP_READ;
+            key.interestOps(more ? readInterest | SelectionKey.OP_WRITE : readInterest);
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            connections.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Unable to close a gate connection: {}", e.getMessage());
+            }
+
+            bufferPool.release(readBuffer);
+            bufferPool.release(writeBuffer);
+        }
+    }
+}
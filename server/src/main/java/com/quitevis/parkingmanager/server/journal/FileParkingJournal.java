@@ -0,0 +1,602 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Journal written to segment files in a directory, named journal-[sequence of their first entry].log.
+ * <p>
+ * An entry is: [int payload length][int CRC32 of the payload][payload], where the payload is
+ * [byte type][long sequence][int gate][byte flags][long ticket msb][long ticket lsb][long date millis]
+ * [int vehicle id length][vehicle id UTF-8 bytes]. Sequences start at 1 and have no gaps. When the journal is opened,
+ * an entry that was only partly written when the server stopped is cut off the end of the last segment.
+ * <p>
+ * The mutation of a commit runs while the journal is locked, together with the encoding of its entries, so that the
+ * sequences follow the order of the changes. The lock is only held for that: the entries are written and forced
+ * outside of it, so the gates keep changing the lot while the disk is busy. How long a commit waits is set by the
+ * sync mode:
+ * SYNC - every commit writes and forces its entries to disk before returning. A commit that finds the disk busy waits
+ * for it, and its entries are then forced together with those of the other commits that arrived meanwhile.
+ * GROUP - commits add their entries to a buffer and wait. A flusher thread writes the buffer and forces it to disk
+ * once for all the commits that arrived during the group commit window or during the previous force.
+ * ASYNC - like GROUP, but commits do not wait for the flusher. Entries of the last window can be lost in a crash.
+ * <p>
+ * Snapshots are written next to the segments, named snapshot-[sequence of the last entry they cover].snap (see
+ * SnapshotFile). Once a snapshot is on disk, the older snapshots and the segments that only hold entries it covers
+ * are deleted, so replay reads the snapshot and at most the segments written after it.
+ */
+@Slf4j
+public class FileParkingJournal implements ParkingJournal {
+    public enum SyncMode {
+        SYNC,
+        GROUP,
+        ASYNC
+    }
+
+    private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 1 + 8 + 4 + 1 + 8 + 8 + 8 + 4;
+    private static final int HAS_TICKET = 1;
+    private static final int HAS_DATE = 2;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final SyncMode syncMode;
+    private final long groupCommitWindowNanos;
+    private final long maxSegmentBytes;
+    private final Thread flusher;
+    private final Object snapshotLock;
+    //Held while writing to disk in SYNC mode
+    private final Object diskLock;
+
+    //Guarded by this
+    private final List<JournalEntry> appended;
+    private final CRC32 crc;
+    private ByteBuffer pending;
+    private long pendingFirstSequence;
+    private List<CompletableFuture<Void>> waiting;
+    private long nextSequence;
+    private boolean rollRequested;
+    private IOException failure;
+    private boolean closed;
+
+    //Only used by the thread writing to disk: the flusher, or the committing thread holding diskLock in SYNC mode
+    private ByteBuffer writing;
+    private FileChannel segment;
+    private long segmentBytes;
+    private long writtenSequence;
+
+    public FileParkingJournal(Path directory, SyncMode syncMode, long groupCommitWindowMicros, long maxSegmentBytes)
+            throws IOException {
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.groupCommitWindowNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitWindowMicros);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.appended = Lists.newArrayList();
+        this.crc = new CRC32();
+        this.pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        this.writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        this.waiting = Lists.newArrayList();
+        this.snapshotLock = new Object();
+        this.diskLock = new Object();
+
+        Files.createDirectories(directory);
+        openLastSegment();
+
+        if (syncMode == SyncMode.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::flushLoop, "parking-journal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(Consumer<List<JournalEntry>> mutation) {
+        long lastSequence;
+        synchronized (this) {
+            checkWritable();
+
+            try {
+                mutation.accept(appended);
+                if (appended.isEmpty()) {
+                    return COMMITTED;
+                }
+
+                if (pending.position() == 0) {
+                    pendingFirstSequence = nextSequence;
+                }
+
+                for (JournalEntry entry : appended) {
+                    append(entry, nextSequence++);
+                }
+            } finally {
+                appended.clear();
+            }
+
+            switch (syncMode) {
+                case SYNC:
+                    lastSequence = nextSequence - 1;
+                    break;
+                case ASYNC:
+                    notifyAll();
+                    return COMMITTED;
+                default:
+                    CompletableFuture<Void> committed = new CompletableFuture<>();
+                    waiting.add(committed);
+                    notifyAll();
+                    return committed;
+            }
+        }
+
+        return writeUpTo(lastSequence);
+    }
+
+    @Override
+    public void replay(Consumer<VehicleRecord> parked, Consumer<JournalEntry> consumer) throws IOException {
+        long snapshotSequence = 0;
+        List<Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            snapshotSequence = SnapshotFile.read(snapshots.get(snapshots.size() - 1), parked);
+        }
+
+        for (Path path : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            scan(path, snapshotSequence, consumer);
+        }
+    }
+
+    @Override
+    public void snapshot(Supplier<Collection<VehicleRecord>> capture) throws IOException {
+        synchronized (snapshotLock) {
+            Collection<VehicleRecord> vehicleRecords;
+            long sequence;
+            synchronized (this) {
+                checkWritable();
+                vehicleRecords = capture.get();
+                sequence = nextSequence - 1;
+
+                //Start a new segment after the snapshot so that the current one only holds entries it covers
+                rollRequested = true;
+                notifyAll();
+            }
+
+            if (syncMode == SyncMode.SYNC) {
+                CompletableFuture<Void> rolled = writeUpTo(Long.MAX_VALUE);
+                if (rolled.isCompletedExceptionally()) {
+                    throw new IOException("Unable to start a new journal segment", failure());
+                }
+            }
+
+            Path snapshot = directory.resolve(name(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+            Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+            SnapshotFile.write(temporary, sequence, vehicleRecords);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+
+            for (Path older : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (sequenceOf(older, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < sequence) {
+                    Files.delete(older);
+                }
+            }
+
+            //A segment only holds entries covered by the snapshot if the next segment starts right after it
+            List<Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            for (int x = 0; x < segments.size() - 1; ++x) {
+                if (sequenceOf(segments.get(x + 1), SEGMENT_PREFIX, SEGMENT_SUFFIX) > sequence + 1) {
+                    break;
+                }
+
+                Files.delete(segments.get(x));
+            }
+
+            log.info("Wrote a snapshot of {} vehicles at journal sequence {}", vehicleRecords.size(), sequence);
+        }
+    }
+
+    /**
+     * Writes what is left in the buffer, forces it to disk and closes the segment. Commits made after close fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            notifyAll();
+        }
+
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (diskLock) {
+            segment.close();
+        }
+    }
+
+    //Must be called with the lock held
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("The journal is closed.");
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException("The journal can no longer be written.", failure);
+        }
+    }
+
+    private synchronized IOException failure() {
+        return failure;
+    }
+
+    /**
+     * SYNC mode: writes and forces the entries up to the sequence, unless a commit that held the disk before did it
+     * along with its own. Whatever is pending when the disk is free is written, so the commits waiting for the disk
+     * share a single force. Must be called without the lock held.
+     */
+    private CompletableFuture<Void> writeUpTo(long sequence) {
+        synchronized (diskLock) {
+            long firstSequence;
+            long lastSequence;
+            boolean roll;
+            synchronized (this) {
+                if (failure != null) {
+                    return failed(failure);
+                }
+
+                if (writtenSequence >= sequence && !rollRequested) {
+                    return COMMITTED;
+                }
+
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                firstSequence = writing.position() == 0 ? nextSequence : pendingFirstSequence;
+                lastSequence = nextSequence - 1;
+                roll = rollRequested;
+                rollRequested = false;
+            }
+
+            try {
+                if (roll) {
+                    rollSegment(firstSequence);
+                }
+
+                writing.flip();
+                if (writing.hasRemaining()) {
+                    write(writing, lastSequence);
+                }
+                writing.clear();
+                writtenSequence = lastSequence;
+                return COMMITTED;
+            } catch (IOException e) {
+                log.error("Unable to write the journal", e);
+                synchronized (this) {
+                    failure = e;
+                }
+
+                return failed(e);
+            }
+        }
+    }
+
+    private static CompletableFuture<Void> failed(IOException e) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<CompletableFuture<Void>> flushed;
+            long firstSequence;
+            long lastSequence;
+            boolean roll;
+            synchronized (this) {
+                try {
+                    while (pending.position() == 0 && !rollRequested && !closed) {
+                        wait();
+                    }
+
+                    if (pending.position() == 0 && !rollRequested) {
+                        return;
+                    }
+
+                    //Give the other gates a chance to join this force
+                    long deadline = System.nanoTime() + groupCommitWindowNanos;
+                    long left = pending.position() == 0 ? 0 : groupCommitWindowNanos;
+                    while (left > 0 && !closed) {
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                        left = deadline - System.nanoTime();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                flushed = waiting;
+                waiting = Lists.newArrayList();
+                firstSequence = writing.position() == 0 ? nextSequence : pendingFirstSequence;
+                lastSequence = nextSequence - 1;
+                roll = rollRequested;
+                rollRequested = false;
+            }
+
+            try {
+                if (roll) {
+                    rollSegment(firstSequence);
+                }
+
+                writing.flip();
+                if (writing.hasRemaining()) {
+                    write(writing, lastSequence);
+                }
+                writing.clear();
+            } catch (IOException e) {
+                log.error("Unable to write the journal", e);
+                synchronized (this) {
+                    failure = e;
+                    flushed.addAll(waiting);
+                    waiting.clear();
+                }
+
+                flushed.forEach(p -> p.completeExceptionally(e));
+                return;
+            }
+
+            flushed.forEach(p -> p.complete(null));
+        }
+    }
+
+    //Must be called with the lock held
+    private void append(JournalEntry entry, long sequence) {
+        byte[] vehicleId = entry.getVehicleId() == null
+                ? new byte[0]
+                : entry.getVehicleId().getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = FIXED_PAYLOAD_BYTES + vehicleId.length;
+        ensureCapacity(HEADER_BYTES + payloadBytes);
+
+        UUID ticketId = entry.getTicketId();
+        LocalDateTime date = entry.getDate();
+        int start = pending.position();
+        pending.putInt(payloadBytes);
+        pending.putInt(0);
+        pending.put((byte) entry.getType().ordinal());
+        pending.putLong(sequence);
+        pending.putInt(entry.getGate());
+        pending.put((byte) ((ticketId == null ? 0 : HAS_TICKET) | (date == null ? 0 : HAS_DATE)));
+        pending.putLong(ticketId == null ? 0L : ticketId.getMostSignificantBits());
+        pending.putLong(ticketId == null ? 0L : ticketId.getLeastSignificantBits());
+        pending.putLong(date == null ? 0L : date.toInstant(ZoneOffset.UTC).toEpochMilli());
+        pending.putInt(vehicleId.length);
+        pending.put(vehicleId);
+
+        crc.reset();
+        crc.update(pending.array(), start + HEADER_BYTES, payloadBytes);
+        pending.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() >= bytes) {
+            return;
+        }
+
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+
+    private void write(ByteBuffer buffer, long lastSequence) throws IOException {
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+
+        segment.force(false);
+        segmentBytes += bytes;
+
+        if (segmentBytes >= maxSegmentBytes) {
+            //The buffers only hold whole entries, so the next entry is the first one of the new segment
+            rollSegment(lastSequence + 1);
+        }
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (segmentBytes == 0) {
+            return;
+        }
+
+        segment.close();
+        openSegment(firstSequence);
+    }
+
+    private void openLastSegment() throws IOException {
+        List<Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long lastSequence = 0;
+        long lastValidBytes = 0;
+
+        for (int x = 0; x < segments.size(); ++x) {
+            Path path = segments.get(x);
+            ScanResult result = scan(path, Long.MAX_VALUE, null);
+            if (result.validBytes < Files.size(path)) {
+                if (x < segments.size() - 1) {
+                    throw new IOException("The journal segment " + path + " is corrupted at byte " + result.validBytes);
+                }
+
+                log.warn("Cutting off an incomplete entry at the end of {} (byte {})", path, result.validBytes);
+            }
+
+            lastSequence = result.lastSequence == 0
+                    ? sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) - 1
+                    : result.lastSequence;
+            lastValidBytes = result.validBytes;
+        }
+
+        //The segments covered by the last snapshot may all be gone
+        List<Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            lastSequence = Math.max(lastSequence,
+                    sequenceOf(snapshots.get(snapshots.size() - 1), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+        }
+
+        nextSequence = lastSequence + 1;
+        writtenSequence = lastSequence;
+        if (segments.isEmpty()) {
+            openSegment(nextSequence);
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        segment = FileChannel.open(last, StandardOpenOption.WRITE);
+        segment.truncate(lastValidBytes);
+        segmentBytes = segment.size();
+        segment.position(segmentBytes);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(name(SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segmentBytes = 0;
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        return list(directory, prefix, suffix);
+    }
+
+    /**
+     * Lists the segments or the snapshots of the directory, in sequence order
+     */
+    static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> paths = Lists.newArrayList();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            stream.forEach(paths::add);
+        }
+
+        //The sequences are zero padded, so the names sort in sequence order
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Makes the renames and deletions in the directory durable. Not every platform can open a directory, in which
+     * case the file system is trusted to do it.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to sync the journal directory", e);
+        }
+    }
+
+    private static String name(String prefix, long sequence, String suffix) {
+        return String.format("%s%020d%s", prefix, sequence, suffix);
+    }
+
+    static long sequenceOf(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static ScanResult scan(Path path, long afterSequence, Consumer<JournalEntry> consumer)
+            throws IOException {
+        return scan(ByteBuffer.wrap(Files.readAllBytes(path)), afterSequence, consumer);
+    }
+
+    /**
+     * Reads the valid entries of a segment, or of the part of it held by the buffer, handing the ones after
+     * afterSequence to the consumer if there is one. Stops at the first entry that is incomplete or does not match
+     * its CRC. The buffer must wrap a whole array.
+     */
+    static ScanResult scan(ByteBuffer buffer, long afterSequence, Consumer<JournalEntry> consumer) {
+        CRC32 crc = new CRC32();
+        ScanResult result = new ScanResult();
+
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int payloadBytes = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (payloadBytes < FIXED_PAYLOAD_BYTES || payloadBytes > buffer.remaining()) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), start + HEADER_BYTES, payloadBytes);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            JournalEntry.Type type = JournalEntry.Type.values()[buffer.get()];
+            long sequence = buffer.getLong();
+            int gate = buffer.getInt();
+            int flags = buffer.get();
+            long ticketMostSigBits = buffer.getLong();
+            long ticketLeastSigBits = buffer.getLong();
+            long dateMillis = buffer.getLong();
+            int vehicleIdBytes = buffer.getInt();
+
+            if (consumer != null && sequence > afterSequence) {
+                String vehicleId = new String(buffer.array(), buffer.position(), vehicleIdBytes, StandardCharsets.UTF_8);
+                consumer.accept(JournalEntry.builder()
+                        .type(type)
+                        .gate(gate)
+                        .vehicleId(vehicleId)
+                        .ticketId((flags & HAS_TICKET) == 0 ? null : new UUID(ticketMostSigBits, ticketLeastSigBits))
+                        .date((flags & HAS_DATE) == 0
+                                ? null
+                                : LocalDateTime.ofInstant(Instant.ofEpochMilli(dateMillis), ZoneOffset.UTC))
+                        .build());
+            }
+
+            buffer.position(start + HEADER_BYTES + payloadBytes);
+            result.validBytes = buffer.position();
+            result.lastSequence = sequence;
+        }
+
+        return result;
+    }
+
+    static final class ScanResult {
+        //The bytes taken by the valid entries and the sequence of the last one, 0 if there is none
+        long validBytes;
+        long lastSequence;
+    }
+}
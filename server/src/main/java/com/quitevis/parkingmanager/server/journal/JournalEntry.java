@@ -0,0 +1,46 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A change of the lot state, as written in the journal: a vehicle entered or exited through a gate
+ */
+@Data
+@Builder
+public class JournalEntry {
+    public enum Type {
+        ENTERED,
+        EXITED
+    }
+
+    private Type type;
+    private int gate;
+    private String vehicleId;
+    private UUID ticketId;
+    private LocalDateTime date;
+
+    public static JournalEntry entered(int gate, VehicleRecord vehicleRecord) {
+        return JournalEntry.builder()
+                .type(Type.ENTERED)
+                .gate(gate)
+                .vehicleId(vehicleRecord.getVehicleId())
+                .ticketId(vehicleRecord.getTicketId())
+                .date(vehicleRecord.getDateEntered())
+                .build();
+    }
+
+    public static JournalEntry exited(int gate, VehicleRecord vehicleRecord) {
+        return JournalEntry.builder()
+                .type(Type.EXITED)
+                .gate(gate)
+                .vehicleId(vehicleRecord.getVehicleId())
+                .ticketId(vehicleRecord.getTicketId())
+                .date(vehicleRecord.getDateExited())
+                .build();
+    }
+}
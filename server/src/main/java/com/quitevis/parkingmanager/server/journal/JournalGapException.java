@@ -0,0 +1,13 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import java.io.IOException;
+
+/**
+ * Thrown by JournalTailer when the next entry it needs has been deleted from the journal, because the follower fell
+ * behind a snapshot of the leader. The follower has to start over from the latest snapshot.
+ */
+public class JournalGapException extends IOException {
+    public JournalGapException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,195 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Follows a journal directory written by the FileParkingJournal of another process, so that a replica can apply the
+ * changes of the leader as they are written.
+ * <p>
+ * readSnapshot hands over the parked vehicles of the latest snapshot, then each poll hands over the entries written
+ * since the previous one, in order. Only whole entries that match their CRC are read, an entry the leader is still
+ * writing is read by a later poll. A segment is done once the leader has started the next one.
+ * <p>
+ * The segment being read is kept open, so the leader deleting it after a snapshot does not cut the tailer off. If the
+ * tailer falls so far behind that the next entry it needs is in no segment anymore, poll throws a JournalGapException
+ * and the follower has to start over from readSnapshot.
+ * <p>
+ * Not thread-safe, it is meant to be polled by a single thread. getLastSequence can be called from any thread.
+ */
+public class JournalTailer implements Closeable {
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private final Path directory;
+    private volatile long lastSequence;
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentFirstSequence;
+    private long segmentOffset;
+
+    public JournalTailer(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Hands the vehicles of the latest snapshot, if there is one, to parked and has the next poll start right after
+     * it. Returns the sequence of the last entry the snapshot covers, 0 if there is no snapshot.
+     */
+    public long readSnapshot(Consumer<VehicleRecord> parked) throws IOException {
+        closeSegment();
+        lastSequence = 0;
+
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            List<Path> snapshots = FileParkingJournal.list(directory,
+                    FileParkingJournal.SNAPSHOT_PREFIX, FileParkingJournal.SNAPSHOT_SUFFIX);
+            if (snapshots.isEmpty()) {
+                return lastSequence;
+            }
+
+            try {
+                lastSequence = SnapshotFile.read(snapshots.get(snapshots.size() - 1), parked);
+                return lastSequence;
+            } catch (NoSuchFileException e) {
+                //The leader wrote a newer snapshot and deleted this one in the meantime
+                if (attempt == SNAPSHOT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the entries written since the previous poll to the consumer, oldest first, and returns how many there
+     * were
+     */
+    public int poll(Consumer<JournalEntry> consumer) throws IOException {
+        int[] read = new int[1];
+        Consumer<JournalEntry> counting = entry -> {
+            read[0]++;
+            consumer.accept(entry);
+        };
+
+        while (true) {
+            //Listed before reading, so that a segment known to be done has been read to its end
+            List<Path> segments = FileParkingJournal.list(directory,
+                    FileParkingJournal.SEGMENT_PREFIX, FileParkingJournal.SEGMENT_SUFFIX);
+            if (segment == null && !openNextSegment(segments)) {
+                return read[0];
+            }
+
+            //The segment is done once the leader started the next one
+            long nextFirstSequence = Long.MAX_VALUE;
+            for (Path path : segments) {
+                long firstSequence = sequenceOf(path);
+                if (firstSequence > segmentFirstSequence) {
+                    nextFirstSequence = Math.min(nextFirstSequence, firstSequence);
+                }
+            }
+
+            long size = segment.size();
+            if (size > segmentOffset) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) (size - segmentOffset));
+                long position = segmentOffset;
+                while (buffer.hasRemaining()) {
+                    int bytes = segment.read(buffer, position);
+                    if (bytes < 0) {
+                        break;
+                    }
+
+                    position += bytes;
+                }
+
+                buffer.flip();
+                FileParkingJournal.ScanResult result = FileParkingJournal.scan(buffer, lastSequence, counting);
+                segmentOffset += result.validBytes;
+                lastSequence = Math.max(lastSequence, result.lastSequence);
+            }
+
+            if (nextFirstSequence == Long.MAX_VALUE) {
+                return read[0];
+            }
+
+            if (nextFirstSequence > lastSequence + 1) {
+                //The rest of the segment is gone if the leader deleted it after a snapshot while it was being read
+                if (!segments.contains(segmentPath)) {
+                    throw new JournalGapException("The journal entry " + (lastSequence + 1) + " is no longer in "
+                            + directory + ", the segment " + segmentPath.getFileName() + " was deleted");
+                }
+
+                throw new IOException("The journal segment starting at " + segmentFirstSequence
+                        + " is corrupted at byte " + segmentOffset);
+            }
+
+            closeSegment();
+        }
+    }
+
+    /**
+     * Returns the sequence of the last entry handed over, or covered by the snapshot read
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    /**
+     * Opens the segment that holds the entry after lastSequence: the last one that starts at or before it. Returns
+     * false if there is no segment yet.
+     */
+    private boolean openNextSegment(List<Path> segments) throws IOException {
+        Path next = null;
+        for (Path path : segments) {
+            if (sequenceOf(path) <= lastSequence + 1) {
+                next = path;
+            }
+        }
+
+        if (next == null) {
+            if (segments.isEmpty()) {
+                return false;
+            }
+
+            throw new JournalGapException("The journal entry " + (lastSequence + 1) + " is no longer in "
+                    + directory + ", the oldest segment is " + segments.get(0).getFileName());
+        }
+
+        try {
+            segment = FileChannel.open(next, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            //Deleted after a snapshot since it was listed, the next poll finds out what is left
+            return false;
+        }
+
+        segmentPath = next;
+        segmentFirstSequence = sequenceOf(next);
+        segmentOffset = 0;
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        return FileParkingJournal.sequenceOf(segment,
+                FileParkingJournal.SEGMENT_PREFIX, FileParkingJournal.SEGMENT_SUFFIX);
+    }
+}
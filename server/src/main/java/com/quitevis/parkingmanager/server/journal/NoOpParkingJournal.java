@@ -0,0 +1,38 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Journal that keeps nothing: the lot state only lives in memory and is lost on restart
+ */
+public class NoOpParkingJournal implements ParkingJournal {
+    private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
+
+    @Override
+    public CompletableFuture<Void> commit(Consumer<List<JournalEntry>> mutation) {
+        mutation.accept(Lists.newArrayListWithCapacity(1));
+        return COMMITTED;
+    }
+
+    @Override
+    public void replay(Consumer<VehicleRecord> parked, Consumer<JournalEntry> consumer) {
+        //Nothing was kept
+    }
+
+    @Override
+    public void snapshot(Supplier<Collection<VehicleRecord>> capture) {
+        //Nothing is kept
+    }
+
+    @Override
+    public void close() {
+        //Nothing to release
+    }
+}
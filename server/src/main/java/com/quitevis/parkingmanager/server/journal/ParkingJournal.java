@@ -0,0 +1,37 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Append-only record of the changes made to the lot, replayed on startup to rebuild the parked vehicles
+ */
+public interface ParkingJournal extends Closeable {
+    /**
+     * Runs the mutation, which changes the lot state and adds the entries describing the change to the given list.
+     * The mutation runs while the journal is locked, so the entries are written in the same order as the changes
+     * were made. If the mutation throws, nothing is written and the exception is rethrown.
+     * <p>
+     * Returns a Future that completes once the entries are durable, as far as the sync mode of the journal goes.
+     */
+    CompletableFuture<Void> commit(Consumer<List<JournalEntry>> mutation);
+
+    /**
+     * Hands the vehicles of the latest snapshot to parked, then every entry written after the snapshot to the
+     * consumer, oldest first. Must be called before the first commit.
+     */
+    void replay(Consumer<VehicleRecord> parked, Consumer<JournalEntry> consumer) throws IOException;
+
+    /**
+     * Saves the parked vehicles returned by capture as a snapshot, so that the entries it covers no longer need to be
+     * replayed. Capture runs while no commit can be made, so the snapshot matches the journal exactly.
+     */
+    void snapshot(Supplier<Collection<VehicleRecord>> capture) throws IOException;
+}
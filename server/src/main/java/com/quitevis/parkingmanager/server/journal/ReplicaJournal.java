@@ -0,0 +1,116 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Journal of a replica. The lot state comes from the journal directory of the leader, followed with a JournalTailer,
+ * and the replica cannot change it: commits throw an IllegalStateException, so the cars sent to a replica are turned
+ * away, and snapshots are left to the leader.
+ * <p>
+ * Once the leader is down, promote makes this server the leader: the directory is opened as its own journal, right
+ * where the leader stopped, and the commits and snapshots go to it from then on. Promoting while the leader is still
+ * writing the directory would corrupt the journal.
+ */
+public class ReplicaJournal implements ParkingJournal {
+    /**
+     * Opens the journal directory for writing, on promotion
+     */
+    @FunctionalInterface
+    public interface Opener {
+        ParkingJournal open() throws IOException;
+    }
+
+    private final JournalTailer tailer;
+    private final Opener opener;
+    private volatile ParkingJournal promoted;
+
+    public ReplicaJournal(JournalTailer tailer, Opener opener) {
+        this.tailer = tailer;
+        this.opener = opener;
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(Consumer<List<JournalEntry>> mutation) {
+        ParkingJournal journal = promoted;
+        if (journal == null) {
+            throw new IllegalStateException("This server is a read-only replica.");
+        }
+
+        return journal.commit(mutation);
+    }
+
+    /**
+     * Reads the latest snapshot of the leader and the entries written after it so far
+     */
+    @Override
+    public void replay(Consumer<VehicleRecord> parked, Consumer<JournalEntry> consumer) throws IOException {
+        tailer.readSnapshot(parked);
+        tailer.poll(consumer);
+    }
+
+    @Override
+    public void snapshot(Supplier<Collection<VehicleRecord>> capture) throws IOException {
+        ParkingJournal journal = promoted;
+        if (journal != null) {
+            journal.snapshot(capture);
+        }
+    }
+
+    /**
+     * Hands the entries the leader wrote since the previous poll to the consumer, oldest first. Returns how many
+     * there were. Throws a JournalGapException if the replica fell behind the snapshots of the leader (see restart).
+     */
+    public synchronized int poll(Consumer<JournalEntry> consumer) throws IOException {
+        if (promoted != null) {
+            return 0;
+        }
+
+        return tailer.poll(consumer);
+    }
+
+    /**
+     * Hands the vehicles of the latest snapshot of the leader to parked, and has the next poll start right after it
+     */
+    public synchronized void restart(Consumer<VehicleRecord> parked) throws IOException {
+        tailer.readSnapshot(parked);
+    }
+
+    /**
+     * Returns the sequence of the last entry of the leader read so far
+     */
+    public long getSequence() {
+        return tailer.getLastSequence();
+    }
+
+    /**
+     * Opens the journal directory for writing. Entries the leader wrote after the last poll are not applied to the
+     * lot, so the last poll should come right before.
+     */
+    public synchronized void promote() throws IOException {
+        if (promoted != null) {
+            throw new IllegalStateException("This server was already promoted.");
+        }
+
+        tailer.close();
+        promoted = opener.open();
+    }
+
+    public boolean isPromoted() {
+        return promoted != null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        tailer.close();
+        if (promoted != null) {
+            promoted.close();
+        }
+    }
+}
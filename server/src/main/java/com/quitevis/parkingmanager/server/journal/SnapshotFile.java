@@ -0,0 +1,121 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the parked vehicles as of a journal sequence, in a binary form that is memory-mapped back on load.
+ * <p>
+ * The file is: [int magic][int version][long sequence][int vehicle count], then for each vehicle
+ * [int entry gate][byte flags][long ticket msb][long ticket lsb][long date entered millis][int vehicle id length]
+ * [vehicle id UTF-8 bytes], then an int CRC32 of everything before it.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x50534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int HAS_TICKET = 1;
+    private static final int HAS_DATE = 2;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes and forces the snapshot to the path
+     */
+    static void write(Path path, long sequence, Collection<VehicleRecord> vehicleRecords) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(path.toFile())) {
+            CheckedOutputStream cos = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream dos = new DataOutputStream(cos);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(sequence);
+            dos.writeInt(vehicleRecords.size());
+
+            for (VehicleRecord vehicleRecord : vehicleRecords) {
+                UUID ticketId = vehicleRecord.getTicketId();
+                LocalDateTime dateEntered = vehicleRecord.getDateEntered();
+                byte[] vehicleId = vehicleRecord.getVehicleId().getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(vehicleRecord.getEntryGate());
+                dos.writeByte((ticketId == null ? 0 : HAS_TICKET) | (dateEntered == null ? 0 : HAS_DATE));
+                dos.writeLong(ticketId == null ? 0L : ticketId.getMostSignificantBits());
+                dos.writeLong(ticketId == null ? 0L : ticketId.getLeastSignificantBits());
+                dos.writeLong(dateEntered == null ? 0L : dateEntered.toInstant(ZoneOffset.UTC).toEpochMilli());
+                dos.writeInt(vehicleId.length);
+                dos.write(vehicleId);
+            }
+
+            dos.flush();
+            new DataOutputStream(fos).writeInt((int) cos.getChecksum().getValue());
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Hands the vehicles of the snapshot to the consumer and returns its sequence.
+     * Throws an IOException if the file is not a complete snapshot.
+     */
+    static long read(Path path, Consumer<VehicleRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot " + path + " has an invalid size: " + size);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int expectedCrc = buffer.getInt((int) size - 4);
+            buffer.limit((int) size - 4);
+            CRC32 crc = new CRC32();
+            crc.update(buffer);
+            if ((int) crc.getValue() != expectedCrc || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("The snapshot " + path + " is corrupted");
+            }
+
+            buffer.position(8);
+            long sequence = buffer.getLong();
+            int count = buffer.getInt();
+            byte[] vehicleId = new byte[64];
+
+            for (int x = 0; x < count; ++x) {
+                int entryGate = buffer.getInt();
+                int flags = buffer.get();
+                long ticketMostSigBits = buffer.getLong();
+                long ticketLeastSigBits = buffer.getLong();
+                long dateMillis = buffer.getLong();
+                int vehicleIdBytes = buffer.getInt();
+                if (vehicleIdBytes > vehicleId.length) {
+                    vehicleId = new byte[vehicleIdBytes];
+                }
+
+                buffer.get(vehicleId, 0, vehicleIdBytes);
+                consumer.accept(VehicleRecord.builder()
+                        .vehicleId(new String(vehicleId, 0, vehicleIdBytes, StandardCharsets.UTF_8))
+                        .entryGate(entryGate)
+                        .ticketId((flags & HAS_TICKET) == 0 ? null : new UUID(ticketMostSigBits, ticketLeastSigBits))
+                        .dateEntered((flags & HAS_DATE) == 0
+                                ? null
+                                : LocalDateTime.ofInstant(Instant.ofEpochMilli(dateMillis), ZoneOffset.UTC))
+                        .build());
+            }
+
+            return sequence;
+        }
+    }
+}
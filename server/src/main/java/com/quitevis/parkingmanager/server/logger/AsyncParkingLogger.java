@@ -0,0 +1,193 @@
+package com.quitevis.parkingmanager.server.logger;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the events to a bounded queue and returns right away. A writer thread drains the queue in batches and passes
+ * the events, with the time they happened, to the delegate logger, so a slow appender does not slow the gates down.
+ * <p>
+ * When the queue is full, the overflow policy decides whether the event is dropped (and counted) or the gate waits
+ * for room. The record is copied when the event is queued, so the delegate sees it as it was when the event happened.
+ */
+@Slf4j
+public class AsyncParkingLogger implements ParkingLogger {
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private static final long POLL_MILLIS = 100;
+
+    private final ParkingLogger delegate;
+    private final BlockingQueue<Event> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatchSize;
+    private final AtomicLong droppedCount;
+    private final AtomicLong writtenCount;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AsyncParkingLogger(ParkingLogger delegate, int queueSize, OverflowPolicy overflowPolicy, int maxBatchSize) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.maxBatchSize = maxBatchSize;
+        this.droppedCount = new AtomicLong();
+        this.writtenCount = new AtomicLong();
+        this.writer = new Thread(this::writeLoop, "parking-logger-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean log(VehicleRecord vehicleRecord, State state) {
+        return log(vehicleRecord, state, ParkingLogger.nowMicros());
+    }
+
+    /**
+     * Returns false if the event was dropped because the queue was full or the logger is closed
+     */
+    @Override
+    public boolean log(VehicleRecord vehicleRecord, State state, long epochMicros) {
+        if (closed) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        Event event = new Event(copy(vehicleRecord), state, epochMicros);
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            if (!queue.offer(event)) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+
+            return true;
+        }
+
+        try {
+            queue.put(event);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of events that were not logged because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of events handed to the delegate logger
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Returns the number of events waiting to be written
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting events, writes the ones that are queued and closes the delegate logger
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //Events queued while the writer was stopping
+        List<Event> rest = Lists.newArrayList();
+        queue.drainTo(rest);
+        write(rest);
+        delegate.close();
+    }
+
+    private void writeLoop() {
+        List<Event> batch = Lists.newArrayListWithCapacity(maxBatchSize);
+        long reportedDropped = 0;
+
+        while (true) {
+            try {
+                Event first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            write(batch);
+            batch.clear();
+
+            long dropped = droppedCount.get();
+            if (dropped != reportedDropped) {
+                log.warn("Dropped {} parking events so far, the queue was full", dropped);
+                reportedDropped = dropped;
+            }
+        }
+    }
+
+    private void write(List<Event> batch) {
+        for (Event event : batch) {
+            try {
+                delegate.log(event.vehicleRecord, event.state, event.epochMicros);
+            } catch (RuntimeException e) {
+                log.error("Unable to log a parking event", e);
+            }
+        }
+
+        delegate.flush();
+        writtenCount.addAndGet(batch.size());
+    }
+
+    private static VehicleRecord copy(VehicleRecord vehicleRecord) {
+        return VehicleRecord.builder()
+                .vehicleId(vehicleRecord.getVehicleId())
+                .entryGate(vehicleRecord.getEntryGate())
+                .exitGate(vehicleRecord.getExitGate())
+                .ticketId(vehicleRecord.getTicketId())
+                .dateEntered(vehicleRecord.getDateEntered())
+                .dateExited(vehicleRecord.getDateExited())
+                .fee(vehicleRecord.getFee())
+                .build();
+    }
+
+    private static final class Event {
+        private final VehicleRecord vehicleRecord;
+        private final State state;
+        private final long epochMicros;
+
+        private Event(VehicleRecord vehicleRecord, State state, long epochMicros) {
+            this.vehicleRecord = vehicleRecord;
+            this.state = state;
+            this.epochMicros = epochMicros;
+        }
+    }
+}
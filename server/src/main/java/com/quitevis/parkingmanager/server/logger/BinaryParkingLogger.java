@@ -0,0 +1,162 @@
+package com.quitevis.parkingmanager.server.logger;
+
+import com.quitevis.parkingmanager.eventlog.EventLogFormat;
+import com.quitevis.parkingmanager.eventlog.EventType;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Logs parking lot events as fixed-size binary records (see EventLogFormat) in files named
+ * events-[epoch millis of the first event]-[number].bin, which sort in the order they were written. A new file is started once the current one is over maxFileBytes.
+ * <p>
+ * The time of a PARKED or EXITED_PARKING event is the date the gate set on the record, so the fees can be computed
+ * again from the files, and the time the event was handed to the logger for the others.
+ * <p>
+ * Each vehicle id is written once per file and the events refer to it by number, so an event takes 34 bytes. The
+ * files are read back with EventLogReader, and converted to CSV with EventLogCsv. The records are buffered: this
+ * logger is meant to be used behind an AsyncParkingLogger, which flushes it after each batch.
+ */
+@Slf4j
+public class BinaryParkingLogger implements ParkingLogger {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final byte[] EVENT_TYPE_CODES = new byte[State.values().length];
+
+    static {
+        for (State state : State.values()) {
+            EVENT_TYPE_CODES[state.ordinal()] = (byte) EventType.valueOf(state.name()).getCode();
+        }
+    }
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final Map<String, Integer> vehicleIdIndexes;
+    private DataOutputStream output;
+    private long fileBytes;
+
+    public BinaryParkingLogger(Path directory, long maxFileBytes) throws IOException {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.vehicleIdIndexes = new HashMap<>();
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean log(VehicleRecord vehicleRecord, State state) {
+        return log(vehicleRecord, state, ParkingLogger.nowMicros());
+    }
+
+    @Override
+    public synchronized boolean log(VehicleRecord vehicleRecord, State state, long epochMicros) {
+        try {
+            if (output == null || fileBytes >= maxFileBytes) {
+                roll(epochMicros / 1000L);
+            }
+
+            String vehicleId = vehicleRecord.getVehicleId() == null ? "" : vehicleRecord.getVehicleId();
+            Integer vehicleIdIndex = vehicleIdIndexes.get(vehicleId);
+            if (vehicleIdIndex == null) {
+                vehicleIdIndex = vehicleIdIndexes.size();
+                vehicleIdIndexes.put(vehicleId, vehicleIdIndex);
+
+                byte[] bytes = vehicleId.getBytes(StandardCharsets.UTF_8);
+                output.writeByte(EventLogFormat.TAG_PLATE);
+                output.writeInt(vehicleIdIndex);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                fileBytes += 1 + 8 + bytes.length;
+            }
+
+            UUID ticketId = vehicleRecord.getTicketId();
+            output.writeByte(EventLogFormat.TAG_EVENT);
+            output.writeByte(EVENT_TYPE_CODES[state.ordinal()]);
+            LocalDateTime date = state == State.PARKED ? vehicleRecord.getDateEntered()
+                    : state == State.EXITED_PARKING ? vehicleRecord.getDateExited() : null;
+            output.writeLong(date == null ? epochMicros : ParkingLogger.epochMicros(date.toInstant(ZoneOffset.UTC)));
+            output.writeInt(state == State.EXITED_PARKING ? vehicleRecord.getExitGate() : vehicleRecord.getEntryGate());
+            output.writeLong(ticketId == null ? 0L : ticketId.getMostSignificantBits());
+            output.writeLong(ticketId == null ? 0L : ticketId.getLeastSignificantBits());
+            output.writeInt(vehicleIdIndex);
+            fileBytes += 1 + EventLogFormat.EVENT_BYTES;
+            return true;
+        } catch (IOException e) {
+            log.error("Unable to write a parking event to " + directory, e);
+            closeQuietly();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (IOException e) {
+            log.error("Unable to flush the parking events to " + directory, e);
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            log.error("Unable to close the parking event log in " + directory, e);
+        } finally {
+            output = null;
+        }
+    }
+
+    private void roll(long epochMillis) throws IOException {
+        close();
+
+        Path path = null;
+        for (int x = 0; path == null; ++x) {
+            try {
+                path = Files.createFile(directory.resolve(String.format("events-%013d-%03d.bin", epochMillis, x)));
+            } catch (FileAlreadyExistsException e) {
+                //Another file was started in the same millisecond
+            }
+        }
+
+        output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.WRITE), BUFFER_BYTES));
+        output.writeInt(EventLogFormat.MAGIC);
+        output.writeInt(EventLogFormat.VERSION);
+        fileBytes = EventLogFormat.HEADER_BYTES;
+        vehicleIdIndexes.clear();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            //The file is already broken
+        } finally {
+            output = null;
+        }
+    }
+}
@@ -2,10 +2,12 @@ package com.quitevis.parkingmanager.server.logger;
 
 import com.quitevis.parkingmanager.model.VehicleRecord;
 
+import java.time.Instant;
+
 /**
  * Logs the vehicles that are entering / exiting the parking lot
  */
-public interface ParkingLogger {
+public interface ParkingLogger extends AutoCloseable {
     enum State {
         PARKED,
         EXITED_PARKING,
@@ -13,4 +15,37 @@ public interface ParkingLogger {
     }
 
     boolean log(VehicleRecord vehicleRecord, State state);
+
+    /**
+     * Logs an event that happened at epochMicros, microseconds since the epoch, for loggers that write the event after
+     * it happened
+     */
+    default boolean log(VehicleRecord vehicleRecord, State state, long epochMicros) {
+        return log(vehicleRecord, state);
+    }
+
+    /**
+     * Returns the time in microseconds since the epoch. Instant.now() only ticks every millisecond on JDK 8, and every
+     * microsecond or finer from JDK 9 on.
+     */
+    static long nowMicros() {
+        return epochMicros(Instant.now());
+    }
+
+    static long epochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1000000L + instant.getNano() / 1000;
+    }
+
+    /**
+     * Pushes the events logged so far to their destination, for loggers that buffer them
+     */
+    default void flush() {
+    }
+
+    /**
+     * Writes the events that are still pending, if any
+     */
+    @Override
+    default void close() {
+    }
 }
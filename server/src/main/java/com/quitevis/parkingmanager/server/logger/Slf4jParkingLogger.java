@@ -4,6 +4,7 @@ import com.google.inject.Singleton;
 import com.quitevis.parkingmanager.model.VehicleRecord;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 
@@ -15,7 +16,19 @@ import java.time.ZoneOffset;
 public class Slf4jParkingLogger implements  ParkingLogger {
     @Override
     public boolean log(VehicleRecord vehicleRecord, State state) {
-        log.info("Date: {}; Event: {}; VehicleRecord: {}", LocalDateTime.now(ZoneOffset.UTC).toString(), state.name(), vehicleRecord.toString());
+        return log(vehicleRecord, state, ParkingLogger.nowMicros());
+    }
+
+    @Override
+    public boolean log(VehicleRecord vehicleRecord, State state, long epochMicros) {
+        if (log.isInfoEnabled()) {
+            Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochMicros, 1000000L),
+                    Math.floorMod(epochMicros, 1000000L) * 1000L);
+            log.info("Date: {}; Event: {}; VehicleRecord: {}",
+                    LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toString(), state.name(),
+                    vehicleRecord.toString());
+        }
+
         return true;
     }
 }
@@ -0,0 +1,107 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Guards the capacity of the parking lot and the set of vehicles that are currently parked.
+ * <p>
+ * Implementations must never let the number of parked vehicles go over the capacity or below zero, and must never
+ * register the same vehicle twice, even when called concurrently from multiple gates.
+ */
+public interface AdmissionEngine {
+    /**
+     * Reserves a slot for the vehicle and registers it as parked. Engines that model zones use the entry gate to
+     * pick the zone the vehicle prefers.
+     * Throws an IllegalArgumentException if the vehicle is already parked and an IllegalStateException if the
+     * parking lot is full.
+     */
+    void admit(int entryGateNumber, VehicleRecord vehicleRecord);
+
+    /**
+     * Unregisters the vehicle and gives its slot back. Returns the record that was registered when the vehicle
+     * entered, which holds its ticket and date entered.
+     * Throws an IllegalArgumentException if the vehicle is not parked.
+     */
+    VehicleRecord release(VehicleRecord vehicleRecord);
+
+    /**
+     * Releases the vehicle like release, but only if it holds the ticket, in the same atomic step. A ticket from an
+     * earlier stay of the vehicle leaves it parked in its slot.
+     * Throws an IllegalArgumentException if the vehicle is not parked with that ticket.
+     */
+    VehicleRecord release(VehicleRecord vehicleRecord, UUID ticketId);
+
+    /**
+     * Admits as many of the vehicles as the capacity allows, in order.
+     * Returns, for each vehicle, null if it was admitted or the exception that admit would have thrown.
+     * Engines override it to admit the whole batch in one critical section.
+     */
+    default List<RuntimeException> admitAll(int entryGateNumber, List<VehicleRecord> vehicleRecords) {
+        List<RuntimeException> errors = Lists.newArrayListWithCapacity(vehicleRecords.size());
+        for (VehicleRecord vehicleRecord : vehicleRecords) {
+            try {
+                admit(entryGateNumber, vehicleRecord);
+                errors.add(null);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                errors.add(e);
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Releases the vehicles, in order.
+     * Returns, for each vehicle, the record that was registered when it entered, or null if it was not parked.
+     */
+    default List<VehicleRecord> releaseAll(List<VehicleRecord> vehicleRecords) {
+        List<VehicleRecord> released = Lists.newArrayListWithCapacity(vehicleRecords.size());
+        for (VehicleRecord vehicleRecord : vehicleRecords) {
+            try {
+                released.add(release(vehicleRecord));
+            } catch (IllegalArgumentException e) {
+                released.add(null);
+            }
+        }
+
+        return released;
+    }
+
+    /**
+     * Returns the number of vehicles parked
+     */
+    int getParkedCount();
+
+    /**
+     * Returns the max capacity of the parking lot
+     */
+    int getCapacity();
+
+    /**
+     * Returns the capacity left on the parking lot
+     */
+    int getCapacityLeft();
+
+    /**
+     * Returns an immutable copy of the parked vehicles
+     */
+    Set<VehicleRecord> getParkedVehicles();
+
+    /**
+     * Returns a weakly-consistent iterator over the parked vehicles, which neither copies them nor holds a lock for
+     * the whole walk. See VehicleRegistry.iterator.
+     */
+    Iterator<VehicleRecord> iterateParkedVehicles();
+
+    /**
+     * Returns the occupancy of each zone of the parking lot, or an empty list if the lot is not split in zones
+     */
+    List<ZoneInfo> getZones();
+}
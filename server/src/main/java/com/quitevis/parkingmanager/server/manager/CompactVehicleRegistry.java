@@ -0,0 +1,356 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Registry for very large lots (millions of parked vehicles) that does not keep any object per vehicle.
+ * <p>
+ * It is an open-addressing hash table with linear probing. The vehicle id is encoded as ASCII bytes in a fixed-width
+ * slot of one shared byte array, and the entry gate, the ticket and the date entered are stored in parallel primitive
+ * arrays.
+ * A slot is: [1 byte header][maxPlateLength bytes of vehicle id]. The lower 7 bits of the header are the length of the
+ * vehicle id, the highest bit tells if a ticket is stored. The date entered is stored with millisecond precision.
+ * <p>
+ * Vehicle ids must be ASCII and at most maxPlateLength (up to 127) characters long. The records returned by
+ * remove and snapshot are rebuilt from the arrays, so only the vehicle id, the entry gate, the ticket and the date
+ * entered survive.
+ * <p>
+ * All the access is synchronized on the registry. When the table grows, it is rebuilt at twice the size.
+ * The iterator reads the table a chunk of slots at a time, holding the lock for one chunk only. It keeps reading the
+ * arrays it started with: a rehash allocates new ones and leaves the old ones untouched, so the vehicles that stay
+ * registered are neither missed nor returned twice.
+ */
+public class CompactVehicleRegistry implements VehicleRegistry {
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = 1;
+    private static final int HAS_TICKET = 0x80;
+    private static final int LENGTH_MASK = 0x7F;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int ITERATOR_CHUNK_SLOTS = 1024;
+
+    private final int maxPlateLength;
+    private final int stride;
+
+    private int[] hashes;
+    private byte[] plates;
+    private long[] entryMillis;
+    private int[] entryGates;
+    private long[] ticketMostSigBits;
+    private long[] ticketLeastSigBits;
+    private int mask;
+    private int threshold;
+    private int size;
+    private int tombstones;
+
+    public CompactVehicleRegistry(int expectedSize, int maxPlateLength) {
+        if (maxPlateLength <= 0 || maxPlateLength > LENGTH_MASK) {
+            throw new IllegalArgumentException("The max plate length must be between 1 and " + LENGTH_MASK);
+        }
+
+        this.maxPlateLength = maxPlateLength;
+        this.stride = maxPlateLength + 1;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    @Override
+    public synchronized boolean putIfAbsent(VehicleRecord vehicleRecord) {
+        String plate = vehicleRecord.getVehicleId();
+        checkPlate(plate);
+        int hash = hash(plate);
+
+        if (indexOf(plate, hash) >= 0) {
+            return false;
+        }
+
+        if (size + tombstones + 1 > threshold) {
+            //Only grow if the table is really full, otherwise rebuilding at the same size is enough to get rid of
+            //the tombstones
+            rehash(size + 1 > threshold ? hashes.length << 1 : hashes.length);
+        }
+
+        int index = hash & mask;
+        while (hashes[index] != EMPTY && hashes[index] != TOMBSTONE) {
+            index = (index + 1) & mask;
+        }
+
+        if (hashes[index] == TOMBSTONE) {
+            tombstones--;
+        }
+
+        hashes[index] = hash;
+        writePlate(index, plate, vehicleRecord.getTicketId() != null);
+        writeValues(index, vehicleRecord);
+        size++;
+        return true;
+    }
+
+    @Override
+    public synchronized VehicleRecord remove(VehicleRecord vehicleRecord) {
+        String plate = vehicleRecord.getVehicleId();
+        int index = indexOf(plate, hash(plate));
+        if (index < 0) {
+            return null;
+        }
+
+        return removeAt(index);
+    }
+
+    @Override
+    public synchronized VehicleRecord remove(VehicleRecord vehicleRecord, UUID ticketId) {
+        String plate = vehicleRecord.getVehicleId();
+        int index = indexOf(plate, hash(plate));
+        if (index < 0 || (plates[index * stride] & HAS_TICKET) == 0
+                || ticketMostSigBits[index] != ticketId.getMostSignificantBits()
+                || ticketLeastSigBits[index] != ticketId.getLeastSignificantBits()) {
+            return null;
+        }
+
+        return removeAt(index);
+    }
+
+    @Override
+    public synchronized boolean contains(VehicleRecord vehicleRecord) {
+        String plate = vehicleRecord.getVehicleId();
+        return indexOf(plate, hash(plate)) >= 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized Set<VehicleRecord> snapshot() {
+        ImmutableSet.Builder<VehicleRecord> builder = ImmutableSet.builder();
+        for (int index = 0; index < hashes.length; ++index) {
+            if (hashes[index] != EMPTY && hashes[index] != TOMBSTONE) {
+                builder.add(readRecord(index));
+            }
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public synchronized Iterator<VehicleRecord> iterator() {
+        return new ChunkIterator();
+    }
+
+    private VehicleRecord removeAt(int index) {
+        VehicleRecord removed = readRecord(index);
+        hashes[index] = TOMBSTONE;
+        size--;
+        tombstones++;
+        return removed;
+    }
+
+    private int indexOf(String plate, int hash) {
+        int index = hash & mask;
+        while (true) {
+            int stored = hashes[index];
+            if (stored == EMPTY) {
+                return -1;
+            }
+
+            if (stored == hash && plateEquals(index, plate)) {
+                return index;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    private boolean plateEquals(int index, String plate) {
+        int offset = index * stride;
+        int length = plates[offset] & LENGTH_MASK;
+        if (length != plate.length()) {
+            return false;
+        }
+
+        for (int x = 0; x < length; ++x) {
+            if ((plates[offset + 1 + x] & 0xFF) != plate.charAt(x)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writePlate(int index, String plate, boolean hasTicket) {
+        int offset = index * stride;
+        plates[offset] = (byte) (plate.length() | (hasTicket ? HAS_TICKET : 0));
+        for (int x = 0; x < plate.length(); ++x) {
+            plates[offset + 1 + x] = (byte) plate.charAt(x);
+        }
+    }
+
+    private void writeValues(int index, VehicleRecord vehicleRecord) {
+        UUID ticketId = vehicleRecord.getTicketId();
+        ticketMostSigBits[index] = ticketId == null ? 0L : ticketId.getMostSignificantBits();
+        ticketLeastSigBits[index] = ticketId == null ? 0L : ticketId.getLeastSignificantBits();
+
+        LocalDateTime dateEntered = vehicleRecord.getDateEntered();
+        entryMillis[index] = dateEntered == null ? NO_DATE : dateEntered.toInstant(ZoneOffset.UTC).toEpochMilli();
+        entryGates[index] = vehicleRecord.getEntryGate();
+    }
+
+    private VehicleRecord readRecord(int index) {
+        return readRecord(plates, entryMillis, entryGates, ticketMostSigBits, ticketLeastSigBits, stride, index);
+    }
+
+    private static VehicleRecord readRecord(byte[] plates, long[] entryMillis, int[] entryGates,
+                                            long[] ticketMostSigBits, long[] ticketLeastSigBits, int stride,
+                                            int index) {
+        int offset = index * stride;
+        int header = plates[offset] & 0xFF;
+        String plate = new String(plates, offset + 1, header & LENGTH_MASK, StandardCharsets.US_ASCII);
+        long millis = entryMillis[index];
+
+        return VehicleRecord.builder()
+                .vehicleId(plate)
+                .entryGate(entryGates[index])
+                .ticketId((header & HAS_TICKET) == 0 ? null : new UUID(ticketMostSigBits[index], ticketLeastSigBits[index]))
+                .dateEntered(millis == NO_DATE ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC))
+                .build();
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldHashes = hashes;
+        byte[] oldPlates = plates;
+        long[] oldEntryMillis = entryMillis;
+        int[] oldEntryGates = entryGates;
+        long[] oldTicketMostSigBits = ticketMostSigBits;
+        long[] oldTicketLeastSigBits = ticketLeastSigBits;
+
+        allocate(newCapacity);
+
+        for (int oldIndex = 0; oldIndex < oldHashes.length; ++oldIndex) {
+            int hash = oldHashes[oldIndex];
+            if (hash == EMPTY || hash == TOMBSTONE) {
+                continue;
+            }
+
+            int index = hash & mask;
+            while (hashes[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+
+            hashes[index] = hash;
+            System.arraycopy(oldPlates, oldIndex * stride, plates, index * stride, stride);
+            entryMillis[index] = oldEntryMillis[oldIndex];
+            entryGates[index] = oldEntryGates[oldIndex];
+            ticketMostSigBits[index] = oldTicketMostSigBits[oldIndex];
+            ticketLeastSigBits[index] = oldTicketLeastSigBits[oldIndex];
+        }
+
+        tombstones = 0;
+    }
+
+    private void allocate(int capacity) {
+        if ((long) capacity * stride > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("The registry cannot hold more vehicles.");
+        }
+
+        hashes = new int[capacity];
+        plates = new byte[capacity * stride];
+        entryMillis = new long[capacity];
+        entryGates = new int[capacity];
+        ticketMostSigBits = new long[capacity];
+        ticketLeastSigBits = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void checkPlate(String plate) {
+        if (plate.length() > maxPlateLength) {
+            throw new IllegalArgumentException("The vehicle id is longer than " + maxPlateLength + " characters.");
+        }
+
+        for (int x = 0; x < plate.length(); ++x) {
+            if (plate.charAt(x) > 0x7F) {
+                throw new IllegalArgumentException("The vehicle id must only contain ASCII characters.");
+            }
+        }
+    }
+
+    private static int hash(String plate) {
+        int hash = plate.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+
+        //0 and 1 are reserved for empty slots and tombstones
+        return hash == EMPTY || hash == TOMBSTONE ? 2 : hash;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * Walks the arrays the table had when the iterator was created. Must be created while holding the lock.
+     */
+    private final class ChunkIterator extends AbstractIterator<VehicleRecord> {
+        private final int[] tableHashes;
+        private final byte[] tablePlates;
+        private final long[] tableEntryMillis;
+        private final int[] tableEntryGates;
+        private final long[] tableTicketMostSigBits;
+        private final long[] tableTicketLeastSigBits;
+        private final Deque<VehicleRecord> chunk;
+        private int nextIndex;
+
+        private ChunkIterator() {
+            this.tableHashes = hashes;
+            this.tablePlates = plates;
+            this.tableEntryMillis = entryMillis;
+            this.tableEntryGates = entryGates;
+            this.tableTicketMostSigBits = ticketMostSigBits;
+            this.tableTicketLeastSigBits = ticketLeastSigBits;
+            this.chunk = new ArrayDeque<>();
+        }
+
+        @Override
+        protected VehicleRecord computeNext() {
+            while (chunk.isEmpty()) {
+                if (nextIndex >= tableHashes.length) {
+                    return endOfData();
+                }
+
+                readChunk();
+            }
+
+            return chunk.poll();
+        }
+
+        private void readChunk() {
+            int end = Math.min(nextIndex + ITERATOR_CHUNK_SLOTS, tableHashes.length);
+            synchronized (CompactVehicleRegistry.this) {
+                for (int index = nextIndex; index < end; ++index) {
+                    if (tableHashes[index] != EMPTY && tableHashes[index] != TOMBSTONE) {
+                        chunk.add(readRecord(tablePlates, tableEntryMillis, tableEntryGates, tableTicketMostSigBits,
+                                tableTicketLeastSigBits, stride, index));
+                    }
+                }
+            }
+
+            nextIndex = end;
+        }
+    }
+}
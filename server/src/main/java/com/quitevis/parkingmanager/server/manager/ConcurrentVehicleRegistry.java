@@ -0,0 +1,68 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default registry, keeps the VehicleRecord objects in a ConcurrentHashMap
+ */
+public class ConcurrentVehicleRegistry implements VehicleRegistry {
+    private final ConcurrentMap<VehicleRecord, VehicleRecord> vehicles;
+
+    public ConcurrentVehicleRegistry() {
+        this.vehicles = Maps.newConcurrentMap();
+    }
+
+    @Override
+    public boolean putIfAbsent(VehicleRecord vehicleRecord) {
+        return vehicles.putIfAbsent(vehicleRecord, vehicleRecord) == null;
+    }
+
+    @Override
+    public VehicleRecord remove(VehicleRecord vehicleRecord) {
+        return vehicles.remove(vehicleRecord);
+    }
+
+    @Override
+    public VehicleRecord remove(VehicleRecord vehicleRecord, UUID ticketId) {
+        VehicleRecord[] removed = new VehicleRecord[1];
+        vehicles.computeIfPresent(vehicleRecord, (key, registered) -> {
+            if (!ticketId.equals(registered.getTicketId())) {
+                return registered;
+            }
+
+            removed[0] = registered;
+            return null;
+        });
+
+        return removed[0];
+    }
+
+    @Override
+    public boolean contains(VehicleRecord vehicleRecord) {
+        return vehicles.containsKey(vehicleRecord);
+    }
+
+    @Override
+    public int size() {
+        return vehicles.size();
+    }
+
+    @Override
+    public Set<VehicleRecord> snapshot() {
+        return ImmutableSet.copyOf(vehicles.keySet());
+    }
+
+    @Override
+    public Iterator<VehicleRecord> iterator() {
+        //The iterators of ConcurrentHashMap are weakly-consistent already
+        return Iterators.unmodifiableIterator(vehicles.keySet().iterator());
+    }
+}
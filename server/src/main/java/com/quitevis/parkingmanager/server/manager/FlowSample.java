@@ -0,0 +1,17 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The state of the parking lot over one second or one minute, starting at epochSecond: the number of cars parked at
+ * the end of it, and the number of cars that entered / exited through each gate during it
+ */
+@Data
+@Builder
+public class FlowSample {
+    private long epochSecond;
+    private int occupancy;
+    private long[] entries;
+    private long[] exits;
+}
@@ -0,0 +1,228 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+
+/**
+ * Keeps the occupancy of the parking lot and the number of entries and exits of each gate, for the last hour second by
+ * second and for the last day minute by minute.
+ * <p>
+ * The gates only bump a running total of their own: one atomic increment, no lock and no allocation. The totals of
+ * different gates are kept on different cache lines so that the gates do not slow each other down. A sampler copies
+ * the totals and the occupancy into fixed-size ring buffers every second, and the number of entries and exits of a
+ * second (or minute) is the difference between two copies.
+ * <p>
+ * The rings take a few hundred KB for a lot with a handful of gates. A lot created without history only keeps the
+ * totals: it is never sampled and has no samples to return.
+ */
+public class FlowStatistics implements AutoCloseable {
+    public enum Resolution {
+        SECOND(1, 3600),
+        MINUTE(60, 1440);
+
+        private final int seconds;
+        private final int slots;
+
+        Resolution(int seconds, int slots) {
+            this.seconds = seconds;
+            this.slots = slots;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * Returns the number of samples kept at this resolution
+         */
+        public int getSlots() {
+            return slots;
+        }
+    }
+
+    //16 longs = 128 bytes, so the totals of two gates never share a cache line (or a pair of prefetched lines)
+    private static final int STRIDE = 16;
+    private static final long SAMPLE_PERIOD_MILLIS = 200;
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("parking-stats-sampler").setDaemon(true).build());
+
+    private final int entryCount;
+    private final int exitCount;
+    private final IntSupplier occupancy;
+    private final AtomicLongArray entryTotals;
+    private final AtomicLongArray exitTotals;
+    private final Ring seconds;
+    private final Ring minutes;
+    private final long[] entrySnapshot;
+    private final long[] exitSnapshot;
+    private ScheduledFuture<?> sampling;
+
+    public FlowStatistics(int entryCount, int exitCount, IntSupplier occupancy) {
+        this(entryCount, exitCount, occupancy, true);
+    }
+
+    public FlowStatistics(int entryCount, int exitCount, IntSupplier occupancy, boolean keepHistory) {
+        this.entryCount = entryCount;
+        this.exitCount = exitCount;
+        this.occupancy = occupancy;
+        this.entryTotals = new AtomicLongArray(entryCount * STRIDE);
+        this.exitTotals = new AtomicLongArray(exitCount * STRIDE);
+        this.seconds = keepHistory ? new Ring(Resolution.SECOND, entryCount, exitCount) : null;
+        this.minutes = keepHistory ? new Ring(Resolution.MINUTE, entryCount, exitCount) : null;
+        this.entrySnapshot = keepHistory ? new long[entryCount] : null;
+        this.exitSnapshot = keepHistory ? new long[exitCount] : null;
+    }
+
+    /**
+     * Starts taking a sample every second, in a background thread. Does nothing if no history is kept.
+     */
+    public synchronized void start() {
+        if (sampling == null && seconds != null) {
+            sampling = SAMPLER.scheduleAtFixedRate(() -> sample(System.currentTimeMillis() / 1000),
+                    0, SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void entered(int entryGateNumber) {
+        entryTotals.incrementAndGet(entryGateNumber * STRIDE);
+    }
+
+    public void exited(int exitGateNumber) {
+        exitTotals.incrementAndGet(exitGateNumber * STRIDE);
+    }
+
+    /**
+     * Returns the number of cars that entered through the gate since the start
+     */
+    public long getEntryTotal(int entryGateNumber) {
+        return entryTotals.get(entryGateNumber * STRIDE);
+    }
+
+    /**
+     * Returns the number of cars that exited through the gate since the start
+     */
+    public long getExitTotal(int exitGateNumber) {
+        return exitTotals.get(exitGateNumber * STRIDE);
+    }
+
+    /**
+     * Records the totals and the occupancy as of the start of the given second. Does nothing if that second was
+     * already recorded. A minute is recorded with the first sample taken in it.
+     */
+    public synchronized void sample(long epochSecond) {
+        if (seconds == null || epochSecond <= seconds.lastEpochSecond) {
+            return;
+        }
+
+        for (int x = 0; x < entryCount; ++x) {
+            entrySnapshot[x] = entryTotals.get(x * STRIDE);
+        }
+
+        for (int x = 0; x < exitCount; ++x) {
+            exitSnapshot[x] = exitTotals.get(x * STRIDE);
+        }
+
+        int parked = occupancy.getAsInt();
+        seconds.record(epochSecond, parked, entrySnapshot, exitSnapshot);
+
+        long minute = epochSecond - Math.floorMod(epochSecond, 60);
+        if (minute > minutes.lastEpochSecond) {
+            minutes.record(minute, parked, entrySnapshot, exitSnapshot);
+        }
+    }
+
+    /**
+     * Returns up to the given number of the most recent complete seconds (or minutes), oldest first. If the sampler
+     * was held up, a sample can cover more than one second: the next sample tells where it ends.
+     */
+    public synchronized List<FlowSample> getSamples(Resolution resolution, int count) {
+        if (seconds == null) {
+            return Collections.emptyList();
+        }
+
+        Ring ring = resolution == Resolution.SECOND ? seconds : minutes;
+        return ring.samples(Math.min(count, resolution.getSlots() - 1));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    /**
+     * The samples of one resolution. Slot i holds the totals as of epochSeconds[i], all the arrays are allocated once.
+     */
+    private static final class Ring {
+        private final int slots;
+        private final int entryCount;
+        private final int exitCount;
+        private final long[] epochSeconds;
+        private final int[] occupancies;
+        private final long[] entryTotals;
+        private final long[] exitTotals;
+        private long recorded;
+        private long lastEpochSecond = Long.MIN_VALUE;
+
+        private Ring(Resolution resolution, int entryCount, int exitCount) {
+            this.slots = resolution.getSlots();
+            this.entryCount = entryCount;
+            this.exitCount = exitCount;
+            this.epochSeconds = new long[slots];
+            this.occupancies = new int[slots];
+            this.entryTotals = new long[slots * entryCount];
+            this.exitTotals = new long[slots * exitCount];
+        }
+
+        private void record(long epochSecond, int occupancy, long[] entries, long[] exits) {
+            int slot = (int) (recorded % slots);
+            epochSeconds[slot] = epochSecond;
+            occupancies[slot] = occupancy;
+            System.arraycopy(entries, 0, entryTotals, slot * entryCount, entryCount);
+            System.arraycopy(exits, 0, exitTotals, slot * exitCount, exitCount);
+            lastEpochSecond = epochSecond;
+            ++recorded;
+        }
+
+        private List<FlowSample> samples(int count) {
+            //Each sample needs the one before it
+            int available = (int) Math.min(recorded - 1, slots - 1);
+            int size = Math.max(0, Math.min(count, available));
+            List<FlowSample> samples = Lists.newArrayListWithCapacity(size);
+
+            for (long x = recorded - size; x < recorded; ++x) {
+                int slot = (int) (x % slots);
+                int previous = (int) ((x - 1) % slots);
+                samples.add(FlowSample.builder()
+                        .epochSecond(epochSeconds[previous])
+                        .occupancy(occupancies[slot])
+                        .entries(difference(entryTotals, slot, previous, entryCount))
+                        .exits(difference(exitTotals, slot, previous, exitCount))
+                        .build());
+            }
+
+            return samples;
+        }
+
+        private static long[] difference(long[] totals, int slot, int previous, int gates) {
+            long[] difference = new long[gates];
+            for (int x = 0; x < gates; ++x) {
+                difference[x] = totals[slot * gates + x] - totals[previous * gates + x];
+            }
+
+            return difference;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.quitevis.parkingmanager.metrics.LatencyHistogram;
+
+/**
+ * Latency histograms of each phase a car goes through at each gate:
+ * QUEUE - from the request to the moment the gate starts handling the car (time spent waiting behind other cars)
+ * ADMISSION - the admission engine parking / unparking the car, which includes waiting for its lock
+ * LOGGING - the ParkingLogger call
+ * <p>
+ * A batch counts as one car. All the histograms are created up front, unless the latencies are not recorded at all
+ * (see disabled), in which case there are none.
+ */
+public class GateLatencies {
+    public enum Direction {
+        ENTRY,
+        EXIT
+    }
+
+    public enum Phase {
+        QUEUE,
+        ADMISSION,
+        LOGGING
+    }
+
+    private final LatencyHistogram[][][] histograms;
+    private final boolean recording;
+
+    public GateLatencies(int entryCount, int exitCount) {
+        this(entryCount, exitCount, true);
+    }
+
+    private GateLatencies(int entryCount, int exitCount, boolean recording) {
+        this.recording = recording;
+        int phases = Phase.values().length;
+        this.histograms = new LatencyHistogram[][][] {
+                create(phases, entryCount),
+                create(phases, exitCount)
+        };
+    }
+
+    /**
+     * Returns latencies that record nothing and report no gates
+     */
+    public static GateLatencies disabled() {
+        return new GateLatencies(0, 0, false);
+    }
+
+    public void record(Direction direction, Phase phase, int gate, long nanos) {
+        if (!recording) {
+            return;
+        }
+
+        histograms[direction.ordinal()][phase.ordinal()][gate].record(nanos);
+    }
+
+    public LatencyHistogram get(Direction direction, Phase phase, int gate) {
+        return histograms[direction.ordinal()][phase.ordinal()][gate];
+    }
+
+    public int getGateCount(Direction direction) {
+        return histograms[direction.ordinal()][0].length;
+    }
+
+    private static LatencyHistogram[][] create(int phases, int gates) {
+        LatencyHistogram[][] histograms = new LatencyHistogram[phases][gates];
+        for (int phase = 0; phase < phases; ++phase) {
+            for (int gate = 0; gate < gates; ++gate) {
+                histograms[phase][gate] = new LatencyHistogram();
+            }
+        }
+
+        return histograms;
+    }
+}
@@ -0,0 +1,20 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a car is turned away because the queue of its gate is full. The car did not enter / exit and should
+ * try again later.
+ */
+public class GateOverloadedException extends RejectedExecutionException {
+    private final int queueDepth;
+
+    public GateOverloadedException(String message, int queueDepth) {
+        super(message);
+        this.queueDepth = queueDepth;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+}
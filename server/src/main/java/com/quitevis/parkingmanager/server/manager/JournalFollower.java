@@ -0,0 +1,131 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.journal.JournalEntry;
+import com.quitevis.parkingmanager.server.journal.JournalGapException;
+import com.quitevis.parkingmanager.server.journal.ReplicaJournal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a replica up to date with its leader: every pollMillis, the entries the leader added to its journal are read
+ * (see ReplicaJournal) and applied to the ParkingManager of the replica, in a background thread. A replica that fell
+ * behind the snapshots of the leader starts over from the latest one.
+ * <p>
+ * The lag is the time between the leader making a change and the replica applying it, as of the last change applied.
+ * It stays where it was while the leader is idle, the time since the last poll tells whether the replica still
+ * follows.
+ */
+@Slf4j
+public class JournalFollower implements AutoCloseable {
+    private final ParkingManager parkingManager;
+    private final ReplicaJournal replicaJournal;
+    private final long pollMillis;
+    private final ScheduledExecutorService poller;
+    private volatile long lagMillis;
+    private volatile long lastPollMillis;
+    private boolean promoted;
+
+    public JournalFollower(ParkingManager parkingManager, ReplicaJournal replicaJournal, long pollMillis) {
+        this.parkingManager = parkingManager;
+        this.replicaJournal = replicaJournal;
+        this.pollMillis = pollMillis;
+        this.poller = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("parking-journal-follower").setDaemon(true).build());
+        this.lastPollMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts following the journal of the leader. The ParkingManager must have been recovered first.
+     */
+    public void start() {
+        poller.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Applies the entries the leader wrote since the previous poll
+     */
+    public synchronized void poll() {
+        if (promoted) {
+            return;
+        }
+
+        try {
+            try {
+                replicaJournal.poll(this::apply);
+            } catch (JournalGapException e) {
+                log.warn("Starting over from the latest snapshot of the leader: {}", e.getMessage());
+                List<VehicleRecord> parkedVehicles = Lists.newArrayList();
+                replicaJournal.restart(parkedVehicles::add);
+                parkingManager.resync(parkedVehicles);
+                replicaJournal.poll(this::apply);
+            }
+
+            lastPollMillis = System.currentTimeMillis();
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to follow the journal of the leader", e);
+        }
+    }
+
+    /**
+     * Applies what is left of the journal of the leader, stops following it and makes this server the leader (see
+     * ReplicaJournal.promote). Must only be called once the leader is down.
+     */
+    public synchronized void promote() throws IOException {
+        if (promoted) {
+            throw new IllegalStateException("This server was already promoted.");
+        }
+
+        poller.shutdown();
+        replicaJournal.poll(this::apply);
+        replicaJournal.promote();
+        promoted = true;
+        log.info("Promoted to leader at journal sequence {}", replicaJournal.getSequence());
+    }
+
+    public boolean isPromoted() {
+        return replicaJournal.isPromoted();
+    }
+
+    /**
+     * Returns the sequence of the last entry of the leader applied
+     */
+    public long getSequence() {
+        return replicaJournal.getSequence();
+    }
+
+    /**
+     * Returns how long after the leader made it the last change was applied
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Returns how long ago the journal of the leader was last read without error
+     */
+    public long getMillisSinceLastPoll() {
+        return System.currentTimeMillis() - lastPollMillis;
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    private void apply(JournalEntry entry) {
+        parkingManager.replicate(entry);
+        if (entry.getDate() != null) {
+            long madeMillis = entry.getDate().toInstant(ZoneOffset.UTC).toEpochMilli();
+            lagMillis = Math.max(0, System.currentTimeMillis() - madeMillis);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission engine that does not take any lock.
+ * <p>
+ * A slot is reserved by a compare-and-set on parkedCarCounter before the vehicle is registered with a single
+ * putIfAbsent on vehiclesParked. If the vehicle turns out to be parked already, the reserved slot is given back.
+ * On exit the vehicle is removed first and the slot is given back afterwards.
+ * <p>
+ * Because a slot is always reserved before the vehicle becomes visible and given back only after it disappeared,
+ * parkedCarCounter never goes over the capacity, never goes below zero and is never less than the number of
+ * vehicles in vehiclesParked.
+ * <p>
+ * The engine itself takes no lock, but it is only as lock-free as its VehicleRegistry: the default
+ * ConcurrentVehicleRegistry is, the CompactVehicleRegistry is synchronized.
+ */
+public class LockFreeAdmissionEngine implements AdmissionEngine {
+    private final AtomicInteger parkedCarCounter;
+    private final VehicleRegistry vehiclesParked;
+    private final int capacity;
+
+    public LockFreeAdmissionEngine(int capacity) {
+        this(capacity, new ConcurrentVehicleRegistry());
+    }
+
+    public LockFreeAdmissionEngine(int capacity, VehicleRegistry vehiclesParked) {
+        this.capacity = capacity;
+        this.parkedCarCounter = new AtomicInteger();
+        this.vehiclesParked = vehiclesParked;
+    }
+
+    @Override
+    public void admit(int entryGateNumber, VehicleRecord vehicleRecord) {
+        //Cheap pre-check so that a duplicate is reported as such even if the lot is full. The putIfAbsent below is
+        //the one that really decides.
+        if (vehiclesParked.contains(vehicleRecord)) {
+            throw new IllegalArgumentException("This vehicleRecord is already parked.");
+        }
+
+        reserveSlot();
+
+        if (!vehiclesParked.putIfAbsent(vehicleRecord)) {
+            releaseSlot();
+            throw new IllegalArgumentException("This vehicleRecord is already parked.");
+        }
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord) {
+        VehicleRecord released = vehiclesParked.remove(vehicleRecord);
+        if (released == null) {
+            throw new IllegalArgumentException("The provided vehicleRecord is not found.");
+        }
+
+        releaseSlot();
+        return released;
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord, UUID ticketId) {
+        VehicleRecord released = vehiclesParked.remove(vehicleRecord, ticketId);
+        if (released == null) {
+            throw new IllegalArgumentException("The provided vehicleRecord is not parked with this ticket.");
+        }
+
+        releaseSlot();
+        return released;
+    }
+
+    /**
+     * Reserves the slots of the vehicles that are not parked yet with a single compare-and-set, then registers them one
+     * by one. The vehicles already parked never hold a slot, so they cannot make the lot look full to the other gates.
+     * Slots that end up unused (because a vehicle was parked meanwhile, or is twice in the batch) are given back at the
+     * end.
+     */
+    @Override
+    public List<RuntimeException> admitAll(int entryGateNumber, List<VehicleRecord> vehicleRecords) {
+        boolean[] parked = new boolean[vehicleRecords.size()];
+        int admissible = 0;
+        for (int x = 0; x < parked.length; ++x) {
+            parked[x] = vehiclesParked.contains(vehicleRecords.get(x));
+            if (!parked[x]) {
+                admissible++;
+            }
+        }
+
+        List<RuntimeException> errors = Lists.newArrayListWithCapacity(vehicleRecords.size());
+        int reserved = admissible == 0 ? 0 : reserveSlots(admissible);
+
+        for (int x = 0; x < parked.length; ++x) {
+            if (parked[x]) {
+                errors.add(new IllegalArgumentException("This vehicleRecord is already parked."));
+            } else if (reserved == 0) {
+                errors.add(new IllegalStateException("The parking lot is already full."));
+            } else if (!vehiclesParked.putIfAbsent(vehicleRecords.get(x))) {
+                errors.add(new IllegalArgumentException("This vehicleRecord is already parked."));
+            } else {
+                reserved--;
+                errors.add(null);
+            }
+        }
+
+        for (; reserved > 0; --reserved) {
+            releaseSlot();
+        }
+
+        return errors;
+    }
+
+    @Override
+    public int getParkedCount() {
+        return parkedCarCounter.get();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getCapacityLeft() {
+        return capacity - parkedCarCounter.get();
+    }
+
+    @Override
+    public Set<VehicleRecord> getParkedVehicles() {
+        return vehiclesParked.snapshot();
+    }
+
+    @Override
+    public Iterator<VehicleRecord> iterateParkedVehicles() {
+        return vehiclesParked.iterator();
+    }
+
+    @Override
+    public List<ZoneInfo> getZones() {
+        return ImmutableList.of();
+    }
+
+    private void reserveSlot() {
+        if (reserveSlots(1) == 0) {
+            throw new IllegalStateException("The parking lot is already full.");
+        }
+    }
+
+    /**
+     * Reserves up to count slots. Returns the number of slots reserved, which is 0 if the lot is full.
+     */
+    private int reserveSlots(int count) {
+        while (true) {
+            int parked = parkedCarCounter.get();
+            int reserved = Math.min(count, capacity - parked);
+            if (reserved <= 0) {
+                return 0;
+            }
+
+            if (parkedCarCounter.compareAndSet(parked, parked + reserved)) {
+                //Throw assertion error if invariant is violated
+                assert (parked + reserved <= capacity);
+                return reserved;
+            }
+        }
+    }
+
+    private void releaseSlot() {
+        int parked = parkedCarCounter.decrementAndGet();
+
+        //Throw assertion error if invariant is violated
+        assert (parked >= 0);
+    }
+}
@@ -0,0 +1,200 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Admission engine that guards parkedCarCounter and vehiclesParked with a ReadWriteLock.
+ * Entering and exiting take the exclusive write lock, so only one gate can change the state of the lot at a time.
+ */
+public class LockingAdmissionEngine implements AdmissionEngine {
+    private volatile int parkedCarCounter;
+    private final VehicleRegistry vehiclesParked;
+    private final int capacity;
+
+    //Picking the approach where the write lock is exclusive can have scalability problems later if the enter / exit
+    //operations become more expensive - but for now, it is really fast so stick with a simple and clear solution.
+    private final ReadWriteLock readWriteLock;
+
+    public LockingAdmissionEngine(int capacity) {
+        this(capacity, new ConcurrentVehicleRegistry());
+    }
+
+    public LockingAdmissionEngine(int capacity, VehicleRegistry vehiclesParked) {
+        this.capacity = capacity;
+        this.vehiclesParked = vehiclesParked;
+        this.readWriteLock = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public void admit(int entryGateNumber, VehicleRecord vehicleRecord) {
+        Lock lock = readWriteLock.writeLock();
+        try {
+            lock.lock();
+            admitLocked(vehicleRecord);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord) {
+        Lock lock = readWriteLock.writeLock();
+        try {
+            lock.lock();
+            return releaseLocked(vehicleRecord);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord, UUID ticketId) {
+        Lock lock = readWriteLock.writeLock();
+        try {
+            lock.lock();
+            VehicleRecord released = vehiclesParked.remove(vehicleRecord, ticketId);
+            if (released == null) {
+                throw new IllegalArgumentException("The provided vehicleRecord is not parked with this ticket.");
+            }
+
+            parkedCarCounter--;
+
+            //Throw assertion error if invariant is violated
+            assert (parkedCarCounter >= 0);
+            return released;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<RuntimeException> admitAll(int entryGateNumber, List<VehicleRecord> vehicleRecords) {
+        List<RuntimeException> errors = Lists.newArrayListWithCapacity(vehicleRecords.size());
+        Lock lock = readWriteLock.writeLock();
+        try {
+            lock.lock();
+            for (VehicleRecord vehicleRecord : vehicleRecords) {
+                try {
+                    admitLocked(vehicleRecord);
+                    errors.add(null);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    errors.add(e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return errors;
+    }
+
+    @Override
+    public List<VehicleRecord> releaseAll(List<VehicleRecord> vehicleRecords) {
+        List<VehicleRecord> released = Lists.newArrayListWithCapacity(vehicleRecords.size());
+        Lock lock = readWriteLock.writeLock();
+        try {
+            lock.lock();
+            for (VehicleRecord vehicleRecord : vehicleRecords) {
+                try {
+                    released.add(releaseLocked(vehicleRecord));
+                } catch (IllegalArgumentException e) {
+                    released.add(null);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return released;
+    }
+
+    @Override
+    public int getParkedCount() {
+        Lock lock = readWriteLock.readLock();
+        try {
+            lock.lock();
+            return vehiclesParked.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getCapacityLeft() {
+        Lock lock = readWriteLock.readLock();
+        try {
+            lock.lock();
+            return capacity - parkedCarCounter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<VehicleRecord> getParkedVehicles() {
+        Lock lock = readWriteLock.readLock();
+        try {
+            lock.lock();
+            return vehiclesParked.snapshot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<VehicleRecord> iterateParkedVehicles() {
+        return vehiclesParked.iterator();
+    }
+
+    @Override
+    public List<ZoneInfo> getZones() {
+        return ImmutableList.of();
+    }
+
+    //Must be called with the write lock held
+    private void admitLocked(VehicleRecord vehicleRecord) {
+        if (vehiclesParked.contains(vehicleRecord)) {
+            throw new IllegalArgumentException("This vehicleRecord is already parked.");
+        }
+
+        if (parkedCarCounter >= capacity) {
+            throw new IllegalStateException("The parking lot is already full.");
+        }
+
+        vehiclesParked.putIfAbsent(vehicleRecord);
+        parkedCarCounter++;
+
+        //Throw assertion error if invariant is violated
+        assert (parkedCarCounter <= capacity);
+    }
+
+    //Must be called with the write lock held
+    private VehicleRecord releaseLocked(VehicleRecord vehicleRecord) {
+        VehicleRecord released = vehiclesParked.remove(vehicleRecord);
+        if (released == null) {
+            throw new IllegalArgumentException("The provided vehicleRecord is not found.");
+        }
+
+        parkedCarCounter--;
+
+        //Throw assertion error if invariant is violated
+        assert (parkedCarCounter >= 0);
+        return released;
+    }
+}
@@ -0,0 +1,171 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * The parking lots hosted by one server, keyed by lot id.
+ * <p>
+ * Each lot is configured by a file named &lt;lot id&gt;.properties, which takes the same parking.* keys as the
+ * server config of a single lot: the gate counts, the capacity or zones, the admission engine, the registry, the
+ * queue depth of the gates, the journal and the tariff. Every lot runs on the gate pool and logs to the logger shared
+ * by all of them, and is created without flow history or latency histograms (see ParkingManager.createHosted), so
+ * that a lot costs little more than its parked vehicles.
+ * <p>
+ * A lot with a parking.journal.dir keeps its own journal, which has its own flusher thread unless its sync mode is
+ * "sync". Lots that need to survive a restart must not share a journal directory.
+ */
+@Slf4j
+public class ParkingLots implements AutoCloseable {
+    private static final String CONFIG_SUFFIX = ".properties";
+    private static final Pattern LOT_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Map<String, ParkingManager> lots;
+    private final Map<String, ParkingJournal> journals;
+
+    private ParkingLots(Map<String, ParkingManager> lots, Map<String, ParkingJournal> journals) {
+        this.lots = ImmutableMap.copyOf(lots);
+        this.journals = ImmutableMap.copyOf(journals);
+    }
+
+    /**
+     * Creates a lot for every &lt;lot id&gt;.properties file in the directory, in the order of their ids. Lot ids may
+     * only hold letters, digits, '-' and '_', the other files are skipped. The lots are not recovered yet (see
+     * recover).
+     * <p>
+     * A file that is missing a required key or holds a bad value fails the whole load with an
+     * IllegalArgumentException naming the file. The lots and journals created before it are closed.
+     */
+    public static ParkingLots load(Path directory, ExecutorService gatePool, ParkingLogger parkingLogger)
+            throws IOException {
+        List<Path> configs = Lists.newArrayList();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + CONFIG_SUFFIX)) {
+            files.forEach(configs::add);
+        }
+
+        Collections.sort(configs);
+        Map<String, ParkingManager> lots = new TreeMap<>();
+        Map<String, ParkingJournal> journals = Maps.newHashMap();
+
+        try {
+            for (Path config : configs) {
+                String fileName = config.getFileName().toString();
+                String lotId = fileName.substring(0, fileName.length() - CONFIG_SUFFIX.length());
+                if (!LOT_ID.matcher(lotId).matches()) {
+                    log.warn("Skipping {}, lot ids may only hold letters, digits, '-' and '_'", config);
+                    continue;
+                }
+
+                Properties properties = ParkingManagerModule.loadServerConfig(config);
+                try {
+                    int entryCount = Integer.parseInt(getRequired(properties, "parking.entry.count"));
+                    int exitCount = Integer.parseInt(getRequired(properties, "parking.exit.count"));
+                    if (properties.getProperty("parking.zones", "").trim().isEmpty()) {
+                        getRequired(properties, "parking.max.slot");
+                    }
+
+                    int maxQueueDepth = Integer.parseInt(properties.getProperty("parking.gate.queue.max",
+                            String.valueOf(Integer.MAX_VALUE)).trim());
+                    AdmissionEngine admissionEngine = ParkingManagerModule.createAdmissionEngine(properties);
+                    Tariff tariff = ParkingManagerModule.createTariff(properties);
+
+                    //Last, so that a bad value does not leave a journal open
+                    ParkingJournal parkingJournal = ParkingManagerModule.createParkingJournal(properties);
+                    journals.put(lotId, parkingJournal);
+                    lots.put(lotId, ParkingManager.createHosted(entryCount, exitCount, admissionEngine,
+                            parkingLogger, gatePool, maxQueueDepth, parkingJournal, tariff));
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Invalid lot config " + config + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close(lots, journals);
+            throw e;
+        }
+
+        log.info("Loaded {} parking lots from {}", lots.size(), directory);
+        return new ParkingLots(lots, journals);
+    }
+
+    /**
+     * Returns the lot, or null if there is no lot with that id
+     */
+    public ParkingManager get(String lotId) {
+        return lots.get(lotId);
+    }
+
+    /**
+     * Returns the ids of the lots, sorted
+     */
+    public Set<String> getLotIds() {
+        return lots.keySet();
+    }
+
+    /**
+     * Rebuilds the parked vehicles of every lot from its journal
+     */
+    public void recover() throws IOException {
+        for (ParkingManager parkingManager : lots.values()) {
+            parkingManager.recover();
+        }
+    }
+
+    /**
+     * Saves a snapshot of every lot. A lot that fails does not keep the others from being saved.
+     */
+    public void snapshot() {
+        lots.forEach((lotId, parkingManager) -> {
+            try {
+                parkingManager.snapshot();
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to save a snapshot of the lot {}", lotId, e);
+            }
+        });
+    }
+
+    /**
+     * Closes every lot and its journal. The shared gate pool and logger are left to their owner.
+     */
+    @Override
+    public void close() {
+        close(lots, journals);
+    }
+
+    private static void close(Map<String, ParkingManager> lots, Map<String, ParkingJournal> journals) {
+        lots.values().forEach(ParkingManager::close);
+        journals.forEach((lotId, parkingJournal) -> {
+            try {
+                parkingJournal.close();
+            } catch (IOException e) {
+                log.error("Unable to close the journal of the lot {}", lotId, e);
+            }
+        });
+    }
+
+    private static String getRequired(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException(key + " is missing");
+        }
+
+        return value.trim();
+    }
+}
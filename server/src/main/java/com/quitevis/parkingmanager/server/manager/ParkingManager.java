@@ -1,28 +1,44 @@
 package com.quitevis.parkingmanager.server.manager;
 
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.quitevis.parkingmanager.model.GateResult;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
 import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+import com.quitevis.parkingmanager.server.journal.JournalEntry;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
 import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * The ParkingManager class is responsible for managing the parking requests which are:
@@ -30,54 +46,146 @@ import java.util.function.Consumer;
  * 2. Exiting the parking lot
  * <p>
  * There can be multiple entries and exits on the parking lot which that means multiple cars can enter and exit the parking
- * lot at the same time. To model such behavior, each of the entry and exit will be assigned its own thread. If for example
- * 2 cars exit the same exit gate number, the 2nd car will be blocked until after the 1st car has exited.
+ * lot at the same time. To model such behavior, each of the entry and exit will be assigned its own serial executor. If for
+ * example 2 cars exit the same exit gate number, the 2nd car will be blocked until after the 1st car has exited. The serial
+ * executors do not own a thread, they share the threads of the gate pool.
  * <p>
  * Valid entry / exit ids are 0 - (entryCount - 1) and 0 - (exitExecutorMap - 1)
  * <p>
- * Mutable states are parkedCarCounter and vehiclesParked
- * They are guarded by a ReadWriteLock.
+ * Mutable states are the parked car counter and the set of parked vehicles. They are owned by the AdmissionEngine,
+ * which decides how they are guarded (see LockingAdmissionEngine and LockFreeAdmissionEngine).
+ * <p>
+ * Alongside the AdmissionEngine, a ticket index maps the ticket of every parked car to its record, so that a car can
+ * exit with its ticket alone. A ticket is indexed before its car is admitted and removed after its car is released, so
+ * the index never misses a parked car and never keeps a car that has left.
+ * <p>
+ * Every change of the parked vehicles is made through the ParkingJournal, which writes it down so that recover can
+ * rebuild the lot after a restart. A car is only reported as parked or exited, counted and logged once its change is
+ * durable. If the journal fails to write it, the change is undone before the error is reported, so the car can try
+ * again once the journal is fixed.
+ * <p>
+ * After every change of the parked vehicles, an immutable ParkingManagerInfo is published with a version one higher
+ * than the change before it. Readers get the whole info with a single volatile read (see getInfo).
+ * <p>
+ * Every car that exits is charged by the Tariff of the lot for its stay, right after it was released, and the fee is
+ * set on its record.
  */
 @Slf4j
 @Singleton
 public class ParkingManager {
-    private volatile int parkedCarCounter;
-    private final Set<VehicleRecord> vehiclesParked;
-    private final Map<Integer, ExecutorService> entryExecutorMap;
-    private final Map<Integer, ExecutorService> exitExecutorMap;
+    private final AdmissionEngine admissionEngine;
+    private final ConcurrentMap<UUID, VehicleRecord> ticketIndex;
+    private final Map<Integer, SerialExecutor> entryExecutorMap;
+    private final Map<Integer, SerialExecutor> exitExecutorMap;
+    private final ExecutorService ownedGatePool;
     private final ParkingLogger parkingLogger;
-    private final int capacity;
+    private final ParkingJournal parkingJournal;
+    private final Tariff tariff;
+    private final FlowStatistics flowStatistics;
+    private final GateLatencies gateLatencies;
+    private final AtomicLong stateVersion;
+    private final AtomicReference<ParkingManagerInfo> info;
     private final int entryCount;
     private final int exitCount;
 
-    //Picking the approach where the write lock is exclusive can have scalability problems later if the enter / exit
-    //operations become more expensive - but for now, it is really fast so stick with a simple and clear solution.
-    private final ReadWriteLock readWriteLock;
+    public ParkingManager(int capacity, int entryCount, int exitCount, ParkingLogger parkingLogger) {
+        this(entryCount, exitCount, new LockingAdmissionEngine(capacity), parkingLogger,
+                createGatePool(Runtime.getRuntime().availableProcessors()), true, Integer.MAX_VALUE,
+                new NoOpParkingJournal(), Tariff.FREE, true);
+    }
+
+    public ParkingManager(
+            int entryCount,
+            int exitCount,
+            AdmissionEngine admissionEngine,
+            ParkingLogger parkingLogger,
+            ExecutorService gatePool,
+            int maxQueueDepth,
+            ParkingJournal parkingJournal) {
+        this(entryCount, exitCount, admissionEngine, parkingLogger, gatePool, maxQueueDepth, parkingJournal,
+                Tariff.FREE);
+    }
 
     @Inject
     public ParkingManager(
-            @Named("parking.max.slot") int capacity,
             @Named("parking.entry.count") int entryCount,
             @Named("parking.exit.count") int exitCount,
-            ParkingLogger parkingLogger) {
-        this.capacity = capacity;
+            AdmissionEngine admissionEngine,
+            ParkingLogger parkingLogger,
+            @Named("parking.gate.pool") ExecutorService gatePool,
+            @Named("parking.gate.queue.max") int maxQueueDepth,
+            ParkingJournal parkingJournal,
+            Tariff tariff) {
+        this(entryCount, exitCount, admissionEngine, parkingLogger, gatePool, false, maxQueueDepth, parkingJournal,
+                tariff, true);
+    }
+
+    private ParkingManager(
+            int entryCount,
+            int exitCount,
+            AdmissionEngine admissionEngine,
+            ParkingLogger parkingLogger,
+            ExecutorService gatePool,
+            boolean ownsGatePool,
+            int maxQueueDepth,
+            ParkingJournal parkingJournal,
+            Tariff tariff,
+            boolean instrumented) {
         this.entryCount = entryCount;
         this.exitCount = exitCount;
         this.entryExecutorMap = Maps.newHashMap();
         this.exitExecutorMap = Maps.newHashMap();
-        this.vehiclesParked = Sets.newConcurrentHashSet();
-        this.readWriteLock = new ReentrantReadWriteLock();
+        this.ownedGatePool = ownsGatePool ? gatePool : null;
+        this.admissionEngine = admissionEngine;
+        this.ticketIndex = Maps.newConcurrentMap();
         this.parkingLogger = parkingLogger;
+        this.parkingJournal = parkingJournal;
+        this.tariff = tariff;
+        this.flowStatistics =
+                new FlowStatistics(entryCount, exitCount, admissionEngine::getParkedCount, instrumented);
+        this.flowStatistics.start();
+        this.gateLatencies = instrumented ? new GateLatencies(entryCount, exitCount) : GateLatencies.disabled();
+        this.stateVersion = new AtomicLong();
+        this.info = new AtomicReference<>();
 
-        //We don't want multiple cars to enter the same gate at the same time, so use a single thread executor
-        //with unbounded queue
+        //We don't want multiple cars to enter the same gate at the same time, so each gate gets a serial executor
+        //with a queue of at most maxQueueDepth cars. The gates share the threads of the gate pool.
         for (int x = 0; x < entryCount; ++x) {
-            entryExecutorMap.put(x, Executors.newSingleThreadExecutor());
+            entryExecutorMap.put(x, new SerialExecutor(gatePool, maxQueueDepth));
         }
 
         for (int x = 0; x < exitCount; ++x) {
-            exitExecutorMap.put(x, Executors.newSingleThreadExecutor());
+            exitExecutorMap.put(x, new SerialExecutor(gatePool, maxQueueDepth));
         }
+
+        publishInfo();
+    }
+
+    /**
+     * Creates one of the many lots hosted by a single server (see ParkingLots). The lot runs its gates on the shared
+     * gate pool and keeps no flow history and no latency histograms: only the running totals of each gate are
+     * counted. An empty lot with 2 entry and 2 exit gates takes about 1.7 KB of heap this way, against about 250 KB
+     * for the single lot of a server (see LotFootprint in the benchmarks).
+     */
+    public static ParkingManager createHosted(
+            int entryCount,
+            int exitCount,
+            AdmissionEngine admissionEngine,
+            ParkingLogger parkingLogger,
+            ExecutorService gatePool,
+            int maxQueueDepth,
+            ParkingJournal parkingJournal,
+            Tariff tariff) {
+        return new ParkingManager(entryCount, exitCount, admissionEngine, parkingLogger, gatePool, false,
+                maxQueueDepth, parkingJournal, tariff, false);
+    }
+
+    /**
+     * Creates the pool of threads shared by the gates. It is a work-stealing pool in FIFO mode, which suits the
+     * short, independent tasks handed to it by the gates.
+     */
+    public static ExecutorService createGatePool(int threads) {
+        return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
     }
 
     /**
@@ -90,42 +198,65 @@ public class ParkingManager {
      * Throws a RuntimeException if:
      * 1. An attempt to park the same vehicleRecord was made
      * 2. For some reason, we are over capacity (serious bug!)
+     * <p>
+     * Throws a GateOverloadedException right away, without queueing the car, if the queue of the gate is full.
      */
     public CompletableFuture<UUID> enter(int entryGateNumber, VehicleRecord vehicleRecord) {
-        if (entryGateNumber >= entryCount) {
-            throw new IllegalArgumentException("The provided entry gate number does not exist.");
-        }
-
-        return CompletableFuture.supplyAsync(() -> {
-            Lock lock = readWriteLock.writeLock();
-            try {
-                lock.lock();
-                if (vehiclesParked.contains(vehicleRecord)) {
-                    throw new IllegalArgumentException("This vehicleRecord is already parked.");
-                }
+        SerialExecutor entryExecutor = getEntryExecutor(entryGateNumber);
+        long requested = System.nanoTime();
 
-                if (parkedCarCounter >= capacity) {
-                    throw new IllegalStateException("The parking lot is already full.");
-                }
+        return entryExecutor.submit(() -> {
+            long started = recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.QUEUE, entryGateNumber,
+                    requested);
 
-                vehiclesParked.add(vehicleRecord);
-                parkedCarCounter++;
+            //The ticket and the date entered are set before the vehicle is registered so that the registry (and
+            //anyone reading it) always sees a complete record. They are put back if the vehicle is turned away.
+            UUID previousTicketId = vehicleRecord.getTicketId();
+            LocalDateTime previousDateEntered = vehicleRecord.getDateEntered();
+            int previousEntryGate = vehicleRecord.getEntryGate();
+            UUID ticketId = UUID.randomUUID();
+            vehicleRecord.setTicketId(ticketId);
+            vehicleRecord.setDateEntered(LocalDateTime.now(ZoneOffset.UTC));
+            vehicleRecord.setEntryGate(entryGateNumber);
+            ticketIndex.put(ticketId, vehicleRecord);
 
-                //Throw assertion error if invariant is violated
-                assert (parkedCarCounter <= capacity);
+            CompletableFuture<Void> committed;
+            try {
+                committed = parkingJournal.commit(entries -> {
+                    admissionEngine.admit(entryGateNumber, vehicleRecord);
+                    entries.add(JournalEntry.entered(entryGateNumber, vehicleRecord));
+                });
+            } catch (RuntimeException e) {
+                ticketIndex.remove(ticketId);
+                vehicleRecord.setTicketId(previousTicketId);
+                vehicleRecord.setDateEntered(previousDateEntered);
+                vehicleRecord.setEntryGate(previousEntryGate);
+                throw e;
             } finally {
-                lock.unlock();
+                recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.ADMISSION, entryGateNumber, started);
             }
 
-            UUID ticketId = UUID.randomUUID();
-            vehicleRecord.setTicketId(ticketId);
-            vehicleRecord.setDateEntered(LocalDateTime.now(ZoneOffset.UTC));
-            parkingLogger.log(vehicleRecord, ParkingLogger.State.PARKED);
+            publishInfo();
+
+            return committed.handle((v, e) -> {
+                if (e != null) {
+                    undoEntry(vehicleRecord);
+                    vehicleRecord.setTicketId(previousTicketId);
+                    vehicleRecord.setDateEntered(previousDateEntered);
+                    vehicleRecord.setEntryGate(previousEntryGate);
+                    throw new CompletionException(e);
+                }
 
-            return UUID.randomUUID();
-        }, entryExecutorMap.get(entryGateNumber))
+                long logging = System.nanoTime();
+                flowStatistics.entered(entryGateNumber);
+                parkingLogger.log(vehicleRecord, ParkingLogger.State.PARKED);
+                recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.LOGGING, entryGateNumber, logging);
+                return ticketId;
+            });
+        })
+                .thenCompose(Function.identity())
                 .exceptionally(e -> {
-                    parkingLogger.log(vehicleRecord, ParkingLogger.State.UNABLE_TO_PARK);
+                    parkingLogger.log(turnedAway(entryGateNumber, vehicleRecord), ParkingLogger.State.UNABLE_TO_PARK);
                     throw new RuntimeException(e);
                 });
     }
@@ -135,93 +266,420 @@ public class ParkingManager {
      * Valid values for the exitGateNumber are 0 - (exitCount - 1).
      * This is done in an asynchronous manner so that other cars exiting other gates are not blocked.
      * <p>
+     * Returns a Future that completes with the record of the car as it was registered when it entered, with its
+     * ticket, date entered, date exited and fee.
      * Throws a RuntimeException if:
      * 1. The car is not really parked but it tries to exit the parking lot
      * 2. The parkedCarCounter is already zero before the car exits (serious bug)
+     * <p>
+     * Throws a GateOverloadedException right away, without queueing the car, if the queue of the gate is full.
      */
-    public CompletableFuture<Void> exit(int exitGateNumber, VehicleRecord vehicleRecord) {
-        if (exitGateNumber > exitCount) {
-            throw new IllegalArgumentException("The provided exit gate number does not exist.");
-        }
-
-        return CompletableFuture.runAsync(() -> {
-            Lock lock = readWriteLock.writeLock();
-            try {
-                lock.lock();
+    public CompletableFuture<VehicleRecord> exit(int exitGateNumber, VehicleRecord vehicleRecord) {
+        SerialExecutor exitExecutor = getExitExecutor(exitGateNumber);
+        long requested = System.nanoTime();
 
-                if (!vehiclesParked.contains(vehicleRecord)) {
-                    throw new IllegalArgumentException("The provided vehicleRecord is not found.");
-                }
+        return exitExecutor.submit(() -> release(exitGateNumber, vehicleRecord, null, requested))
+                .thenCompose(Function.identity())
+                .exceptionally(e -> {
+                    throw new RuntimeException(e);
+                });
+    }
 
-                vehiclesParked.remove(vehicleRecord);
-                parkedCarCounter--;
+    /**
+     * Unparks the car that holds the ticket, the same way exit does. The car is found through the ticket index, so
+     * its vehicle id does not need to be known. The ticket is taken out of the index before the car is released, so
+     * a ticket presented twice only lets one car out.
+     * <p>
+     * Throws a RuntimeException if no parked car holds the ticket, which is also the case when the car left with it
+     * and is parked again with another ticket.
+     */
+    public CompletableFuture<VehicleRecord> exitByTicket(int exitGateNumber, UUID ticketId) {
+        SerialExecutor exitExecutor = getExitExecutor(exitGateNumber);
+        long requested = System.nanoTime();
 
-                //Throw assertion error if invariant is violated
-                assert (parkedCarCounter >= 0);
-            } finally {
-                lock.unlock();
+        return exitExecutor.submit(() -> {
+            VehicleRecord vehicleRecord = ticketIndex.remove(ticketId);
+            if (vehicleRecord == null) {
+                throw new IllegalArgumentException("The provided ticket is not found.");
             }
 
-            vehicleRecord.setDateExited(LocalDateTime.now(ZoneOffset.UTC));
-            parkingLogger.log(vehicleRecord, ParkingLogger.State.EXITED_PARKING);
-        }, exitExecutorMap.get(exitGateNumber))
+            try {
+                return release(exitGateNumber, vehicleRecord, ticketId, requested);
+            } catch (StaleTicketException e) {
+                throw new IllegalArgumentException("The provided ticket is not found.", e);
+            } catch (RuntimeException e) {
+                //The car is still parked with the ticket
+                ticketIndex.putIfAbsent(ticketId, vehicleRecord);
+                throw e;
+            }
+        })
+                .thenCompose(Function.identity())
                 .exceptionally(e -> {
                     throw new RuntimeException(e);
                 });
     }
 
+    /**
+     * Parks a batch of cars that arrived at the same gate, in one go. The whole batch is queued on the gate like a
+     * single car and is admitted in one critical section of the admission engine: as many cars as the capacity
+     * allows are parked, in order.
+     * <p>
+     * Returns a Future that completes with one GateResult per car, in the same order as vehicleRecords. Cars that
+     * were turned away have a message explaining why.
+     */
+    public CompletableFuture<List<GateResult>> enterBatch(int entryGateNumber, List<VehicleRecord> vehicleRecords) {
+        SerialExecutor entryExecutor = getEntryExecutor(entryGateNumber);
+        long requested = System.nanoTime();
+
+        return entryExecutor.submit(() -> {
+            long started = recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.QUEUE, entryGateNumber,
+                    requested);
+            int size = vehicleRecords.size();
+            UUID[] previousTicketIds = new UUID[size];
+            LocalDateTime[] previousDatesEntered = new LocalDateTime[size];
+            int[] previousEntryGates = new int[size];
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+            UUID[] ticketIds = new UUID[size];
+            for (int x = 0; x < size; ++x) {
+                VehicleRecord vehicleRecord = vehicleRecords.get(x);
+                previousTicketIds[x] = vehicleRecord.getTicketId();
+                previousDatesEntered[x] = vehicleRecord.getDateEntered();
+                previousEntryGates[x] = vehicleRecord.getEntryGate();
+                ticketIds[x] = UUID.randomUUID();
+                vehicleRecord.setTicketId(ticketIds[x]);
+                vehicleRecord.setDateEntered(now);
+                vehicleRecord.setEntryGate(entryGateNumber);
+                ticketIndex.put(ticketIds[x], vehicleRecord);
+            }
+
+            List<RuntimeException> errors = Lists.newArrayListWithCapacity(size);
+            CompletableFuture<Void> committed = parkingJournal.commit(entries -> {
+                errors.addAll(admissionEngine.admitAll(entryGateNumber, vehicleRecords));
+                for (int x = 0; x < size; ++x) {
+                    if (errors.get(x) == null) {
+                        entries.add(JournalEntry.entered(entryGateNumber, vehicleRecords.get(x)));
+                    }
+                }
+            });
+            recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.ADMISSION, entryGateNumber, started);
+            publishInfo();
+
+            List<GateResult> results = Lists.newArrayListWithCapacity(size);
+
+            for (int x = 0; x < size; ++x) {
+                VehicleRecord vehicleRecord = vehicleRecords.get(x);
+                RuntimeException error = errors.get(x);
+                if (error == null) {
+                    results.add(GateResult.builder()
+                            .vehicleId(vehicleRecord.getVehicleId())
+                            .ticketId(ticketIds[x])
+                            .build());
+                } else {
+                    ticketIndex.remove(ticketIds[x]);
+                    vehicleRecord.setTicketId(previousTicketIds[x]);
+                    vehicleRecord.setDateEntered(previousDatesEntered[x]);
+                    vehicleRecord.setEntryGate(previousEntryGates[x]);
+                    parkingLogger.log(turnedAway(entryGateNumber, vehicleRecord), ParkingLogger.State.UNABLE_TO_PARK);
+                    results.add(GateResult.builder()
+                            .vehicleId(vehicleRecord.getVehicleId())
+                            .message(error.getMessage())
+                            .build());
+                }
+            }
+
+            return committed.handle((v, e) -> {
+                long logging = System.nanoTime();
+                for (int x = 0; x < size; ++x) {
+                    if (errors.get(x) != null) {
+                        continue;
+                    }
+
+                    VehicleRecord vehicleRecord = vehicleRecords.get(x);
+                    if (e != null) {
+                        undoEntry(vehicleRecord);
+                        vehicleRecord.setTicketId(previousTicketIds[x]);
+                        vehicleRecord.setDateEntered(previousDatesEntered[x]);
+                        vehicleRecord.setEntryGate(previousEntryGates[x]);
+                        parkingLogger.log(turnedAway(entryGateNumber, vehicleRecord),
+                                ParkingLogger.State.UNABLE_TO_PARK);
+                    } else {
+                        flowStatistics.entered(entryGateNumber);
+                        parkingLogger.log(vehicleRecord, ParkingLogger.State.PARKED);
+                    }
+                }
+
+                if (e != null) {
+                    throw new CompletionException(e);
+                }
+
+                recordPhase(GateLatencies.Direction.ENTRY, GateLatencies.Phase.LOGGING, entryGateNumber, logging);
+                return results;
+            });
+        })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Unparks a batch of cars that arrived at the same gate, in one go, the same way enterBatch parks them.
+     * <p>
+     * Returns a Future that completes with one GateResult per car, in the same order as vehicleRecords. Cars that
+     * could not exit have a message explaining why.
+     */
+    public CompletableFuture<List<GateResult>> exitBatch(int exitGateNumber, List<VehicleRecord> vehicleRecords) {
+        SerialExecutor exitExecutor = getExitExecutor(exitGateNumber);
+        long requested = System.nanoTime();
+
+        return exitExecutor.submit(() -> {
+            long started = recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.QUEUE, exitGateNumber,
+                    requested);
+            List<VehicleRecord> released = Lists.newArrayListWithCapacity(vehicleRecords.size());
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+            CompletableFuture<Void> committed = parkingJournal.commit(entries -> {
+                released.addAll(admissionEngine.releaseAll(vehicleRecords));
+                for (VehicleRecord parkedRecord : released) {
+                    if (parkedRecord != null) {
+                        parkedRecord.setDateExited(now);
+                        parkedRecord.setExitGate(exitGateNumber);
+                        entries.add(JournalEntry.exited(exitGateNumber, parkedRecord));
+                    }
+                }
+            });
+            recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.ADMISSION, exitGateNumber, started);
+            publishInfo();
+
+            List<GateResult> results = Lists.newArrayListWithCapacity(vehicleRecords.size());
+
+            for (int x = 0; x < vehicleRecords.size(); ++x) {
+                VehicleRecord parkedRecord = released.get(x);
+                if (parkedRecord == null) {
+                    results.add(GateResult.builder()
+                            .vehicleId(vehicleRecords.get(x).getVehicleId())
+                            .message("The provided vehicleRecord is not found.")
+                            .build());
+                    continue;
+                }
+
+                charge(parkedRecord);
+                results.add(GateResult.builder()
+                        .vehicleId(vehicleRecords.get(x).getVehicleId())
+                        .ticketId(parkedRecord.getTicketId())
+                        .fee(parkedRecord.getFee())
+                        .build());
+            }
+
+            return committed.handle((v, e) -> {
+                long logging = System.nanoTime();
+                for (VehicleRecord parkedRecord : released) {
+                    if (parkedRecord == null) {
+                        continue;
+                    }
+
+                    if (e != null) {
+                        undoExit(parkedRecord);
+                    } else {
+                        unindexTicket(parkedRecord);
+                        flowStatistics.exited(exitGateNumber);
+                        parkingLogger.log(parkedRecord, ParkingLogger.State.EXITED_PARKING);
+                    }
+                }
+
+                if (e != null) {
+                    throw new CompletionException(e);
+                }
+
+                recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.LOGGING, exitGateNumber, logging);
+                return results;
+            });
+        })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Rebuilds the parked vehicles from the latest snapshot and the journal entries written after it. Must be called
+     * once, before the gates are opened. Cars that entered and never exited are parked again with their ticket, date
+     * entered and entry gate. The parking logger is not told about the replayed changes, they were logged when they
+     * happened.
+     */
+    public void recover() throws IOException {
+        int[] replayed = new int[1];
+        parkingJournal.replay(this::restore, entry -> {
+            replayed[0]++;
+            replay(entry);
+        });
+
+        publishInfo();
+        log.info("Replayed {} journal entries, {} vehicles are parked", replayed[0], admissionEngine.getParkedCount());
+    }
+
+    /**
+     * Applies a change made by the leader, on a replica that follows the journal of the leader (see JournalFollower).
+     * Must only be called by one thread at a time. The parking logger is not told, the leader logged the change.
+     */
+    public void replicate(JournalEntry entry) {
+        replay(entry);
+        publishInfo();
+
+        int gate = entry.getGate();
+        if (entry.getType() == JournalEntry.Type.ENTERED && gate >= 0 && gate < entryCount) {
+            flowStatistics.entered(gate);
+        } else if (entry.getType() == JournalEntry.Type.EXITED && gate >= 0 && gate < exitCount) {
+            flowStatistics.exited(gate);
+        }
+    }
+
+    /**
+     * Replaces the parked vehicles with the given ones, on a replica that fell behind the leader and starts over from
+     * its latest snapshot. Only the vehicles that left or parked again since are released, the ones still on the same
+     * stay are left alone, so readers never see the lot emptied. The info is published once, when the lot is complete.
+     */
+    public void resync(Collection<VehicleRecord> parkedVehicles) {
+        Map<String, VehicleRecord> missing = Maps.newHashMapWithExpectedSize(parkedVehicles.size());
+        for (VehicleRecord vehicleRecord : parkedVehicles) {
+            missing.put(vehicleRecord.getVehicleId(), vehicleRecord);
+        }
+
+        for (VehicleRecord vehicleRecord : admissionEngine.getParkedVehicles()) {
+            VehicleRecord kept = missing.get(vehicleRecord.getVehicleId());
+            if (kept != null && isSameStay(vehicleRecord, kept)) {
+                missing.remove(vehicleRecord.getVehicleId());
+                continue;
+            }
+
+            try {
+                unindexTicket(admissionEngine.release(vehicleRecord));
+            } catch (RuntimeException e) {
+                log.warn("Unable to release the vehicle {}: {}", vehicleRecord, e.getMessage());
+            }
+        }
+
+        missing.values().forEach(this::restore);
+        publishInfo();
+    }
+
+    /**
+     * Saves the parked vehicles as a snapshot of the journal, so that recover does not have to replay the entries it
+     * covers. Can be called while the gates are open, they wait while the parked vehicles are copied.
+     */
+    public void snapshot() throws IOException {
+        parkingJournal.snapshot(admissionEngine::getParkedVehicles);
+    }
+
     /**
      * Returns the number of cars parked
      */
     public int getCurrentCapacity() {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            return vehiclesParked.size();
-        } finally {
-            lock.unlock();
-        }
+        return admissionEngine.getParkedCount();
     }
 
     /**
      * Returns the max capacity of the parking lot
      */
     public int getMaxCapacity() {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            return capacity;
-        } finally {
-            lock.unlock();
-        }
+        return admissionEngine.getCapacity();
     }
 
     /**
      * Returns the capacity left on the parking lot
      */
     public int getCapacityLeft() {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            return capacity - parkedCarCounter;
-        } finally {
-            lock.unlock();
-        }
+        return admissionEngine.getCapacityLeft();
+    }
+
+    /**
+     * Returns the latest published info of the parking lot. Its counts were read together, after the change numbered
+     * by its version, so they agree with each other. It is a single volatile read, cheap enough for many clients
+     * polling it.
+     */
+    public ParkingManagerInfo getInfo() {
+        return info.get();
     }
 
     /**
      * Returns the parked vehicles
      */
     public Set<VehicleRecord> getParkedVehicleIds() {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            return ImmutableSet.copyOf(vehiclesParked);
-        }
-        finally {
-            lock.unlock();
+        return admissionEngine.getParkedVehicles();
+    }
+
+    /**
+     * Returns a weakly-consistent iterator over the parked vehicles, which does not copy them. See
+     * VehicleRegistry.iterator for what it sees of the cars entering and exiting meanwhile.
+     */
+    public Iterator<VehicleRecord> iterateParkedVehicles() {
+        return admissionEngine.iterateParkedVehicles();
+    }
+
+    /**
+     * Returns the ids, in order, of at most limit parked vehicles whose id comes after the given one, or from the
+     * first one if after is null. Passing the last id of a page as the next after walks the whole lot: every
+     * vehicle that stays parked during the walk is returned exactly once.
+     * <p>
+     * Each page is one pass over the parked vehicles that keeps the limit smallest ids in a heap, so it neither
+     * copies the lot nor blocks the gates.
+     */
+    public List<String> getParkedVehicleIdPage(String after, int limit) {
+        PriorityQueue<String> page = new PriorityQueue<>(limit, Comparator.reverseOrder());
+        Iterator<VehicleRecord> iterator = admissionEngine.iterateParkedVehicles();
+        while (iterator.hasNext()) {
+            String vehicleId = iterator.next().getVehicleId();
+            if (after != null && vehicleId.compareTo(after) <= 0) {
+                continue;
+            }
+
+            if (page.size() < limit) {
+                page.add(vehicleId);
+            } else if (vehicleId.compareTo(page.peek()) < 0) {
+                page.poll();
+                page.add(vehicleId);
+            }
         }
 
+        List<String> vehicleIds = Lists.newArrayList(page);
+        Collections.sort(vehicleIds);
+        return vehicleIds;
+    }
+
+    /**
+     * Returns the occupancy of each zone, or an empty list if the parking lot is not split in zones
+     */
+    public List<ZoneInfo> getZones() {
+        return admissionEngine.getZones();
+    }
+
+    /**
+     * Returns the number of cars waiting in the queue of each entry gate, indexed by gate number
+     */
+    public int[] getEntryQueueDepths() {
+        return getQueueDepths(entryExecutorMap, entryCount);
+    }
+
+    /**
+     * Returns the number of cars waiting in the queue of each exit gate, indexed by gate number
+     */
+    public int[] getExitQueueDepths() {
+        return getQueueDepths(exitExecutorMap, exitCount);
+    }
+
+    /**
+     * Returns up to count of the most recent seconds or minutes of occupancy and gate traffic, oldest first
+     */
+    public List<FlowSample> getFlowSamples(FlowStatistics.Resolution resolution, int count) {
+        return flowStatistics.getSamples(resolution, count);
+    }
+
+    /**
+     * Returns the running totals of the cars that entered / exited through each gate
+     */
+    public FlowStatistics getFlowStatistics() {
+        return flowStatistics;
+    }
+
+    /**
+     * Returns the latency histograms of the phases of each gate
+     */
+    public GateLatencies getGateLatencies() {
+        return gateLatencies;
     }
 
     public int getEntryCount() {
@@ -232,12 +690,238 @@ public class ParkingManager {
         return exitCount;
     }
 
+    private static int[] getQueueDepths(Map<Integer, SerialExecutor> executorMap, int gateCount) {
+        int[] queueDepths = new int[gateCount];
+        for (int x = 0; x < gateCount; ++x) {
+            SerialExecutor executor = executorMap.get(x);
+            queueDepths[x] = executor == null ? 0 : executor.getQueueDepth();
+        }
+
+        return queueDepths;
+    }
+
+    /**
+     * Publishes the info of the parking lot as it is after the latest change. Publishers racing each other never
+     * replace an info with one of a lower version, and the last one to run always reads the latest counts, so the
+     * published info catches up with every change.
+     */
+    private void publishInfo() {
+        long version = stateVersion.incrementAndGet();
+        ParkingManagerInfo latest = readInfo(version);
+        while (true) {
+            ParkingManagerInfo published = info.get();
+            if (published != null && published.getVersion() >= version) {
+                return;
+            }
+
+            if (info.compareAndSet(published, latest)) {
+                return;
+            }
+        }
+    }
+
     /**
-     * Shuts down the executor services associated with the entry and exit gates and cleans them.
+     * When the lot is split in zones, the counts are the sums of the zones, so that they agree with them
+     */
+    private ParkingManagerInfo readInfo(long version) {
+        List<ZoneInfo> zones = admissionEngine.getZones();
+        int maxCapacity = admissionEngine.getCapacity();
+        int currentCapacity = zones.isEmpty()
+                ? admissionEngine.getParkedCount()
+                : zones.stream().mapToInt(ZoneInfo::getCurrentCapacity).sum();
+
+        return ParkingManagerInfo.builder()
+                .version(version)
+                .maxCapacity(maxCapacity)
+                .currentCapacity(currentCapacity)
+                .capacityLeft(maxCapacity - currentCapacity)
+                .entryCount(entryCount)
+                .exitCount(exitCount)
+                .zones(zones)
+                .build();
+    }
+
+    private static boolean isSameStay(VehicleRecord parked, VehicleRecord other) {
+        return parked.getEntryGate() == other.getEntryGate()
+                && Objects.equals(parked.getTicketId(), other.getTicketId())
+                && Objects.equals(parked.getDateEntered(), other.getDateEntered());
+    }
+
+    private void restore(VehicleRecord vehicleRecord) {
+        try {
+            admissionEngine.admit(vehicleRecord.getEntryGate(), vehicleRecord);
+            if (vehicleRecord.getTicketId() != null) {
+                ticketIndex.put(vehicleRecord.getTicketId(), vehicleRecord);
+            }
+        } catch (RuntimeException e) {
+            //The lot may have been made smaller since the vehicle entered
+            log.warn("Unable to restore the parked vehicle {}: {}", vehicleRecord, e.getMessage());
+        }
+    }
+
+    private void replay(JournalEntry entry) {
+        if (entry.getType() == JournalEntry.Type.ENTERED) {
+            restore(VehicleRecord.builder()
+                    .vehicleId(entry.getVehicleId())
+                    .entryGate(entry.getGate())
+                    .ticketId(entry.getTicketId())
+                    .dateEntered(entry.getDate())
+                    .build());
+            return;
+        }
+
+        try {
+            unindexTicket(admissionEngine.release(VehicleRecord.builder().vehicleId(entry.getVehicleId()).build()));
+        } catch (RuntimeException e) {
+            log.warn("Unable to replay the journal entry {}: {}", entry, e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the car. If ticketId is set, the car must hold that ticket: a car that is parked again with another
+     * ticket is left in its slot and a StaleTicketException is thrown. Must be called from an exit gate.
+     */
+    private CompletableFuture<VehicleRecord> release(
+            int exitGateNumber, VehicleRecord vehicleRecord, UUID ticketId, long requested) {
+        long started = recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.QUEUE, exitGateNumber, requested);
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        VehicleRecord[] parkedRecord = new VehicleRecord[1];
+        CompletableFuture<Void> committed;
+        try {
+            committed = parkingJournal.commit(entries -> {
+                if (ticketId == null) {
+                    parkedRecord[0] = admissionEngine.release(vehicleRecord);
+                } else {
+                    try {
+                        //Checked in the same step as the release, so that a ticket from an earlier stay of the car
+                        //never frees its slot
+                        parkedRecord[0] = admissionEngine.release(vehicleRecord, ticketId);
+                    } catch (IllegalArgumentException e) {
+                        throw new StaleTicketException();
+                    }
+                }
+
+                parkedRecord[0].setDateExited(now);
+                parkedRecord[0].setExitGate(exitGateNumber);
+                entries.add(JournalEntry.exited(exitGateNumber, parkedRecord[0]));
+            });
+        } finally {
+            recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.ADMISSION, exitGateNumber, started);
+        }
+
+        publishInfo();
+        charge(parkedRecord[0]);
+
+        return committed.handle((v, e) -> {
+            if (e != null) {
+                undoExit(parkedRecord[0]);
+                throw new CompletionException(e);
+            }
+
+            long logging = System.nanoTime();
+            unindexTicket(parkedRecord[0]);
+            flowStatistics.exited(exitGateNumber);
+            parkingLogger.log(parkedRecord[0], ParkingLogger.State.EXITED_PARKING);
+            recordPhase(GateLatencies.Direction.EXIT, GateLatencies.Phase.LOGGING, exitGateNumber, logging);
+            return parkedRecord[0];
+        });
+    }
+
+    /**
+     * Takes back the admission of a car whose entry could not be made durable, so that it can try again. Called when
+     * the journal failed, which then refuses every later change.
+     */
+    private void undoEntry(VehicleRecord vehicleRecord) {
+        try {
+            admissionEngine.release(vehicleRecord);
+        } catch (RuntimeException e) {
+            log.warn("Unable to undo the entry of {}: {}", vehicleRecord, e.getMessage());
+        }
+
+        unindexTicket(vehicleRecord);
+        publishInfo();
+    }
+
+    /**
+     * Parks again a car whose exit could not be made durable, with its ticket
+     */
+    private void undoExit(VehicleRecord parkedRecord) {
+        try {
+            admissionEngine.admit(parkedRecord.getEntryGate(), parkedRecord);
+            if (parkedRecord.getTicketId() != null) {
+                ticketIndex.putIfAbsent(parkedRecord.getTicketId(), parkedRecord);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to undo the exit of {}: {}", parkedRecord, e.getMessage());
+        }
+
+        parkedRecord.setDateExited(null);
+        parkedRecord.setFee(0);
+        publishInfo();
+    }
+
+    /**
+     * Records the time since startedNanos as the given phase of the gate and returns the current nanoTime, which is
+     * where the next phase starts
+     */
+    private long recordPhase(GateLatencies.Direction direction, GateLatencies.Phase phase, int gate, long startedNanos) {
+        long now = System.nanoTime();
+        gateLatencies.record(direction, phase, gate, now - startedNanos);
+        return now;
+    }
+
+    /**
+     * Sets the fee of a car that was released. Cars restored without a date entered are not charged.
+     */
+    private void charge(VehicleRecord parkedRecord) {
+        if (parkedRecord.getDateEntered() != null) {
+            parkedRecord.setFee(tariff.fee(parkedRecord.getDateEntered(), parkedRecord.getDateExited()));
+        }
+    }
+
+    private void unindexTicket(VehicleRecord parkedRecord) {
+        UUID ticketId = parkedRecord.getTicketId();
+        if (ticketId != null) {
+            ticketIndex.remove(ticketId);
+        }
+    }
+
+    /**
+     * The vehicle, as it tried to enter through the gate. The record itself is put back the way it was when the
+     * vehicle is turned away, and may belong to a vehicle that is already parked.
+     */
+    private static VehicleRecord turnedAway(int entryGateNumber, VehicleRecord vehicleRecord) {
+        return VehicleRecord.builder()
+                .vehicleId(vehicleRecord.getVehicleId())
+                .entryGate(entryGateNumber)
+                .build();
+    }
+
+    private SerialExecutor getEntryExecutor(int entryGateNumber) {
+        SerialExecutor entryExecutor = entryExecutorMap.get(entryGateNumber);
+        if (entryExecutor == null) {
+            throw new IllegalArgumentException("The provided entry gate number does not exist.");
+        }
+
+        return entryExecutor;
+    }
+
+    private SerialExecutor getExitExecutor(int exitGateNumber) {
+        SerialExecutor exitExecutor = exitExecutorMap.get(exitGateNumber);
+        if (exitExecutor == null) {
+            throw new IllegalArgumentException("The provided exit gate number does not exist.");
+        }
+
+        return exitExecutor;
+    }
+
+    /**
+     * Shuts down the executors associated with the entry and exit gates and cleans them. The gate pool is only shut
+     * down if it was created by this object.
      * Once close is called, this object cannot be used anymore to manage vehicles entering / exiting
      */
     public void close() {
-        Consumer<ExecutorService> executorServiceKiller = p -> {
+        Consumer<SerialExecutor> executorKiller = p -> {
             p.shutdown();
             try {
                 p.awaitTermination(1, TimeUnit.MINUTES);
@@ -247,10 +931,23 @@ public class ParkingManager {
             }
         };
 
-        entryExecutorMap.values().stream().forEach(executorServiceKiller);
-        exitExecutorMap.values().stream().forEach(executorServiceKiller);
+        entryExecutorMap.values().stream().forEach(executorKiller);
+        exitExecutorMap.values().stream().forEach(executorKiller);
         entryExecutorMap.clear();
         exitExecutorMap.clear();
+        flowStatistics.close();
+
+        if (ownedGatePool != null) {
+            ownedGatePool.shutdown();
+        }
     }
 
+    /**
+     * Thrown when a ticket does not belong to the car that is parked with its vehicle id
+     */
+    private static final class StaleTicketException extends IllegalArgumentException {
+        private StaleTicketException() {
+            super("The provided ticket is not found.");
+        }
+    }
 }
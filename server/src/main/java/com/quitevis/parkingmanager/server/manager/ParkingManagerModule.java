@@ -1,22 +1,53 @@
 package com.quitevis.parkingmanager.server.manager;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import com.quitevis.parkingmanager.server.journal.FileParkingJournal;
+import com.quitevis.parkingmanager.server.journal.JournalTailer;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ReplicaJournal;
+import com.quitevis.parkingmanager.server.logger.AsyncParkingLogger;
+import com.quitevis.parkingmanager.server.logger.BinaryParkingLogger;
 import com.quitevis.parkingmanager.server.logger.ParkingLogger;
 import com.quitevis.parkingmanager.server.logger.Slf4jParkingLogger;
+import com.quitevis.parkingmanager.server.tariff.BandedTariff;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Sets up the dependency injection tree
  */
 public class ParkingManagerModule extends AbstractModule {
+    public static final String ADMISSION_ENGINE_LOCKING = "locking";
+    public static final String ADMISSION_ENGINE_LOCK_FREE = "lockfree";
+    public static final String REGISTRY_CONCURRENT = "concurrent";
+    public static final String REGISTRY_COMPACT = "compact";
+    public static final String LOGGER_SLF4J = "slf4j";
+    public static final String LOGGER_ASYNC = "async";
+    public static final String LOGGER_BINARY = "binary";
+    public static final String TARIFF_NONE = "none";
+    public static final String TARIFF_BANDED = "banded";
+
     private final Path serverConfig;
+
     public ParkingManagerModule(Path serverConfig) {
         this.serverConfig = serverConfig;
     }
@@ -25,25 +56,244 @@ public class ParkingManagerModule extends AbstractModule {
     protected void configure() {
         try {
             Properties properties = loadServerConfig(serverConfig);
-            bindConstant().annotatedWith(Names.named("parking.max.slot"))
-                    .to(properties.getProperty("parking.max.slot"));
-            bindConstant().annotatedWith(Names.named("parking.entry.count"))
-                    .to(properties.getProperty("parking.entry.count"));
-            bindConstant().annotatedWith(Names.named("parking.exit.count"))
-                    .to(properties.getProperty("parking.exit.count"));
+            String lotsDirectory = properties.getProperty("parking.lots.dir", "").trim();
+            bindConstant().annotatedWith(Names.named("parking.lots.dir")).to(lotsDirectory);
             bindConstant().annotatedWith(Names.named("server.port"))
                     .to(properties.getProperty("server.port"));
+            bindConstant().annotatedWith(Names.named("server.events.period.millis"))
+                    .to(properties.getProperty("server.events.period.millis", "250").trim());
+            bindConstant().annotatedWith(Names.named("gate.server.port"))
+                    .to(properties.getProperty("gate.server.port", "0").trim());
+            bindConstant().annotatedWith(Names.named("parking.gate.threads"))
+                    .to(properties.getProperty("parking.gate.threads",
+                            String.valueOf(Runtime.getRuntime().availableProcessors())));
+            bindConstant().annotatedWith(Names.named("parking.gate.queue.max"))
+                    .to(properties.getProperty("parking.gate.queue.max", String.valueOf(Integer.MAX_VALUE)));
+            bindConstant().annotatedWith(Names.named("parking.replica.poll.millis"))
+                    .to(properties.getProperty("parking.replica.poll.millis", "50").trim());
+            bindConstant().annotatedWith(Names.named("parking.snapshot.interval.seconds"))
+                    .to(properties.getProperty("parking.snapshot.interval.seconds", "300"));
+            bindConstant().annotatedWith(Names.named("parking.logger"))
+                    .to(properties.getProperty("parking.logger", LOGGER_SLF4J).trim());
+            bindConstant().annotatedWith(Names.named("parking.logger.queue.size"))
+                    .to(properties.getProperty("parking.logger.queue.size", "8192"));
+            bindConstant().annotatedWith(Names.named("parking.logger.overflow"))
+                    .to(properties.getProperty("parking.logger.overflow", "drop").trim());
+            bindConstant().annotatedWith(Names.named("parking.logger.batch.size"))
+                    .to(properties.getProperty("parking.logger.batch.size", "256"));
+            bindConstant().annotatedWith(Names.named("parking.logger.dir"))
+                    .to(properties.getProperty("parking.logger.dir", "events").trim());
+            bindConstant().annotatedWith(Names.named("parking.logger.file.bytes"))
+                    .to(properties.getProperty("parking.logger.file.bytes", String.valueOf(64L * 1024 * 1024)).trim());
+            //When hosting many lots, each lot is set up from its own config (see ParkingLots)
+            if (lotsDirectory.isEmpty()) {
+                bindConstant().annotatedWith(Names.named("parking.entry.count"))
+                        .to(properties.getProperty("parking.entry.count"));
+                bindConstant().annotatedWith(Names.named("parking.exit.count"))
+                        .to(properties.getProperty("parking.exit.count"));
+                bind(AdmissionEngine.class).toInstance(createAdmissionEngine(properties));
+                bind(ParkingJournal.class).toInstance(createParkingJournal(properties));
+                bind(Tariff.class).toInstance(createTariff(properties));
+            }
         } catch (IOException e) {
             throw new RuntimeException("Unable to load the manager properties", e);
         }
     }
 
+    /**
+     * parking.logger is either "slf4j" (default), which logs in the gate, or "async", which hands the events to a
+     * queue of parking.logger.queue.size events written by a background thread in batches of up to
+     * parking.logger.batch.size. When the queue is full, parking.logger.overflow decides whether the events are
+     * dropped ("drop", default) or the gates wait ("block").
+     * <p>
+     * "binary" works like "async" but writes compact binary records to files in parking.logger.dir (default "events"),
+     * starting a new file every parking.logger.file.bytes (default 64MB). See EventLogCsv to read them.
+     */
+    @Provides
+    @Singleton
+    public ParkingLogger getDefaultLogger(
+            @Named("parking.logger") String logger,
+            @Named("parking.logger.queue.size") int queueSize,
+            @Named("parking.logger.overflow") String overflow,
+            @Named("parking.logger.batch.size") int batchSize,
+            @Named("parking.logger.dir") String directory,
+            @Named("parking.logger.file.bytes") long maxFileBytes) {
+        AsyncParkingLogger.OverflowPolicy overflowPolicy =
+                AsyncParkingLogger.OverflowPolicy.valueOf(overflow.toUpperCase());
+        switch (logger) {
+            case LOGGER_SLF4J:
+                return new Slf4jParkingLogger();
+            case LOGGER_ASYNC:
+                return new AsyncParkingLogger(new Slf4jParkingLogger(), queueSize, overflowPolicy, batchSize);
+            case LOGGER_BINARY:
+                try {
+                    return new AsyncParkingLogger(new BinaryParkingLogger(Paths.get(directory), maxFileBytes),
+                            queueSize, overflowPolicy, batchSize);
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to open the parking event log in " + directory, e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown parking logger: " + logger);
+        }
+    }
+
+    /**
+     * The pool of threads shared by every entry and exit gate. Its size is set with parking.gate.threads and
+     * defaults to the number of processors.
+     */
+    @Provides
+    @Singleton
+    @Named("parking.gate.pool")
+    public ExecutorService getGatePool(@Named("parking.gate.threads") int gateThreads) {
+        return ParkingManager.createGatePool(gateThreads);
+    }
+
+    /**
+     * The lots hosted by the server when parking.lots.dir is set, one per config file in that directory. They share
+     * the gate pool and the logger.
+     */
     @Provides
-    public ParkingLogger getDefaultLogger() {
-        return new Slf4jParkingLogger();
+    @Singleton
+    public ParkingLots getParkingLots(
+            @Named("parking.lots.dir") String lotsDirectory,
+            @Named("parking.gate.pool") ExecutorService gatePool,
+            ParkingLogger parkingLogger) {
+        try {
+            return ParkingLots.load(Paths.get(lotsDirectory), gatePool, parkingLogger);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load the lots in " + lotsDirectory, e);
+        }
+    }
+
+    /**
+     * Picks the admission engine. If parking.zones is set, the lot is split in zones and parking.max.slot is ignored.
+     * Otherwise parking.admission.engine decides: "locking" (default) or "lockfree", and parking.registry decides
+     * how the parked vehicles are stored (see createVehicleRegistry).
+     * <p>
+     * Zones are configured as:
+     * parking.zones = L1,L2
+     * parking.zone.L1.capacity = 20
+     * parking.zone.L1.gates = 0,1 (optional, the entry gates that lead to this zone)
+     * parking.zone.spillover = next (default) or none
+     */
+    static AdmissionEngine createAdmissionEngine(Properties properties) {
+        String zoneNames = properties.getProperty("parking.zones", "").trim();
+        if (!zoneNames.isEmpty()) {
+            List<ParkingZone> zones = Lists.newArrayList();
+            Map<Integer, Integer> preferredZoneByGate = Maps.newHashMap();
+
+            for (String zoneName : Splitter.on(',').trimResults().omitEmptyStrings().split(zoneNames)) {
+                int zoneCapacity = Integer.parseInt(properties.getProperty("parking.zone." + zoneName + ".capacity"));
+                String gates = properties.getProperty("parking.zone." + zoneName + ".gates", "");
+                for (String gate : Splitter.on(',').trimResults().omitEmptyStrings().split(gates)) {
+                    preferredZoneByGate.put(Integer.parseInt(gate), zones.size());
+                }
+
+                zones.add(new ParkingZone(zoneName, zoneCapacity));
+            }
+
+            ZonedAdmissionEngine.SpilloverPolicy spilloverPolicy = ZonedAdmissionEngine.SpilloverPolicy.valueOf(
+                    properties.getProperty("parking.zone.spillover", "next").trim().toUpperCase());
+            return new ZonedAdmissionEngine(zones, preferredZoneByGate, spilloverPolicy);
+        }
+
+        int capacity = Integer.parseInt(properties.getProperty("parking.max.slot").trim());
+        String admissionEngine = properties.getProperty("parking.admission.engine", ADMISSION_ENGINE_LOCKING).trim();
+        VehicleRegistry vehicleRegistry = createVehicleRegistry(properties, capacity);
+        switch (admissionEngine) {
+            case ADMISSION_ENGINE_LOCKING:
+                return new LockingAdmissionEngine(capacity, vehicleRegistry);
+            case ADMISSION_ENGINE_LOCK_FREE:
+                return new LockFreeAdmissionEngine(capacity, vehicleRegistry);
+            default:
+                throw new IllegalArgumentException("Unknown admission engine: " + admissionEngine);
+        }
+    }
+
+    /**
+     * parking.registry is either "concurrent" (default), which keeps the VehicleRecord objects in a concurrent map,
+     * or "compact", which keeps them in primitive arrays (see CompactVehicleRegistry). The compact registry only
+     * accepts ASCII vehicle ids up to parking.registry.plate.length (default 16) characters.
+     */
+    static VehicleRegistry createVehicleRegistry(Properties properties, int capacity) {
+        String registry = properties.getProperty("parking.registry", REGISTRY_CONCURRENT).trim();
+        switch (registry) {
+            case REGISTRY_CONCURRENT:
+                return new ConcurrentVehicleRegistry();
+            case REGISTRY_COMPACT:
+                int plateLength = Integer.parseInt(properties.getProperty("parking.registry.plate.length", "16").trim());
+                return new CompactVehicleRegistry(capacity, plateLength);
+            default:
+                throw new IllegalArgumentException("Unknown vehicle registry: " + registry);
+        }
+    }
+
+    /**
+     * The journal is only kept if parking.journal.dir is set. parking.journal.sync is "sync", "group" (default) or
+     * "async" (see FileParkingJournal), parking.journal.group.window.micros (default 0) is how long the flusher waits
+     * for more commits before forcing, and parking.journal.segment.bytes (default 64MB) is the size at which a new
+     * segment file is started.
+     * <p>
+     * If parking.replica.of is set to the journal directory of a leader, the server is a read-only replica of that
+     * leader (see ReplicaJournal) and parking.journal.dir is ignored. The journal settings apply once it is promoted.
+     */
+    static ParkingJournal createParkingJournal(Properties properties) throws IOException {
+        String leaderDirectory = properties.getProperty("parking.replica.of", "").trim();
+        if (!leaderDirectory.isEmpty()) {
+            return new ReplicaJournal(new JournalTailer(Paths.get(leaderDirectory)),
+                    () -> createFileParkingJournal(leaderDirectory, properties));
+        }
+
+        String directory = properties.getProperty("parking.journal.dir", "").trim();
+        if (directory.isEmpty()) {
+            return new NoOpParkingJournal();
+        }
+
+        return createFileParkingJournal(directory, properties);
+    }
+
+    private static ParkingJournal createFileParkingJournal(String directory, Properties properties)
+            throws IOException {
+        FileParkingJournal.SyncMode syncMode = FileParkingJournal.SyncMode.valueOf(
+                properties.getProperty("parking.journal.sync", "group").trim().toUpperCase());
+        long groupCommitWindowMicros = Long.parseLong(
+                properties.getProperty("parking.journal.group.window.micros", "0").trim());
+        long maxSegmentBytes = Long.parseLong(
+                properties.getProperty("parking.journal.segment.bytes", String.valueOf(64L * 1024 * 1024)).trim());
+        return new FileParkingJournal(Paths.get(directory), syncMode, groupCommitWindowMicros, maxSegmentBytes);
+    }
+
+    /**
+     * parking.tariff is either "none" (default), parking is free, or "banded" (see BandedTariff), which is configured
+     * as:
+     * parking.tariff.bands = 00:00=100,07:00=300,19:00=150 (the hourly rate in cents from each time of day)
+     * parking.tariff.daily.cap = 2000 (optional, in cents, the most a 24 hour period costs)
+     * parking.tariff.grace.minutes = 15 (optional, stays up to that long are free)
+     * parking.tariff.zone = Europe/Paris (optional, the time zone the bands are read in, UTC by default)
+     */
+    public static Tariff createTariff(Properties properties) {
+        String tariff = properties.getProperty("parking.tariff", TARIFF_NONE).trim();
+        switch (tariff) {
+            case TARIFF_NONE:
+                return Tariff.FREE;
+            case TARIFF_BANDED:
+                List<BandedTariff.Band> bands = Lists.newArrayList();
+                Map<String, String> rates = Splitter.on(',').trimResults().omitEmptyStrings()
+                        .withKeyValueSeparator(Splitter.on('=').trimResults())
+                        .split(properties.getProperty("parking.tariff.bands", ""));
+                rates.forEach((start, centsPerHour) ->
+                        bands.add(new BandedTariff.Band(LocalTime.parse(start), Long.parseLong(centsPerHour))));
+
+                return new BandedTariff(bands,
+                        Long.parseLong(properties.getProperty("parking.tariff.daily.cap", "0").trim()),
+                        Integer.parseInt(properties.getProperty("parking.tariff.grace.minutes", "0").trim()),
+                        ZoneId.of(properties.getProperty("parking.tariff.zone", "UTC").trim()));
+            default:
+                throw new IllegalArgumentException("Unknown tariff: " + tariff);
+        }
     }
 
-    private Properties loadServerConfig(Path serverConfig) throws IOException {
+    public static Properties loadServerConfig(Path serverConfig) throws IOException {
         Properties properties = new Properties();
 
         try (InputStream is = new FileInputStream(serverConfig.toFile())) {
@@ -0,0 +1,68 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.quitevis.parkingmanager.model.ZoneInfo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A zone (or level) of the parking lot with its own capacity counter.
+ * Slots are reserved and given back with compare-and-set, so zones never contend with each other.
+ */
+public class ParkingZone {
+    private final String name;
+    private final int capacity;
+    private final AtomicInteger parkedCarCounter;
+
+    public ParkingZone(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.parkedCarCounter = new AtomicInteger();
+    }
+
+    /**
+     * Reserves a slot in this zone. Returns false if the zone is full.
+     */
+    boolean tryReserveSlot() {
+        while (true) {
+            int parked = parkedCarCounter.get();
+            if (parked >= capacity) {
+                return false;
+            }
+
+            if (parkedCarCounter.compareAndSet(parked, parked + 1)) {
+                //Throw assertion error if invariant is violated
+                assert (parked + 1 <= capacity);
+                return true;
+            }
+        }
+    }
+
+    void releaseSlot() {
+        int parked = parkedCarCounter.decrementAndGet();
+
+        //Throw assertion error if invariant is violated
+        assert (parked >= 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getParkedCount() {
+        return parkedCarCounter.get();
+    }
+
+    public ZoneInfo toZoneInfo() {
+        int parked = parkedCarCounter.get();
+        return ZoneInfo.builder()
+                .name(name)
+                .maxCapacity(capacity)
+                .currentCapacity(parked)
+                .capacityLeft(capacity - parked)
+                .build();
+    }
+}
@@ -0,0 +1,198 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the submitted tasks one at a time, in submission order, on a shared pool.
+ * <p>
+ * It does not own a thread: when a task is submitted to an idle SerialExecutor, a drain task is handed to the pool,
+ * which runs the queued tasks one after the other. After MAX_TASKS_PER_DRAIN tasks the drain task is handed back to
+ * the pool, so that a busy gate cannot keep a pool thread away from the other gates forever.
+ * <p>
+ * This allows thousands of gates to be served by a fixed number of threads while keeping the guarantee that only one
+ * car at a time can go through a given gate.
+ * <p>
+ * If the pool refuses a drain task, because it was shut down, the queued tasks can no longer run. Those given to submit
+ * fail their future with the RejectedExecutionException, so that no gate caller is left waiting. Those given to
+ * execute are dropped.
+ */
+@Slf4j
+public class SerialExecutor implements Executor {
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
+    private final Executor pool;
+    private final Queue<Runnable> tasks;
+    private final int maxQueueDepth;
+    private boolean running;
+    private boolean shutdown;
+
+    public SerialExecutor(Executor pool) {
+        this(pool, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tasks submitted while maxQueueDepth tasks are already waiting are rejected with a GateOverloadedException
+     */
+    public SerialExecutor(Executor pool, int maxQueueDepth) {
+        this.pool = pool;
+        this.tasks = Queues.newArrayDeque();
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down.");
+            }
+
+            if (tasks.size() >= maxQueueDepth) {
+                throw new GateOverloadedException("The gate is overloaded, try again later.", tasks.size());
+            }
+
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+
+            running = true;
+        }
+
+        schedule();
+    }
+
+    /**
+     * Runs the supplier on this executor, like CompletableFuture.supplyAsync: the future completes with what it returns
+     * or fails with what it throws, and fails with a RejectedExecutionException if the pool refuses to run it.
+     * Throws right away, like execute, if the task cannot be queued.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+        SupplierTask<T> task = new SupplierTask<>(supplier);
+        execute(task);
+        return task.future;
+    }
+
+    /**
+     * Returns the number of tasks waiting to be run, not counting the one that is running
+     */
+    public synchronized int getQueueDepth() {
+        return tasks.size();
+    }
+
+    /**
+     * Rejects new tasks. Tasks that were already submitted still run.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Blocks until every submitted task has run or the timeout expires. Returns false if the timeout expired.
+     */
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (running) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+
+        return true;
+    }
+
+    private void schedule() {
+        try {
+            pool.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            List<Runnable> rejected;
+            synchronized (this) {
+                rejected = Lists.newArrayList(tasks);
+                tasks.clear();
+                running = false;
+                notifyAll();
+            }
+
+            //Outside the lock, failing a future runs its dependents
+            int dropped = 0;
+            for (Runnable task : rejected) {
+                if (task instanceof SupplierTask) {
+                    ((SupplierTask<?>) task).future.completeExceptionally(e);
+                } else {
+                    dropped++;
+                }
+            }
+
+            if (dropped > 0) {
+                log.warn("The pool refused to run the gate, {} queued tasks were dropped", dropped);
+            }
+
+            throw e;
+        }
+    }
+
+    private void drain() {
+        for (int x = 0; x < MAX_TASKS_PER_DRAIN; ++x) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    notifyAll();
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Gate task failed", e);
+            } catch (Throwable t) {
+                //An error ends this drain on the way up the pool thread, so the rest of the queue is handed to another
+                //drain, or the gate would stay running with nobody draining it
+                log.error("Gate task failed", t);
+                try {
+                    schedule();
+                } catch (RejectedExecutionException e) {
+                    t.addSuppressed(e);
+                }
+
+                throw t;
+            }
+        }
+
+        //Give the other gates a chance to run before draining the rest of the queue
+        schedule();
+    }
+
+    private static final class SupplierTask<T> implements Runnable {
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> future;
+
+        private SupplierTask(Supplier<T> supplier) {
+            this.supplier = supplier;
+            this.future = new CompletableFuture<>();
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
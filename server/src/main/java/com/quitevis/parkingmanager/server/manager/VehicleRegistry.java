@@ -0,0 +1,45 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps track of the vehicles that are parked. Vehicles are identified by their vehicle id.
+ * Implementations must be thread-safe and putIfAbsent / remove must be atomic.
+ */
+public interface VehicleRegistry {
+    /**
+     * Registers the vehicle. Returns false, without changing anything, if a vehicle with the same id is registered.
+     */
+    boolean putIfAbsent(VehicleRecord vehicleRecord);
+
+    /**
+     * Unregisters the vehicle. Returns the registered record, or null if no vehicle with the same id is registered.
+     */
+    VehicleRecord remove(VehicleRecord vehicleRecord);
+
+    /**
+     * Unregisters the vehicle only if it holds the ticket. Returns the registered record, or null, without changing
+     * anything, if no vehicle with the same id is registered or if it holds another ticket.
+     */
+    VehicleRecord remove(VehicleRecord vehicleRecord, UUID ticketId);
+
+    boolean contains(VehicleRecord vehicleRecord);
+
+    int size();
+
+    /**
+     * Returns an immutable copy of the registered vehicles
+     */
+    Set<VehicleRecord> snapshot();
+
+    /**
+     * Returns a weakly-consistent iterator over the registered vehicles, without copying them. It does not block
+     * the writers for the whole walk and returns every vehicle that stays registered during the walk exactly once.
+     * Vehicles registered or removed during the walk may or may not be returned.
+     */
+    Iterator<VehicleRecord> iterator();
+}
@@ -0,0 +1,162 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Admission engine for a parking lot that is split in zones (or levels), each with its own capacity.
+ * <p>
+ * Each entry gate leads to a preferred zone. If the preferred zone is full, the spillover policy decides whether the
+ * vehicle is sent to the next zone that has room (NEXT) or turned away (NONE).
+ * <p>
+ * Each zone owns its capacity counter, so gates leading to different zones never touch the same counter. The parked
+ * vehicles are registered in a single concurrent map, keyed by vehicle with its zone in the value, so that the same
+ * vehicle can never be parked in two zones at once. The map is lock-striped internally and does not serialize gates.
+ */
+public class ZonedAdmissionEngine implements AdmissionEngine {
+    public enum SpilloverPolicy {
+        NEXT,
+        NONE
+    }
+
+    private final List<ParkingZone> zones;
+    private final Map<Integer, Integer> preferredZoneByGate;
+    private final SpilloverPolicy spilloverPolicy;
+    private final ConcurrentMap<VehicleRecord, ParkedVehicle> vehiclesParked;
+    private final int capacity;
+
+    /**
+     * preferredZoneByGate maps an entry gate to the index of its preferred zone. Gates that are not in the map prefer
+     * zone (entryGateNumber % number of zones).
+     */
+    public ZonedAdmissionEngine(List<ParkingZone> zones,
+                                Map<Integer, Integer> preferredZoneByGate,
+                                SpilloverPolicy spilloverPolicy) {
+        if (zones.isEmpty()) {
+            throw new IllegalArgumentException("At least one zone is needed.");
+        }
+
+        this.zones = ImmutableList.copyOf(zones);
+        this.preferredZoneByGate = Maps.newHashMap(preferredZoneByGate);
+        this.spilloverPolicy = spilloverPolicy;
+        this.vehiclesParked = Maps.newConcurrentMap();
+        this.capacity = zones.stream().mapToInt(ParkingZone::getCapacity).sum();
+    }
+
+    @Override
+    public void admit(int entryGateNumber, VehicleRecord vehicleRecord) {
+        //Cheap pre-check so that a duplicate is reported as such even if the lot is full. The putIfAbsent below is
+        //the one that really decides.
+        if (vehiclesParked.containsKey(vehicleRecord)) {
+            throw new IllegalArgumentException("This vehicleRecord is already parked.");
+        }
+
+        ParkingZone zone = reserveSlot(entryGateNumber);
+
+        if (vehiclesParked.putIfAbsent(vehicleRecord, new ParkedVehicle(vehicleRecord, zone)) != null) {
+            zone.releaseSlot();
+            throw new IllegalArgumentException("This vehicleRecord is already parked.");
+        }
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord) {
+        ParkedVehicle parkedVehicle = vehiclesParked.remove(vehicleRecord);
+        if (parkedVehicle == null) {
+            throw new IllegalArgumentException("The provided vehicleRecord is not found.");
+        }
+
+        parkedVehicle.zone.releaseSlot();
+        return parkedVehicle.vehicleRecord;
+    }
+
+    @Override
+    public VehicleRecord release(VehicleRecord vehicleRecord, UUID ticketId) {
+        ParkedVehicle[] released = new ParkedVehicle[1];
+        vehiclesParked.computeIfPresent(vehicleRecord, (key, parkedVehicle) -> {
+            if (!ticketId.equals(parkedVehicle.vehicleRecord.getTicketId())) {
+                return parkedVehicle;
+            }
+
+            released[0] = parkedVehicle;
+            return null;
+        });
+
+        if (released[0] == null) {
+            throw new IllegalArgumentException("The provided vehicleRecord is not parked with this ticket.");
+        }
+
+        released[0].zone.releaseSlot();
+        return released[0].vehicleRecord;
+    }
+
+    @Override
+    public int getParkedCount() {
+        return zones.stream().mapToInt(ParkingZone::getParkedCount).sum();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getCapacityLeft() {
+        return capacity - getParkedCount();
+    }
+
+    @Override
+    public Set<VehicleRecord> getParkedVehicles() {
+        return ImmutableSet.copyOf(vehiclesParked.keySet());
+    }
+
+    @Override
+    public Iterator<VehicleRecord> iterateParkedVehicles() {
+        return Iterators.unmodifiableIterator(vehiclesParked.keySet().iterator());
+    }
+
+    @Override
+    public List<ZoneInfo> getZones() {
+        return zones.stream().map(ParkingZone::toZoneInfo).collect(Collectors.toList());
+    }
+
+    private ParkingZone reserveSlot(int entryGateNumber) {
+        int preferred = preferredZoneByGate.getOrDefault(entryGateNumber, entryGateNumber % zones.size());
+        int attempts = spilloverPolicy == SpilloverPolicy.NEXT ? zones.size() : 1;
+
+        for (int x = 0; x < attempts; ++x) {
+            ParkingZone zone = zones.get((preferred + x) % zones.size());
+            if (zone.tryReserveSlot()) {
+                return zone;
+            }
+        }
+
+        if (spilloverPolicy == SpilloverPolicy.NONE) {
+            throw new IllegalStateException("The parking zone " + zones.get(preferred).getName() + " is already full.");
+        }
+
+        throw new IllegalStateException("The parking lot is already full.");
+    }
+
+    private static final class ParkedVehicle {
+        private final VehicleRecord vehicleRecord;
+        private final ParkingZone zone;
+
+        private ParkedVehicle(VehicleRecord vehicleRecord, ParkingZone zone) {
+            this.vehicleRecord = vehicleRecord;
+            this.zone = zone;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import com.google.common.collect.Lists;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Charges by the minute, at an hourly rate that depends on the time of day (the bands), with a daily cap and a grace
+ * period.
+ * <p>
+ * A band starts at a time of day and runs until the next one starts; the last one runs past midnight until the first
+ * one. Stays up to graceMinutes are free, longer ones pay for every started minute. The stay is cut in 24 hour
+ * periods counted from the entry, and each period costs at most the daily cap.
+ * <p>
+ * The bands are compiled into the cumulated cost of each minute of the day, so a fee is two lookups and a few
+ * additions whatever the length of the stay and the number of bands. Amounts are kept in 1/60 of a cent, which makes
+ * the cost of a minute at an hourly rate in cents a whole number, and the fee is rounded up to the cent at the end.
+ * The time of day is read in the time zone of the lot.
+ */
+public class BandedTariff implements Tariff {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The hourly rate that applies from a time of day
+     */
+    public static final class Band {
+        private final LocalTime start;
+        private final long centsPerHour;
+
+        public Band(LocalTime start, long centsPerHour) {
+            if (centsPerHour < 0) {
+                throw new IllegalArgumentException("The rate of a band cannot be negative: " + centsPerHour);
+            }
+
+            this.start = start;
+            this.centsPerHour = centsPerHour;
+        }
+
+        public LocalTime getStart() {
+            return start;
+        }
+
+        public long getCentsPerHour() {
+            return centsPerHour;
+        }
+    }
+
+    //costBefore[m] is the cost of the minutes of the day before minute m, in 1/60 of a cent
+    private final long[] costBefore;
+    private final long periodCost;
+    private final int graceMinutes;
+    private final ZoneRules zoneRules;
+    private final long fixedOffsetMillis;
+
+    /**
+     * dailyCapCents is 0 if there is no cap
+     */
+    public BandedTariff(List<Band> bands, long dailyCapCents, int graceMinutes, ZoneId zone) {
+        if (bands.isEmpty()) {
+            throw new IllegalArgumentException("A banded tariff needs at least one band");
+        }
+
+        List<Band> sorted = Lists.newArrayList(bands);
+        sorted.sort(Comparator.comparing(Band::getStart));
+
+        this.costBefore = new long[MINUTES_PER_DAY + 1];
+        int next = 0;
+        Band current = sorted.get(sorted.size() - 1);
+        for (int minute = 0; minute < MINUTES_PER_DAY; ++minute) {
+            while (next < sorted.size() && sorted.get(next).getStart().toSecondOfDay() / 60 <= minute) {
+                current = sorted.get(next++);
+            }
+
+            costBefore[minute + 1] = costBefore[minute] + current.getCentsPerHour();
+        }
+
+        long dayCost = costBefore[MINUTES_PER_DAY];
+        this.periodCost = dailyCapCents > 0 ? Math.min(dayCost, dailyCapCents * 60) : dayCost;
+        this.graceMinutes = graceMinutes;
+        this.zoneRules = zone.getRules();
+        this.fixedOffsetMillis = zoneRules.isFixedOffset()
+                ? TimeUnit.SECONDS.toMillis(zoneRules.getOffset(Instant.EPOCH).getTotalSeconds())
+                : 0;
+    }
+
+    @Override
+    public long fee(long enteredEpochMillis, long exitedEpochMillis) {
+        long stayMillis = Math.max(0, exitedEpochMillis - enteredEpochMillis);
+        long minutes = (stayMillis + MILLIS_PER_MINUTE - 1) / MILLIS_PER_MINUTE;
+        if (minutes <= graceMinutes) {
+            return 0;
+        }
+
+        //Every 24 hour period covers each minute of the day once, so only the last, partial one depends on the time
+        long periods = minutes / MINUTES_PER_DAY;
+        int rest = (int) (minutes % MINUTES_PER_DAY);
+        int start = minuteOfDay(enteredEpochMillis);
+        long restCost = start + rest <= MINUTES_PER_DAY
+                ? costBefore[start + rest] - costBefore[start]
+                : costBefore[MINUTES_PER_DAY] - costBefore[start] + costBefore[start + rest - MINUTES_PER_DAY];
+
+        long cost = periods * periodCost + Math.min(restCost, periodCost);
+        return (cost + 59) / 60;
+    }
+
+    private int minuteOfDay(long epochMillis) {
+        long offsetMillis = zoneRules.isFixedOffset()
+                ? fixedOffsetMillis
+                : TimeUnit.SECONDS.toMillis(zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds());
+        return (int) Math.floorMod(Math.floorDiv(epochMillis + offsetMillis, MILLIS_PER_MINUTE), MINUTES_PER_DAY);
+    }
+}
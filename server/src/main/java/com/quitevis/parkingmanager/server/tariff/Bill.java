@@ -0,0 +1,19 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.UUID;
+
+/**
+ * What one stay was charged, as rebuilt from the event log by a BillingRun. The fee is in cents.
+ */
+@Data
+@Builder
+public class Bill {
+    private final UUID ticketId;
+    private final String vehicleId;
+    private final long enteredEpochMillis;
+    private final long exitedEpochMillis;
+    private final long fee;
+}
@@ -0,0 +1,20 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The bills of a day, sorted by exit time, and their total in cents. Exits that could not be billed, because the car
+ * had no ticket or its PARKED event is not in the files, are counted in unmatched.
+ */
+@Data
+@Builder
+public class BillingReport {
+    private final LocalDate date;
+    private final List<Bill> bills;
+    private final int unmatched;
+    private final long total;
+}
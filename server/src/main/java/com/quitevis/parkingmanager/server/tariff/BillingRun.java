@@ -0,0 +1,205 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.eventlog.EventLogReader;
+import com.quitevis.parkingmanager.eventlog.EventType;
+import com.quitevis.parkingmanager.server.manager.ParkingManagerModule;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Bills a day of a lot from its binary event logs (parking.logger = binary), the way the exit gates do: every car
+ * that exited during the day, in the time zone of the tariff, is charged for its stay since its PARKED event. The
+ * times of those events are the dates set by the gates, so the fees are the ones charged at the exits.
+ * <p>
+ * An exit that is missing from the logs is never billed, so the run refuses a server config that lets the logger drop
+ * events when its queue is full: the lot has to run with parking.logger.overflow = block to be billed this way.
+ * <p>
+ * It also refuses the config of a server of many lots (parking.lots.dir). Those lots share one logger and their
+ * records do not say which lot they come from, while each lot has its own tariff, so a run could not tell the exits of
+ * one lot from the others.
+ * <p>
+ * The files are scanned in parallel, twice: once for the exits of the day, then for the entries of those cars, which
+ * may be in the files of earlier days. The cars are matched by ticket, and only the exits of the day are kept in
+ * memory, so the run does not depend on the length of the history. The fees are then computed in parallel.
+ * <p>
+ * Usage: java -cp server.jar com.quitevis.parkingmanager.server.tariff.BillingRun
+ * &lt;server config&gt; &lt;yyyy-MM-dd&gt; &lt;event log file&gt;... &gt; bills.csv
+ */
+public class BillingRun {
+    public static final String HEADER = "ticketId,vehicleId,entered,exited,fee";
+
+    private final Tariff tariff;
+    private final ZoneId zone;
+
+    public BillingRun(Tariff tariff, ZoneId zone) {
+        this.tariff = tariff;
+        this.zone = zone;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: BillingRun <server config> <yyyy-MM-dd> <event log file>...");
+            System.exit(1);
+        }
+
+        Properties properties = ParkingManagerModule.loadServerConfig(Paths.get(args[0]));
+        try {
+            checkServerConfig(properties);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        BillingRun billingRun = new BillingRun(ParkingManagerModule.createTariff(properties),
+                ZoneId.of(properties.getProperty("parking.tariff.zone", "UTC").trim()));
+        List<Path> files = Lists.newArrayList();
+        for (int x = 2; x < args.length; ++x) {
+            files.add(Paths.get(args[x]));
+        }
+
+        BillingReport report = billingRun.bill(LocalDate.parse(args[1]), files);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Bill bill : report.getBills()) {
+            writer.write(bill.getTicketId() + "," + bill.getVehicleId() + ","
+                    + Instant.ofEpochMilli(bill.getEnteredEpochMillis()) + ","
+                    + Instant.ofEpochMilli(bill.getExitedEpochMillis()) + "," + bill.getFee() + "\n");
+        }
+
+        writer.flush();
+        System.err.println(report.getBills().size() + " bills, " + report.getUnmatched() + " unmatched exits, total "
+                + report.getTotal() + " cents");
+    }
+
+    /**
+     * Throws an IllegalArgumentException, saying why, if the event logs of the server cannot be billed from
+     */
+    static void checkServerConfig(Properties properties) {
+        if (!properties.getProperty("parking.lots.dir", "").trim().isEmpty()) {
+            throw new IllegalArgumentException("This server hosts many lots, whose events are logged together without "
+                    + "their lot id. The lots of such a server cannot be billed from the event logs.");
+        }
+
+        if (!"block".equalsIgnoreCase(properties.getProperty("parking.logger.overflow", "drop").trim())) {
+            throw new IllegalArgumentException("The logger of this lot drops events when its queue is full, so exits "
+                    + "may be missing from the event logs. Set parking.logger.overflow = block to bill from them.");
+        }
+    }
+
+    /**
+     * Bills the cars that exited on the given day. The files may be given in any order.
+     */
+    public BillingReport bill(LocalDate date, List<Path> files) throws IOException {
+        long dayStartMicros = date.atStartOfDay(zone).toInstant().toEpochMilli() * 1000L;
+        long dayEndMicros = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() * 1000L;
+
+        try {
+            //Pass 1, the exits of the day. A car without a ticket cannot be matched with its entry.
+            AtomicInteger ticketless = new AtomicInteger();
+            ConcurrentMap<UUID, Exit> exits = Maps.newConcurrentMap();
+            files.parallelStream().forEach(file -> scan(file, reader -> {
+                long epochMicros = reader.getEpochMicros();
+                if (reader.getType() != EventType.EXITED_PARKING
+                        || epochMicros < dayStartMicros || epochMicros >= dayEndMicros) {
+                    return;
+                }
+
+                UUID ticketId = reader.getTicketId();
+                if (ticketId == null) {
+                    ticketless.incrementAndGet();
+                    return;
+                }
+
+                exits.put(ticketId, new Exit(reader.getVehicleId(), epochMicros / 1000L));
+            }));
+
+            //Pass 2, the entries of the cars that exited
+            ConcurrentMap<UUID, Long> entries = Maps.newConcurrentMap();
+            files.parallelStream().forEach(file -> scan(file, reader -> {
+                if (reader.getType() != EventType.PARKED || reader.getEpochMicros() >= dayEndMicros) {
+                    return;
+                }
+
+                UUID ticketId = reader.getTicketId();
+                if (ticketId != null && exits.containsKey(ticketId)) {
+                    entries.put(ticketId, reader.getEpochMicros() / 1000L);
+                }
+            }));
+
+            //Pass 3, the fees
+            List<Bill> bills = exits.entrySet().parallelStream()
+                    .filter(exit -> entries.containsKey(exit.getKey()))
+                    .map(exit -> {
+                        long entered = entries.get(exit.getKey());
+                        long exited = exit.getValue().epochMillis;
+                        return Bill.builder()
+                                .ticketId(exit.getKey())
+                                .vehicleId(exit.getValue().vehicleId)
+                                .enteredEpochMillis(entered)
+                                .exitedEpochMillis(exited)
+                                .fee(tariff.fee(entered, exited))
+                                .build();
+                    })
+                    .sorted(Comparator.comparingLong(Bill::getExitedEpochMillis))
+                    .collect(Collectors.toList());
+
+            return BillingReport.builder()
+                    .date(date)
+                    .bills(bills)
+                    .unmatched(ticketless.get() + exits.size() - bills.size())
+                    .total(bills.stream().mapToLong(Bill::getFee).sum())
+                    .build();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hands every event of the file to the consumer, through the reader positioned on it
+     */
+    private static void scan(Path file, EventConsumer consumer) {
+        try (EventLogReader reader = new EventLogReader(file)) {
+            while (reader.next()) {
+                consumer.accept(reader);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventConsumer {
+        void accept(EventLogReader reader);
+    }
+
+    private static final class Exit {
+        private final String vehicleId;
+        private final long epochMillis;
+
+        private Exit(String vehicleId, long epochMillis) {
+            this.vehicleId = vehicleId;
+            this.epochMillis = epochMillis;
+        }
+    }
+}
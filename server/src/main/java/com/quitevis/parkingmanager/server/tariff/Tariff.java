@@ -0,0 +1,24 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Computes what the driver of a car owes for its stay, in cents. The exit gates call it for every car, so
+ * implementations must be thread-safe and cheap: no lock, no I/O.
+ */
+public interface Tariff {
+    /**
+     * Parking is free
+     */
+    Tariff FREE = (enteredEpochMillis, exitedEpochMillis) -> 0;
+
+    long fee(long enteredEpochMillis, long exitedEpochMillis);
+
+    /**
+     * Takes the dates as they are kept on the vehicle records, in UTC
+     */
+    default long fee(LocalDateTime entered, LocalDateTime exited) {
+        return fee(entered.toInstant(ZoneOffset.UTC).toEpochMilli(), exited.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+}
@@ -0,0 +1,64 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.common.base.Throwables;
+import com.google.gson.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Finishes a request once the gate is done with it, without holding a jetty thread while the car waits in the
+ * queue of the gate. The response is written on a jetty thread rather than on the thread of the gate, so a slow
+ * client never holds up the cars behind it.
+ */
+@Slf4j
+final class AsyncResponses {
+    private AsyncResponses() {
+    }
+
+    /**
+     * Puts the request in async mode and responds with the json of the result of the future, or with a 400
+     * (Bad Request) if the future failed
+     */
+    static <T> void respond(HttpServletRequest req, HttpServletResponse resp, String path,
+                            CompletableFuture<T> future, Function<T, String> toJson) {
+        AsyncContext context = req.startAsync();
+        //The gate always answers in the end, the connector idle timeout takes care of the clients that leave
+        context.setTimeout(0);
+
+        future.whenComplete((result, error) -> context.start(() -> {
+            try {
+                String responseBody;
+                if (error == null) {
+                    responseBody = toJson.apply(result);
+                    resp.setStatus(HttpServletResponse.SC_OK);
+                } else {
+                    log.error("Unable to fulfill the " + path + " request", error);
+                    responseBody = reject(resp, Throwables.getRootCause(error).getMessage()).toString();
+                }
+
+                resp.getWriter().println(responseBody);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unable to send the response of the {} request: {}", path, e.getMessage());
+            } finally {
+                context.complete();
+            }
+        }));
+    }
+
+    /**
+     * Sets up a 400 (Bad Request) response and returns its body
+     */
+    static JsonObject reject(HttpServletResponse resp, String message) {
+        JsonObject json = new JsonObject();
+        json.addProperty("errorCode", HttpServletResponse.SC_BAD_REQUEST);
+        json.addProperty("message", message);
+        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        return json;
+    }
+}
@@ -0,0 +1,29 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parses the body of the batch requests, which is a json array of vehicle ids
+ */
+final class BatchRequests {
+    private BatchRequests() {
+    }
+
+    static List<VehicleRecord> readVehicleRecords(HttpServletRequest req) throws IOException {
+        JsonArray vehicleIds = new JsonParser().parse(req.getReader()).getAsJsonArray();
+        List<VehicleRecord> vehicleRecords = Lists.newArrayListWithCapacity(vehicleIds.size());
+        for (JsonElement vehicleId : vehicleIds) {
+            vehicleRecords.add(VehicleRecord.builder().vehicleId(vehicleId.getAsString()).build());
+        }
+
+        return vehicleRecords;
+    }
+}
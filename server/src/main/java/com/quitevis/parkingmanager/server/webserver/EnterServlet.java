@@ -2,6 +2,7 @@ package com.quitevis.parkingmanager.server.webserver;
 
 import com.google.gson.JsonObject;
 import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.GateOverloadedException;
 import com.quitevis.parkingmanager.server.manager.ParkingManager;
 import lombok.extern.slf4j.Slf4j;
 
@@ -30,22 +31,26 @@ public class EnterServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         resp.setContentType("application/json;charset=utf-8");
-        JsonObject json = new JsonObject();
+        CompletableFuture<UUID> future;
 
         try {
             String vehicleId = req.getParameter("vehicleId");
             int gateId = Integer.parseInt(req.getParameter("gateId"));
-            CompletableFuture<UUID> future = parkingManager.enter(gateId, VehicleRecord.builder().vehicleId(vehicleId).build());
-            UUID ticketId = future.get();
-            json.addProperty("ticketId", ticketId.toString());
-            resp.setStatus(HttpServletResponse.SC_OK);
+            future = parkingManager.enter(gateId, VehicleRecord.builder().vehicleId(vehicleId).build());
+        } catch (GateOverloadedException e) {
+            log.warn("Rejected the /enter request: {}", e.getMessage());
+            resp.getWriter().println(OverloadResponses.reject(resp, e).toString());
+            return;
         } catch (Exception e) {
-            json.addProperty("errorCode", HttpServletResponse.SC_BAD_REQUEST);
-            json.addProperty("message", e.getMessage());
             log.error("Unable to fulfill the /enter request", e);
-            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-        } finally {
-            resp.getWriter().println(json.toString());
+            resp.getWriter().println(AsyncResponses.reject(resp, e.getMessage()).toString());
+            return;
         }
+
+        AsyncResponses.respond(req, resp, "/enter", future, ticketId -> {
+            JsonObject json = new JsonObject();
+            json.addProperty("ticketId", ticketId.toString());
+            return json.toString();
+        });
     }
 }
@@ -0,0 +1,26 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Handles request for /rest/events. It keeps the response open and streams the changes of the parking lot as
+ * server-sent events (see OccupancyBroadcaster):
+ * occupancy - the json of the info of the parking lot, the same as /rest/info, sent on connect and when it changes
+ * flow - {"entered": n, "exited": n}, the number of cars that entered / exited since the previous flow event
+ */
+public class EventsServlet extends HttpServlet {
+    private final OccupancyBroadcaster broadcaster;
+
+    EventsServlet(OccupancyBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        broadcaster.subscribe(req, resp);
+    }
+}
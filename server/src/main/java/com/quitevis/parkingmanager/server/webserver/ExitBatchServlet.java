@@ -0,0 +1,57 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.gson.Gson;
+import com.quitevis.parkingmanager.model.GateResult;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.GateOverloadedException;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+/**
+ * Handles request for /rest/exit/batch. This request is called whenever a gate has a batch of vehicles that need
+ * to exit the parking lot
+ * Parameters are:
+ * gateId - the gate number where the cars exited
+ * The body is a json array with the vehicle ids, in the order the cars arrived at the gate.
+ * The response is a json array with one result (vehicleId and, if the car could not exit, a message) per vehicle, in
+ * the same order.
+ */
+public class ExitBatchServlet extends HttpServlet {
+    private final ParkingManager parkingManager;
+
+    public ExitBatchServlet(ParkingManager parkingManager) {
+        this.parkingManager = parkingManager;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json;charset=utf-8");
+        CompletableFuture<List<GateResult>> future;
+
+        try {
+            int gateId = Integer.parseInt(req.getParameter("gateId"));
+            List<VehicleRecord> vehicleRecords = BatchRequests.readVehicleRecords(req);
+            future = parkingManager.exitBatch(gateId, vehicleRecords);
+        } catch (GateOverloadedException e) {
+            log.warn("Rejected the /exit/batch request: {}", e.getMessage());
+            resp.getWriter().println(OverloadResponses.reject(resp, e).toString());
+            return;
+        } catch (Exception e) {
+            log.error("Unable to fulfill the /exit/batch request", e);
+            resp.getWriter().println(AsyncResponses.reject(resp, e.getMessage()).toString());
+            return;
+        }
+
+        Gson gson = new Gson();
+        AsyncResponses.respond(req, resp, "/exit/batch", future, gson::toJson);
+    }
+}
@@ -2,6 +2,7 @@ package com.quitevis.parkingmanager.server.webserver;
 
 import com.google.gson.JsonObject;
 import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.GateOverloadedException;
 import com.quitevis.parkingmanager.server.manager.ParkingManager;
 import lombok.extern.slf4j.Slf4j;
 
@@ -10,6 +11,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -17,7 +19,10 @@ import java.util.concurrent.CompletableFuture;
  * Handles request for /rest/exit. This is called whenever the car is exiting the parking lot
  * Parameters are:
  * vehicleId - unique id identifying a vehicle
+ * ticketId - the ticket given to the car when it entered, can be sent instead of the vehicleId
  * gateId - the gate number where the car entered
+ * <p>
+ * Responds with the vehicleId and the ticketId of the car that exited, and the fee of its stay in cents.
  */
 public class ExitServlet extends HttpServlet {
     private final ParkingManager parkingManager;
@@ -29,21 +34,35 @@ public class ExitServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         resp.setContentType("application/json;charset=utf-8");
-        JsonObject json = new JsonObject();
+        CompletableFuture<VehicleRecord> future;
 
         try {
             String vehicleId = req.getParameter("vehicleId");
+            String ticketId = req.getParameter("ticketId");
             int gateId = Integer.parseInt(req.getParameter("gateId"));
-            CompletableFuture<Void> future = parkingManager.exit(gateId, VehicleRecord.builder().vehicleId(vehicleId).build());
-            future.get();
-            resp.setStatus(HttpServletResponse.SC_OK);
+            future = ticketId == null
+                    ? parkingManager.exit(gateId, VehicleRecord.builder().vehicleId(vehicleId).build())
+                    : parkingManager.exitByTicket(gateId, UUID.fromString(ticketId));
+        } catch (GateOverloadedException e) {
+            log.warn("Rejected the /exit request: {}", e.getMessage());
+            resp.getWriter().println(OverloadResponses.reject(resp, e).toString());
+            return;
         } catch (Exception e) {
-            json.addProperty("errorCode", HttpServletResponse.SC_BAD_REQUEST);
-            json.addProperty("message", e.getMessage());
             log.error("Unable to fulfill the /exit request", e);
-            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-        } finally {
-            resp.getWriter().println(json.toString());
+            resp.getWriter().println(AsyncResponses.reject(resp, e.getMessage()).toString());
+            return;
         }
+
+        AsyncResponses.respond(req, resp, "/exit", future, vehicleRecord -> {
+            JsonObject json = new JsonObject();
+            json.addProperty("vehicleId", vehicleRecord.getVehicleId());
+            if (vehicleRecord.getTicketId() != null) {
+                json.addProperty("ticketId", vehicleRecord.getTicketId().toString());
+            }
+
+            json.addProperty("fee", vehicleRecord.getFee());
+
+            return json.toString();
+        });
     }
 }
@@ -1,7 +1,8 @@
 package com.quitevis.parkingmanager.server.webserver;
 
-import com.google.gson.JsonObject;
+import com.google.gson.Gson;
 import com.google.inject.Inject;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
 import com.quitevis.parkingmanager.server.manager.ParkingManager;
 
 import javax.servlet.ServletException;
@@ -9,29 +10,86 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Handles request for /rest/info. It returns information about the parking lot that the parking manager is managing
+ * <p>
+ * The info published by the parking manager is encoded once per version and the bytes are served to every client
+ * until the next change. The ETag is the version of the info, prefixed by the time the servlet was created so that
+ * the tags of a restarted server do not match the ones of the previous run. A request whose If-None-Match holds the
+ * current tag is answered with 304 and no body.
  */
 public class InfoServlet extends HttpServlet {
     private final ParkingManager parkingManager;
+    private final String etagPrefix;
+    private final AtomicReference<EncodedInfo> encodedInfo;
 
     @Inject
     public InfoServlet(ParkingManager parkingManager) {
         this.parkingManager = parkingManager;
+        this.etagPrefix = "\"" + Long.toHexString(System.currentTimeMillis()) + "-";
+        this.encodedInfo = new AtomicReference<>();
     }
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        JsonObject json = new JsonObject();
-        json.addProperty("maxCapacity", parkingManager.getMaxCapacity());
-        json.addProperty("currentCapacity", parkingManager.getCurrentCapacity());
-        json.addProperty("capacityLeft", parkingManager.getCapacityLeft());
-        json.addProperty("entryCount", parkingManager.getEntryCount());
-        json.addProperty("exitCount", parkingManager.getExitCount());
+        EncodedInfo encoded = encode(parkingManager.getInfo());
+
+        resp.setHeader("ETag", encoded.etag);
+        resp.setHeader("Cache-Control", "no-cache");
+        if (matches(req.getHeader("If-None-Match"), encoded.etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
         resp.setContentType("application/json;charset=utf-8");
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().println(json.toString());
+        resp.setContentLength(encoded.body.length);
+        resp.getOutputStream().write(encoded.body);
+    }
+
+    /**
+     * Returns the encoded info, encoding it only if it is of a version that was not encoded yet. Requests racing on a
+     * new version may each encode it, they produce the same bytes.
+     */
+    private EncodedInfo encode(ParkingManagerInfo info) {
+        EncodedInfo encoded = encodedInfo.get();
+        if (encoded != null && encoded.version == info.getVersion()) {
+            return encoded;
+        }
+
+        byte[] body = (new Gson().toJson(info) + "\n").getBytes(StandardCharsets.UTF_8);
+        EncodedInfo latest = new EncodedInfo(info.getVersion(), etagPrefix + info.getVersion() + "\"", body);
+        encodedInfo.set(latest);
+        return latest;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static final class EncodedInfo {
+        private final long version;
+        private final String etag;
+        private final byte[] body;
+
+        private EncodedInfo(long version, String etag, byte[] body) {
+            this.version = version;
+            this.etag = etag;
+            this.body = body;
+        }
     }
 }
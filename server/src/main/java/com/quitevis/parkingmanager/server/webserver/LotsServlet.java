@@ -0,0 +1,87 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.inject.Inject;
+import com.quitevis.parkingmanager.server.manager.ParkingLots;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Handles every request of a server hosting many lots. /rest/{lotId}/enter, /rest/{lotId}/info and the other
+ * endpoints of a single lot are handed to the same servlets a single lot uses, created for the lot on its first
+ * request. /rest/lots returns the ids of the lots.
+ * <p>
+ * /stats, /metrics and /events are not served, the hosted lots keep no flow history nor latency histograms.
+ */
+public class LotsServlet extends HttpServlet {
+    private final ParkingLots parkingLots;
+    private final ConcurrentMap<String, Map<String, HttpServlet>> endpointsByLot;
+
+    @Inject
+    public LotsServlet(ParkingLots parkingLots) {
+        this.parkingLots = parkingLots;
+        this.endpointsByLot = Maps.newConcurrentMap();
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        //The path is /{lotId} followed by the endpoint, which keeps its leading slash
+        String path = req.getPathInfo() == null ? "" : req.getPathInfo();
+        int endpointStart = path.indexOf('/', 1);
+        if (endpointStart < 0) {
+            if (path.equals("/lots") && req.getMethod().equals("GET")) {
+                listLots(resp);
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+
+            return;
+        }
+
+        String lotId = path.substring(1, endpointStart);
+        ParkingManager parkingManager = parkingLots.get(lotId);
+        if (parkingManager == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown lot " + lotId);
+            return;
+        }
+
+        HttpServlet endpoint = endpointsByLot.computeIfAbsent(lotId, p -> createEndpoints(parkingManager))
+                .get(path.substring(endpointStart));
+        if (endpoint == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        endpoint.service(req, resp);
+    }
+
+    private void listLots(HttpServletResponse resp) throws IOException {
+        JsonArray json = new JsonArray();
+        parkingLots.getLotIds().forEach(json::add);
+
+        resp.setContentType("application/json;charset=utf-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().println(json.toString());
+    }
+
+    private static Map<String, HttpServlet> createEndpoints(ParkingManager parkingManager) {
+        return ImmutableMap.<String, HttpServlet>builder()
+                .put("/info", new InfoServlet(parkingManager))
+                .put("/enter", new EnterServlet(parkingManager))
+                .put("/exit", new ExitServlet(parkingManager))
+                .put("/enter/batch", new EnterBatchServlet(parkingManager))
+                .put("/exit/batch", new ExitBatchServlet(parkingManager))
+                .put("/parked", new ParkedVehiclesServlet(parkingManager))
+                .put("/queues", new QueuesServlet(parkingManager))
+                .build();
+    }
+}
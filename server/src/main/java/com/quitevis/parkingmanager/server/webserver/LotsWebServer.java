@@ -0,0 +1,30 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.quitevis.parkingmanager.server.manager.ParkingLots;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+/**
+ * Starts a jetty server hosting many lots, listening to the specified port (see LotsServlet)
+ */
+public class LotsWebServer {
+    private final ParkingLots parkingLots;
+    private final int port;
+
+    @Inject
+    public LotsWebServer(ParkingLots parkingLots, @Named("server.port") int port) {
+        this.parkingLots = parkingLots;
+        this.port = port;
+    }
+
+    public void start() throws Exception {
+        ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        handler.setContextPath("/rest");
+
+        //One servlet routes the requests of every lot, it must be async for the gate endpoints
+        handler.addServlet(WebServer.asyncHolder(new LotsServlet(parkingLots)), "/*");
+
+        WebServer.serve(handler, port);
+    }
+}
@@ -0,0 +1,138 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.quitevis.parkingmanager.metrics.LatencyHistogram;
+import com.quitevis.parkingmanager.server.manager.FlowStatistics;
+import com.quitevis.parkingmanager.server.manager.GateLatencies;
+import com.quitevis.parkingmanager.server.manager.JournalFollower;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Handles request for /rest/metrics. It returns the state of the parking lot and the latency histograms of every
+ * gate in the Prometheus text format, so that the server can be scraped by Prometheus. On a replica, it also returns
+ * how far it is behind its leader.
+ */
+public class MetricsServlet extends HttpServlet {
+    //The histogram buckets exported, from 2^10 ns (about 1 us) to 2^35 ns (about 34 s)
+    private static final int FIRST_EXPONENT = 10;
+    private static final int LAST_EXPONENT = 35;
+
+    private final ParkingManager parkingManager;
+    private final JournalFollower journalFollower;
+
+    public MetricsServlet(ParkingManager parkingManager) {
+        this(parkingManager, null);
+    }
+
+    /**
+     * journalFollower is null unless the server is a replica
+     */
+    public MetricsServlet(ParkingManager parkingManager, JournalFollower journalFollower) {
+        this.parkingManager = parkingManager;
+        this.journalFollower = journalFollower;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        StringBuilder metrics = new StringBuilder(16384);
+
+        gauge(metrics, "parking_capacity", "Number of slots of the parking lot", parkingManager.getMaxCapacity());
+        gauge(metrics, "parking_occupancy", "Number of cars parked", parkingManager.getCurrentCapacity());
+
+        metrics.append("# HELP parking_gate_queue_depth Number of cars waiting at the gate\n");
+        metrics.append("# TYPE parking_gate_queue_depth gauge\n");
+        gateValues(metrics, "parking_gate_queue_depth", "entry", parkingManager.getEntryQueueDepths());
+        gateValues(metrics, "parking_gate_queue_depth", "exit", parkingManager.getExitQueueDepths());
+
+        FlowStatistics flowStatistics = parkingManager.getFlowStatistics();
+        metrics.append("# HELP parking_gate_cars_total Number of cars that went through the gate\n");
+        metrics.append("# TYPE parking_gate_cars_total counter\n");
+        for (int gate = 0; gate < parkingManager.getEntryCount(); ++gate) {
+            gateLine(metrics, "parking_gate_cars_total", "entry", gate).append(flowStatistics.getEntryTotal(gate))
+                    .append('\n');
+        }
+
+        for (int gate = 0; gate < parkingManager.getExitCount(); ++gate) {
+            gateLine(metrics, "parking_gate_cars_total", "exit", gate).append(flowStatistics.getExitTotal(gate))
+                    .append('\n');
+        }
+
+        GateLatencies gateLatencies = parkingManager.getGateLatencies();
+        metrics.append("# HELP parking_gate_phase_seconds Time spent by the cars in each phase of the gate\n");
+        metrics.append("# TYPE parking_gate_phase_seconds histogram\n");
+        for (GateLatencies.Direction direction : GateLatencies.Direction.values()) {
+            for (GateLatencies.Phase phase : GateLatencies.Phase.values()) {
+                for (int gate = 0; gate < gateLatencies.getGateCount(direction); ++gate) {
+                    histogram(metrics, direction, phase, gate, gateLatencies.get(direction, phase, gate));
+                }
+            }
+        }
+
+        if (journalFollower != null) {
+            replication(metrics, journalFollower);
+        }
+
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(metrics);
+    }
+
+    private static void gauge(StringBuilder metrics, String name, String help, long value) {
+        metrics.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        metrics.append("# TYPE ").append(name).append(" gauge\n");
+        metrics.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void replication(StringBuilder metrics, JournalFollower journalFollower) {
+        gauge(metrics, "parking_replica_sequence", "Sequence of the last journal entry of the leader applied",
+                journalFollower.getSequence());
+        gauge(metrics, "parking_replica_promoted", "1 once the replica has been promoted to leader",
+                journalFollower.isPromoted() ? 1 : 0);
+        metrics.append("# HELP parking_replica_lag_seconds Time between the leader making the last change applied "
+                + "and the replica applying it\n");
+        metrics.append("# TYPE parking_replica_lag_seconds gauge\n");
+        metrics.append("parking_replica_lag_seconds ").append(journalFollower.getLagMillis() / 1e3).append('\n');
+        metrics.append("# HELP parking_replica_last_poll_age_seconds Time since the journal of the leader was last "
+                + "read\n");
+        metrics.append("# TYPE parking_replica_last_poll_age_seconds gauge\n");
+        metrics.append("parking_replica_last_poll_age_seconds ").append(journalFollower.getMillisSinceLastPoll() / 1e3)
+                .append('\n');
+    }
+
+    private static void gateValues(StringBuilder metrics, String name, String direction, int[] values) {
+        for (int gate = 0; gate < values.length; ++gate) {
+            gateLine(metrics, name, direction, gate).append(values[gate]).append('\n');
+        }
+    }
+
+    private static StringBuilder gateLine(StringBuilder metrics, String name, String direction, int gate) {
+        return metrics.append(name).append("{direction=\"").append(direction).append("\",gate=\"").append(gate)
+                .append("\"} ");
+    }
+
+    private static void histogram(StringBuilder metrics, GateLatencies.Direction direction, GateLatencies.Phase phase,
+                                  int gate, LatencyHistogram histogram) {
+        //The buckets are read after the total and capped by it, so that they never go past it
+        long count = histogram.getCount();
+        long sumNanos = histogram.getSumNanos();
+        String labels = "direction=\"" + direction.name().toLowerCase() + "\",gate=\"" + gate
+                + "\",phase=\"" + phase.name().toLowerCase() + "\"";
+
+        for (int exponent = FIRST_EXPONENT; exponent <= LAST_EXPONENT; ++exponent) {
+            metrics.append("parking_gate_phase_seconds_bucket{").append(labels).append(",le=\"")
+                    .append((double) (1L << exponent) / 1e9).append("\"} ")
+                    .append(Math.min(histogram.getCountBelowPowerOfTwo(exponent), count)).append('\n');
+        }
+
+        metrics.append("parking_gate_phase_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count)
+                .append('\n');
+        metrics.append("parking_gate_phase_seconds_sum{").append(labels).append("} ").append(sumNanos / 1e9)
+                .append('\n');
+        metrics.append("parking_gate_phase_seconds_count{").append(labels).append("} ").append(count).append('\n');
+    }
+}
@@ -0,0 +1,289 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
+import com.quitevis.parkingmanager.server.manager.FlowStatistics;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the changes of the parking lot to the subscribers of /rest/events, as server-sent events.
+ * <p>
+ * Every periodMillis, a single thread looks at the published info of the parking manager and the running totals of
+ * the gates. If the info has a new version, an "occupancy" event with the info is sent, and if cars entered or
+ * exited since the last look, a "flow" event with their number. Whatever happened in between is coalesced into these
+ * two events, so the cost of the stream does not grow with the traffic of the gates. When nothing happened for a
+ * while, a comment is sent to keep the connections open.
+ * <p>
+ * The events of a period are encoded once and queued on every subscriber. Each subscriber writes its queue with the
+ * non-blocking output of the servlet API: events are written while the connection takes them, and when it does not,
+ * the rest waits for jetty to call onWritePossible. No thread ever waits on a slow subscriber, so it never holds up
+ * the others or the jetty threads. A subscriber that falls more than MAX_PENDING_EVENTS behind is disconnected, it can
+ * reconnect and starts again from the current info.
+ */
+@Slf4j
+class OccupancyBroadcaster implements AutoCloseable {
+    private static final int MAX_PENDING_EVENTS = 64;
+    private static final long HEARTBEAT_MILLIS = 10000;
+    private static final long RETRY_MILLIS = 2000;
+    private static final byte[] HEARTBEAT = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ParkingManager parkingManager;
+    private final long periodMillis;
+    private final Set<Subscriber> subscribers;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson;
+
+    //Only used by the scheduler thread
+    private long lastVersion = -1;
+    private long lastEntryTotal;
+    private long lastExitTotal;
+    private long lastEventMillis;
+
+    OccupancyBroadcaster(ParkingManager parkingManager, long periodMillis) {
+        this.parkingManager = parkingManager;
+        this.periodMillis = periodMillis;
+        this.subscribers = Sets.newConcurrentHashSet();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("parking-events").setDaemon(true).build());
+        this.gson = new Gson();
+    }
+
+    void start() {
+        lastEntryTotal = getEntryTotal();
+        lastExitTotal = getExitTotal();
+        scheduler.scheduleAtFixedRate(this::broadcast, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts the request in async mode and adds it to the subscribers. It gets the current info right away.
+     */
+    void subscribe(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/event-stream;charset=utf-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setStatus(HttpServletResponse.SC_OK);
+
+        AsyncContext context = req.startAsync();
+        //Subscribers stay until they leave, the heartbeat keeps the connector from closing an idle stream
+        context.setTimeout(0);
+        Subscriber subscriber = new Subscriber(context, resp.getOutputStream());
+        context.addListener(subscriber);
+
+        //Queued before the write listener is set, so that it is the first event jetty writes
+        String first = "retry: " + RETRY_MILLIS + "\n" + occupancyEvent(parkingManager.getInfo());
+        subscriber.offer(first.getBytes(StandardCharsets.UTF_8));
+        subscribers.add(subscriber);
+        resp.getOutputStream().setWriteListener(subscriber);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+    }
+
+    private void broadcast() {
+        try {
+            StringBuilder events = new StringBuilder();
+            ParkingManagerInfo info = parkingManager.getInfo();
+            if (info.getVersion() != lastVersion) {
+                lastVersion = info.getVersion();
+                events.append(occupancyEvent(info));
+            }
+
+            long entryTotal = getEntryTotal();
+            long exitTotal = getExitTotal();
+            if (entryTotal != lastEntryTotal || exitTotal != lastExitTotal) {
+                JsonObject flow = new JsonObject();
+                flow.addProperty("entered", entryTotal - lastEntryTotal);
+                flow.addProperty("exited", exitTotal - lastExitTotal);
+                lastEntryTotal = entryTotal;
+                lastExitTotal = exitTotal;
+                events.append("event: flow\ndata: ").append(flow.toString()).append("\n\n");
+            }
+
+            long now = System.currentTimeMillis();
+            byte[] encoded;
+            if (events.length() > 0) {
+                encoded = events.toString().getBytes(StandardCharsets.UTF_8);
+            } else if (now - lastEventMillis >= HEARTBEAT_MILLIS) {
+                encoded = HEARTBEAT;
+            } else {
+                return;
+            }
+
+            lastEventMillis = now;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(encoded);
+            }
+        } catch (RuntimeException e) {
+            //Keep the schedule going, the next period tries again
+            log.error("Unable to broadcast the parking events", e);
+        }
+    }
+
+    private long getEntryTotal() {
+        FlowStatistics flowStatistics = parkingManager.getFlowStatistics();
+        long total = 0;
+        for (int x = 0; x < parkingManager.getEntryCount(); ++x) {
+            total += flowStatistics.getEntryTotal(x);
+        }
+
+        return total;
+    }
+
+    private long getExitTotal() {
+        FlowStatistics flowStatistics = parkingManager.getFlowStatistics();
+        long total = 0;
+        for (int x = 0; x < parkingManager.getExitCount(); ++x) {
+            total += flowStatistics.getExitTotal(x);
+        }
+
+        return total;
+    }
+
+    private String occupancyEvent(ParkingManagerInfo info) {
+        return "id: " + info.getVersion() + "\nevent: occupancy\ndata: " + gson.toJson(info) + "\n\n";
+    }
+
+    /**
+     * Returns the number of connected subscribers
+     */
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private final class Subscriber implements AsyncListener, WriteListener {
+        private final AsyncContext context;
+        private final ServletOutputStream outputStream;
+        private final Queue<byte[]> pending;
+        private final AtomicInteger pendingCount;
+        private final AtomicBoolean closed;
+        //Guarded by this
+        private boolean listening;
+        private boolean unflushed;
+
+        private Subscriber(AsyncContext context, ServletOutputStream outputStream) {
+            this.context = context;
+            this.outputStream = outputStream;
+            this.pending = new ConcurrentLinkedQueue<>();
+            this.pendingCount = new AtomicInteger();
+            this.closed = new AtomicBoolean();
+        }
+
+        private void offer(byte[] event) {
+            if (closed.get()) {
+                return;
+            }
+
+            if (pendingCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+                log.warn("Disconnecting a subscriber of /events that is {} events behind", MAX_PENDING_EVENTS);
+                close();
+                return;
+            }
+
+            pending.add(event);
+            write();
+        }
+
+        @Override
+        public void onWritePossible() {
+            synchronized (this) {
+                listening = true;
+            }
+
+            write();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.debug("A subscriber of /events left: {}", t.getMessage());
+            close();
+        }
+
+        /**
+         * Writes the queued events as long as the connection takes them without blocking. When it stops, isReady has
+         * asked jetty to call onWritePossible once the connection takes more, which writes the rest. Nothing is written
+         * before jetty first calls onWritePossible, as the output is not in non-blocking mode until then.
+         */
+        private synchronized void write() {
+            if (!listening || closed.get()) {
+                return;
+            }
+
+            try {
+                while (outputStream.isReady()) {
+                    byte[] event = pending.poll();
+                    if (event != null) {
+                        pendingCount.decrementAndGet();
+                        outputStream.write(event);
+                        unflushed = true;
+                    } else if (unflushed) {
+                        unflushed = false;
+                        outputStream.flush();
+                    } else {
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("A subscriber of /events left: {}", e.getMessage());
+                close();
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+
+            subscribers.remove(this);
+            pending.clear();
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                //Already completed by jetty
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            closed.set(true);
+            subscribers.remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.gson.JsonObject;
+import com.quitevis.parkingmanager.server.manager.GateOverloadedException;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Turns a GateOverloadedException into a 429 (Too Many Requests) response with a Retry-After hint, so that
+ * overloaded gates fail fast and visibly instead of queueing cars for ever
+ */
+final class OverloadResponses {
+    static final int SC_TOO_MANY_REQUESTS = 429;
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    private OverloadResponses() {
+    }
+
+    static JsonObject reject(HttpServletResponse resp, GateOverloadedException e) {
+        JsonObject json = new JsonObject();
+        json.addProperty("errorCode", SC_TOO_MANY_REQUESTS);
+        json.addProperty("message", e.getMessage());
+        json.addProperty("queueDepth", e.getQueueDepth());
+        resp.setStatus(SC_TOO_MANY_REQUESTS);
+        resp.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+        return json;
+    }
+}
@@ -1,21 +1,31 @@
 package com.quitevis.parkingmanager.server.webserver;
 
-import com.google.gson.JsonArray;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
-import com.quitevis.parkingmanager.server.manager.ParkingManager;
 import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Handles request for /rest/parked. It returns the vehicle id of the parked cars
+ * Parameters are:
+ * limit - optional, the max number of ids to return (up to 10000). Without it, all the ids are returned as a json
+ * array, written to the response as they are read from the lot.
+ * after - optional, the cursor of the page: the ids after this one are returned
+ * <p>
+ * With a limit, the response is {"vehicleIds": [...], "next": "..."}, with the ids in order. next is the after of
+ * the following page and is left out on the last page.
  */
 public class ParkedVehiclesServlet extends HttpServlet {
+    static final int MAX_PAGE_SIZE = 10000;
+
     private final ParkingManager parkingManager;
 
     @Inject
@@ -25,15 +35,58 @@ public class ParkedVehiclesServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        JsonArray array = new JsonArray();
-        Set<VehicleRecord> vehicleRecordSet = parkingManager.getParkedVehicleIds();
+        resp.setContentType("application/json;charset=utf-8");
+        String limitParameter = req.getParameter("limit");
+        if (limitParameter == null) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            writeAll(resp);
+            return;
+        }
 
-        vehicleRecordSet.stream()
-                .map(p -> p.getVehicleId())
-                .forEach(p -> array.add(p));
+        int limit;
+        try {
+            limit = Integer.parseInt(limitParameter);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
 
-        resp.setContentType("application/json;charset=utf-8");
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            String message = "limit must be between 1 and " + MAX_PAGE_SIZE;
+            resp.getWriter().println(AsyncResponses.reject(resp, message).toString());
+            return;
+        }
+
+        List<String> vehicleIds = parkingManager.getParkedVehicleIdPage(req.getParameter("after"), limit);
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().println(array.toString());
+
+        JsonWriter writer = new JsonWriter(resp.getWriter());
+        writer.beginObject();
+        writer.name("vehicleIds").beginArray();
+        for (String vehicleId : vehicleIds) {
+            writer.value(vehicleId);
+        }
+
+        writer.endArray();
+        if (vehicleIds.size() == limit) {
+            writer.name("next").value(vehicleIds.get(limit - 1));
+        }
+
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Streams the ids straight from the iterator of the lot, the response buffer is sent whenever it fills up
+     */
+    private void writeAll(HttpServletResponse resp) throws IOException {
+        JsonWriter writer = new JsonWriter(resp.getWriter());
+        writer.beginArray();
+        Iterator<VehicleRecord> iterator = parkingManager.iterateParkedVehicles();
+        while (iterator.hasNext()) {
+            writer.value(iterator.next().getVehicleId());
+        }
+
+        writer.endArray();
+        writer.flush();
     }
 }
@@ -0,0 +1,44 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.inject.Inject;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Handles request for /rest/queues. It returns the number of cars waiting in the queue of each entry and exit gate
+ */
+public class QueuesServlet extends HttpServlet {
+    private final ParkingManager parkingManager;
+
+    @Inject
+    public QueuesServlet(ParkingManager parkingManager) {
+        this.parkingManager = parkingManager;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        JsonObject json = new JsonObject();
+        json.add("entry", toJsonArray(parkingManager.getEntryQueueDepths()));
+        json.add("exit", toJsonArray(parkingManager.getExitQueueDepths()));
+
+        resp.setContentType("application/json;charset=utf-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().println(json.toString());
+    }
+
+    private static JsonArray toJsonArray(int[] queueDepths) {
+        JsonArray array = new JsonArray();
+        for (int queueDepth : queueDepths) {
+            array.add(queueDepth);
+        }
+
+        return array;
+    }
+}
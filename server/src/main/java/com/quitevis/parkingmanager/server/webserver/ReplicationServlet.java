@@ -0,0 +1,56 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.gson.JsonObject;
+import com.quitevis.parkingmanager.server.manager.JournalFollower;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Handles request for /rest/replication, only served by a replica. GET returns how far the replica is behind its
+ * leader. POST promotes the replica to leader, once the leader is down (see JournalFollower.promote): from then on
+ * the replica takes the cars at its gates.
+ */
+@Slf4j
+public class ReplicationServlet extends HttpServlet {
+    private final JournalFollower journalFollower;
+
+    public ReplicationServlet(JournalFollower journalFollower) {
+        this.journalFollower = journalFollower;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json;charset=utf-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().println(status().toString());
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json;charset=utf-8");
+        try {
+            journalFollower.promote();
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to promote the replica", e);
+            resp.getWriter().println(AsyncResponses.reject(resp, e.getMessage()).toString());
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().println(status().toString());
+    }
+
+    private JsonObject status() {
+        JsonObject json = new JsonObject();
+        json.addProperty("promoted", journalFollower.isPromoted());
+        json.addProperty("sequence", journalFollower.getSequence());
+        json.addProperty("lagMillis", journalFollower.getLagMillis());
+        json.addProperty("millisSinceLastPoll", journalFollower.getMillisSinceLastPoll());
+        return json;
+    }
+}
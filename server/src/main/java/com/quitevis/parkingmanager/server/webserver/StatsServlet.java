@@ -0,0 +1,83 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.quitevis.parkingmanager.server.manager.FlowSample;
+import com.quitevis.parkingmanager.server.manager.FlowStatistics;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Handles request for /rest/stats. It returns the occupancy of the parking lot and the number of cars that entered /
+ * exited through each gate, second by second (last hour) or minute by minute (last day).
+ * <p>
+ * Parameters are:
+ * resolution - "second" (default) or "minute"
+ * points - the number of most recent seconds / minutes to return (default 60)
+ */
+@Slf4j
+public class StatsServlet extends HttpServlet {
+    private static final int DEFAULT_POINTS = 60;
+
+    private final ParkingManager parkingManager;
+
+    public StatsServlet(ParkingManager parkingManager) {
+        this.parkingManager = parkingManager;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json;charset=utf-8");
+        JsonObject json = new JsonObject();
+
+        try {
+            String resolutionParameter = req.getParameter("resolution");
+            String pointsParameter = req.getParameter("points");
+            FlowStatistics.Resolution resolution = resolutionParameter == null
+                    ? FlowStatistics.Resolution.SECOND
+                    : FlowStatistics.Resolution.valueOf(resolutionParameter.trim().toUpperCase());
+            int points = pointsParameter == null ? DEFAULT_POINTS : Integer.parseInt(pointsParameter.trim());
+
+            JsonArray samples = new JsonArray();
+            for (FlowSample sample : parkingManager.getFlowSamples(resolution, points)) {
+                samples.add(toJson(sample));
+            }
+
+            json.addProperty("resolution", resolution.name().toLowerCase());
+            json.addProperty("seconds", resolution.getSeconds());
+            json.add("samples", samples);
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } catch (Exception e) {
+            json.addProperty("errorCode", HttpServletResponse.SC_BAD_REQUEST);
+            json.addProperty("message", e.getMessage());
+            log.error("Unable to fulfill the /stats request", e);
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } finally {
+            resp.getWriter().println(json.toString());
+        }
+    }
+
+    private static JsonObject toJson(FlowSample sample) {
+        JsonObject json = new JsonObject();
+        json.addProperty("time", sample.getEpochSecond());
+        json.addProperty("occupancy", sample.getOccupancy());
+        json.add("entries", toJsonArray(sample.getEntries()));
+        json.add("exits", toJsonArray(sample.getExits()));
+        return json;
+    }
+
+    private static JsonArray toJsonArray(long[] counts) {
+        JsonArray array = new JsonArray();
+        for (long count : counts) {
+            array.add(count);
+        }
+
+        return array;
+    }
+}
@@ -2,6 +2,7 @@ package com.quitevis.parkingmanager.server.webserver;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.quitevis.parkingmanager.server.manager.JournalFollower;
 import com.quitevis.parkingmanager.server.manager.ParkingManager;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -9,18 +10,33 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import javax.servlet.http.HttpServlet;
+
 /**
  * Starts a jetty server, listening to the specified port
  */
 public class WebServer {
     private final ParkingManager parkingManager;
     private final int port;
+    private final long eventsPeriodMillis;
+    private final JournalFollower journalFollower;
 
     @Inject
     public WebServer(ParkingManager parkingManager,
-                     @Named("server.port") int port) {
+                     @Named("server.port") int port,
+                     @Named("server.events.period.millis") long eventsPeriodMillis) {
+        this(parkingManager, port, eventsPeriodMillis, null);
+    }
+
+    /**
+     * Serves a replica, which also answers /rest/replication (see ReplicationServlet)
+     */
+    public WebServer(ParkingManager parkingManager, int port, long eventsPeriodMillis,
+                     JournalFollower journalFollower) {
         this.parkingManager = parkingManager;
         this.port = port;
+        this.eventsPeriodMillis = eventsPeriodMillis;
+        this.journalFollower = journalFollower;
     }
 
     public void start() throws Exception {
@@ -29,10 +45,31 @@ public class WebServer {
 
         //ParkingManager is thread-safe so it is okay to share the instance
         handler.addServlet(new ServletHolder(new InfoServlet(parkingManager)), "/info");
-        handler.addServlet(new ServletHolder(new EnterServlet(parkingManager)), "/enter");
-        handler.addServlet(new ServletHolder(new ExitServlet(parkingManager)), "/exit");
+        //The gates answer asynchronously, so the cars waiting in their queues do not hold jetty threads
+        handler.addServlet(asyncHolder(new EnterServlet(parkingManager)), "/enter");
+        handler.addServlet(asyncHolder(new ExitServlet(parkingManager)), "/exit");
+        handler.addServlet(asyncHolder(new EnterBatchServlet(parkingManager)), "/enter/batch");
+        handler.addServlet(asyncHolder(new ExitBatchServlet(parkingManager)), "/exit/batch");
         handler.addServlet(new ServletHolder(new ParkedVehiclesServlet(parkingManager)), "/parked");
+        handler.addServlet(new ServletHolder(new QueuesServlet(parkingManager)), "/queues");
+        handler.addServlet(new ServletHolder(new StatsServlet(parkingManager)), "/stats");
+        handler.addServlet(new ServletHolder(new MetricsServlet(parkingManager, journalFollower)), "/metrics");
+        if (journalFollower != null) {
+            handler.addServlet(new ServletHolder(new ReplicationServlet(journalFollower)), "/replication");
+        }
+
+        //One broadcaster encodes the changes once per period for all the subscribers
+        OccupancyBroadcaster broadcaster = new OccupancyBroadcaster(parkingManager, eventsPeriodMillis);
+        broadcaster.start();
+        handler.addServlet(asyncHolder(new EventsServlet(broadcaster)), "/events");
 
+        serve(handler, port);
+    }
+
+    /**
+     * Serves the handler on the port, returns once the server is stopped
+     */
+    static void serve(ServletContextHandler handler, int port) throws Exception {
         Server server = new Server(new QueuedThreadPool(100));
         server.setHandler(handler);
 
@@ -44,4 +81,10 @@ public class WebServer {
         server.start();
         server.join();
     }
+
+    static ServletHolder asyncHolder(HttpServlet servlet) {
+        ServletHolder holder = new ServletHolder(servlet);
+        holder.setAsyncSupported(true);
+        return holder;
+    }
 }
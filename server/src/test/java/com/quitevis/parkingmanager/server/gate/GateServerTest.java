@@ -0,0 +1,125 @@
+package com.quitevis.parkingmanager.server.gate;
+
+import com.google.common.collect.Maps;
+import com.quitevis.parkingmanager.gate.GateProtocol;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+
+public class GateServerTest {
+    private ParkingManager parkingManager;
+    private GateServer gateServer;
+    private SocketChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        parkingManager = new ParkingManager(1, 1, 1, mock(ParkingLogger.class));
+        gateServer = new GateServer(parkingManager, 0);
+        gateServer.start();
+        channel = SocketChannel.open(new InetSocketAddress("localhost", gateServer.getLocalPort()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        channel.close();
+        gateServer.close();
+        parkingManager.close();
+    }
+
+    @Test
+    public void pipelinedRequestsShouldEachGetTheirResponse() throws IOException {
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        GateProtocol.writeRequest(requests, 1, GateProtocol.OP_ENTER, 0, plate("ABC123"));
+        GateProtocol.writeRequest(requests, 2, GateProtocol.OP_ENTER, 0, plate("XYZ789"));
+        requests.flip();
+        write(requests);
+
+        Map<Integer, Response> responses = readResponses(2);
+        assertThat(responses.get(1).status, is(GateProtocol.STATUS_OK));
+        assertThat(responses.get(2).status, is(GateProtocol.STATUS_REJECTED));
+        assertThat(responses.get(2).message.isEmpty(), is(false));
+
+        requests.clear();
+        GateProtocol.writeRequest(requests, 3, GateProtocol.OP_EXIT, 0, plate("ABC123"));
+        requests.flip();
+        write(requests);
+
+        Response exited = readResponses(1).get(3);
+        assertThat(exited.status, is(GateProtocol.STATUS_OK));
+        assertThat(exited.ticket, is(responses.get(1).ticket));
+        assertThat(parkingManager.getCurrentCapacity(), is(0));
+    }
+
+    @Test
+    public void malformedFrameShouldBeAnsweredAndTheConnectionClosed() throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(8);
+        request.putInt(Integer.MAX_VALUE);
+        request.putInt(7);
+        request.flip();
+        write(request);
+
+        assertThat(readResponses(1).get(0).status, is(GateProtocol.STATUS_MALFORMED));
+        assertThat(channel.read(ByteBuffer.allocate(1)), is(-1));
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Map<Integer, Response> readResponses(int count) throws IOException {
+        Map<Integer, Response> responses = Maps.newHashMap();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (responses.size() < count) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("The connection was closed");
+            }
+
+            buffer.flip();
+            while (buffer.remaining() >= 4 && buffer.remaining() >= 4 + buffer.getInt(buffer.position())) {
+                buffer.getInt();
+                int requestId = buffer.getInt();
+                byte status = buffer.get();
+                UUID ticket = new UUID(buffer.getLong(), buffer.getLong());
+                byte[] message = new byte[buffer.getShort()];
+                buffer.get(message);
+                responses.put(requestId, new Response(status, ticket, new String(message, StandardCharsets.UTF_8)));
+            }
+
+            buffer.compact();
+        }
+
+        return responses;
+    }
+
+    private static byte[] plate(String vehicleId) {
+        return vehicleId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Response {
+        private final byte status;
+        private final UUID ticket;
+        private final String message;
+
+        private Response(byte status, UUID ticket, String message) {
+            this.status = status;
+            this.ticket = ticket;
+            this.message = message;
+        }
+    }
+}
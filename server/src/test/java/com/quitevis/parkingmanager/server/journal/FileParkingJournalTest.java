@@ -0,0 +1,325 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.CompactVehicleRegistry;
+import com.quitevis.parkingmanager.server.manager.LockFreeAdmissionEngine;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class FileParkingJournalTest {
+    private Path directory;
+    private ExecutorService gatePool;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        gatePool = ParkingManager.createGatePool(2);
+    }
+
+    @After
+    public void tearDown() {
+        gatePool.shutdown();
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void committedEntriesShouldBeReplayedInEverySyncMode() throws Exception {
+        for (FileParkingJournal.SyncMode syncMode : FileParkingJournal.SyncMode.values()) {
+            Path modeDirectory = directory.resolve(syncMode.name());
+            try (FileParkingJournal journal = new FileParkingJournal(modeDirectory, syncMode, 100, 1024 * 1024)) {
+                List<CompletableFuture<Void>> commits = Lists.newArrayList();
+                for (int x = 0; x < 100; ++x) {
+                    JournalEntry entry = entry(JournalEntry.Type.ENTERED, "V" + x);
+                    commits.add(journal.commit(entries -> entries.add(entry)));
+                }
+
+                for (CompletableFuture<Void> commit : commits) {
+                    commit.get();
+                }
+            }
+
+            List<JournalEntry> replayed = replay(modeDirectory);
+            assertThat(replayed.size(), is(100));
+            for (int x = 0; x < 100; ++x) {
+                assertThat(replayed.get(x).getVehicleId(), is("V" + x));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentSyncCommitsShouldAllBeDurableInTheOrderTheyWereMade() throws Exception {
+        int threads = 8;
+        int commitsPerThread = 200;
+        ExecutorService committers = Executors.newFixedThreadPool(threads);
+        //Small segments, so that the commits also share the segment rolls
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 4096)) {
+            List<Future<?>> done = Lists.newArrayList();
+            for (int t = 0; t < threads; ++t) {
+                String prefix = "T" + t + "-";
+                done.add(committers.submit(() -> {
+                    for (int x = 0; x < commitsPerThread; ++x) {
+                        JournalEntry entry = entry(JournalEntry.Type.ENTERED, prefix + x);
+                        //SYNC commits return once their entries are forced
+                        assertThat(journal.commit(entries -> entries.add(entry)).isDone(), is(true));
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            committers.shutdown();
+        }
+
+        List<JournalEntry> replayed = replay(directory);
+        assertThat(replayed.size(), is(threads * commitsPerThread));
+        int[] next = new int[threads];
+        for (JournalEntry entry : replayed) {
+            String[] parts = entry.getVehicleId().substring(1).split("-");
+            int thread = Integer.parseInt(parts[0]);
+            assertThat(Integer.parseInt(parts[1]), is(next[thread]++));
+        }
+    }
+
+    @Test
+    public void replayShouldReturnEveryFieldOfTheEntry() throws Exception {
+        JournalEntry entry = JournalEntry.builder()
+                .type(JournalEntry.Type.EXITED)
+                .gate(3)
+                .vehicleId("ABC123")
+                .ticketId(UUID.randomUUID())
+                .date(LocalDateTime.of(2016, 2, 1, 10, 15, 30, 123000000))
+                .build();
+
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.commit(entries -> entries.add(entry)).get();
+        }
+
+        assertThat(replay(directory), is(Lists.newArrayList(entry)));
+    }
+
+    @Test
+    public void incompleteEntryAtTheEndShouldBeCutOff() throws Exception {
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.commit(entries -> entries.add(entry(JournalEntry.Type.ENTERED, "A"))).get();
+        }
+
+        //Simulate a crash in the middle of a write
+        Path segment = Files.list(directory).findFirst().get();
+        Files.write(segment, new byte[] {0, 0, 0, 60, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.commit(entries -> entries.add(entry(JournalEntry.Type.ENTERED, "B"))).get();
+        }
+
+        List<JournalEntry> replayed = replay(directory);
+        assertThat(replayed.size(), is(2));
+        assertThat(replayed.get(0).getVehicleId(), is("A"));
+        assertThat(replayed.get(1).getVehicleId(), is("B"));
+    }
+
+    @Test
+    public void entriesShouldBeReplayedInOrderAcrossSegments() throws Exception {
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 200)) {
+            for (int x = 0; x < 50; ++x) {
+                JournalEntry entry = entry(JournalEntry.Type.ENTERED, "V" + x);
+                journal.commit(entries -> entries.add(entry)).get();
+            }
+        }
+
+        assertThat(Files.list(directory).count() > 1, is(true));
+
+        List<JournalEntry> replayed = replay(directory);
+        assertThat(replayed.size(), is(50));
+        for (int x = 0; x < 50; ++x) {
+            assertThat(replayed.get(x).getVehicleId(), is("V" + x));
+        }
+    }
+
+    @Test
+    public void failedMutationShouldWriteNothing() throws Exception {
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.GROUP, 0, 1024)) {
+            try {
+                journal.commit(entries -> {
+                    entries.add(entry(JournalEntry.Type.ENTERED, "A"));
+                    throw new IllegalStateException("The parking lot is already full.");
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                //Exception expected
+            }
+
+            journal.commit(entries -> entries.add(entry(JournalEntry.Type.ENTERED, "B"))).get();
+        }
+
+        List<JournalEntry> replayed = replay(directory);
+        assertThat(replayed.size(), is(1));
+        assertThat(replayed.get(0).getVehicleId(), is("B"));
+    }
+
+    @Test
+    public void recoverShouldRebuildTheParkedVehicles() throws Exception {
+        UUID ticketId;
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.GROUP, 0, 1024)) {
+            ParkingManager manager = createManager(journal);
+            manager.recover();
+            manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+            ticketId = manager.enter(1, VehicleRecord.builder().vehicleId("B").build()).get();
+            manager.exit(0, VehicleRecord.builder().vehicleId("A").build()).get();
+            manager.close();
+        }
+
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.GROUP, 0, 1024)) {
+            ParkingManager manager = createManager(journal);
+            manager.recover();
+
+            assertThat(manager.getCurrentCapacity(), is(1));
+            assertThat(manager.getParkedVehicleIds().iterator().next().getTicketId(), is(ticketId));
+
+            //The ticket is still valid after the restart
+            assertThat(manager.exitByTicket(0, ticketId).get().getVehicleId(), is("B"));
+            assertThat(manager.getCurrentCapacity(), is(0));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void snapshotShouldReplaceTheEntriesItCovers() throws Exception {
+        for (FileParkingJournal.SyncMode syncMode : FileParkingJournal.SyncMode.values()) {
+            Path modeDirectory = directory.resolve(syncMode.name());
+            List<VehicleRecord> parked = Lists.newArrayList(
+                    VehicleRecord.builder().vehicleId("A").entryGate(1).ticketId(UUID.randomUUID()).build(),
+                    VehicleRecord.builder().vehicleId("B").dateEntered(LocalDateTime.of(2016, 2, 1, 10, 15)).build());
+
+            try (FileParkingJournal journal = new FileParkingJournal(modeDirectory, syncMode, 0, 200)) {
+                for (int x = 0; x < 50; ++x) {
+                    JournalEntry entry = entry(JournalEntry.Type.ENTERED, "V" + x);
+                    journal.commit(entries -> entries.add(entry)).get();
+                }
+
+                journal.snapshot(() -> Lists.newArrayList(VehicleRecord.builder().vehicleId("Z").build()));
+                journal.snapshot(() -> parked);
+                journal.commit(entries -> entries.add(entry(JournalEntry.Type.EXITED, "A"))).get();
+            }
+
+            List<VehicleRecord> restored = Lists.newArrayList();
+            List<JournalEntry> replayed = Lists.newArrayList();
+            try (FileParkingJournal journal = new FileParkingJournal(modeDirectory, syncMode, 0, 200)) {
+                journal.replay(restored::add, replayed::add);
+            }
+
+            assertThat(restored.size(), is(2));
+            assertThat(restored.get(0).getEntryGate(), is(1));
+            assertThat(restored.get(0).getTicketId(), is(parked.get(0).getTicketId()));
+            assertThat(restored.get(1).getDateEntered(), is(parked.get(1).getDateEntered()));
+            assertThat(replayed.size(), is(1));
+            assertThat(replayed.get(0).getVehicleId(), is("A"));
+
+            //Only the last snapshot and the segments written after it are kept
+            assertThat(Files.list(modeDirectory).filter(p -> p.toString().endsWith(".snap")).count(), is(1L));
+            assertThat(Files.list(modeDirectory).filter(p -> p.toString().endsWith(".log")).count() <= 2, is(true));
+        }
+    }
+
+    @Test
+    public void recoverShouldStartFromTheSnapshot() throws Exception {
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.GROUP, 0, 1024)) {
+            ParkingManager manager = createManager(journal);
+            manager.recover();
+            manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+            manager.enter(1, VehicleRecord.builder().vehicleId("B").build()).get();
+            manager.snapshot();
+            manager.exit(0, VehicleRecord.builder().vehicleId("A").build()).get();
+            manager.close();
+        }
+
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.GROUP, 0, 1024)) {
+            ParkingManager manager = createManager(journal);
+            manager.recover();
+
+            assertThat(manager.getCurrentCapacity(), is(1));
+            VehicleRecord parked = manager.getParkedVehicleIds().iterator().next();
+            assertThat(parked.getVehicleId(), is("B"));
+            assertThat(parked.getEntryGate(), is(1));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void snapshotOfACompactRegistryShouldKeepEveryFieldOfTheParkedVehicles() throws Exception {
+        UUID ticketId;
+        LocalDateTime dateEntered;
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            ParkingManager manager = createCompactManager(journal);
+            manager.recover();
+            ticketId = manager.enter(1, VehicleRecord.builder().vehicleId("A").build()).get();
+            dateEntered = manager.getParkedVehicleIds().iterator().next().getDateEntered();
+            manager.snapshot();
+            manager.close();
+        }
+
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            ParkingManager manager = createCompactManager(journal);
+            manager.recover();
+
+            VehicleRecord parked = manager.getParkedVehicleIds().iterator().next();
+            assertThat(parked.getVehicleId(), is("A"));
+            assertThat(parked.getEntryGate(), is(1));
+            assertThat(parked.getTicketId(), is(ticketId));
+            assertThat(parked.getDateEntered(), is(dateEntered.truncatedTo(ChronoUnit.MILLIS)));
+
+            //The car can still leave with its ticket
+            assertThat(manager.exitByTicket(0, ticketId).get().getEntryGate(), is(1));
+            manager.close();
+        }
+    }
+
+    private ParkingManager createManager(ParkingJournal journal) {
+        return new ParkingManager(2, 2, new LockFreeAdmissionEngine(2), mock(ParkingLogger.class), gatePool,
+                Integer.MAX_VALUE, journal);
+    }
+
+    private ParkingManager createCompactManager(ParkingJournal journal) {
+        return new ParkingManager(2, 2, new LockFreeAdmissionEngine(2, new CompactVehicleRegistry(2, 16)),
+                mock(ParkingLogger.class), gatePool, Integer.MAX_VALUE, journal);
+    }
+
+    private static JournalEntry entry(JournalEntry.Type type, String vehicleId) {
+        return JournalEntry.builder().type(type).vehicleId(vehicleId).build();
+    }
+
+    private static List<JournalEntry> replay(Path directory) throws IOException {
+        List<JournalEntry> replayed = Lists.newArrayList();
+        try (FileParkingJournal journal = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.replay(vehicleRecord -> fail(), replayed::add);
+        }
+
+        return replayed;
+    }
+}
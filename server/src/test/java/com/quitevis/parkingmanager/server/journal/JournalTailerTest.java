@@ -0,0 +1,151 @@
+package com.quitevis.parkingmanager.server.journal;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class JournalTailerTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void pollShouldReturnTheEntriesWrittenSinceThePreviousPoll() throws Exception {
+        //Small segments, so that the tailer has to move from one to the next
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 200);
+             JournalTailer tailer = new JournalTailer(directory)) {
+            List<JournalEntry> polled = Lists.newArrayList();
+            assertThat(tailer.readSnapshot(vehicleRecord -> fail()), is(0L));
+            assertThat(tailer.poll(polled::add), is(0));
+
+            commit(leader, 0, 3);
+            assertThat(tailer.poll(polled::add), is(3));
+            commit(leader, 3, 20);
+            assertThat(tailer.poll(polled::add), is(17));
+            assertThat(tailer.poll(polled::add), is(0));
+
+            assertThat(vehicleIds(polled), is(expectedVehicleIds(0, 20)));
+            assertThat(tailer.getLastSequence(), is(20L));
+        }
+    }
+
+    @Test
+    public void readSnapshotShouldHaveThePollStartRightAfterTheSnapshot() throws Exception {
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024);
+             JournalTailer tailer = new JournalTailer(directory)) {
+            commit(leader, 0, 5);
+            leader.snapshot(() -> Lists.newArrayList(
+                    VehicleRecord.builder().vehicleId("P1").build(),
+                    VehicleRecord.builder().vehicleId("P2").build()));
+            commit(leader, 5, 7);
+
+            List<VehicleRecord> parked = Lists.newArrayList();
+            List<JournalEntry> polled = Lists.newArrayList();
+            assertThat(tailer.readSnapshot(parked::add), is(5L));
+            assertThat(tailer.poll(polled::add), is(2));
+
+            assertThat(parked.size(), is(2));
+            assertThat(vehicleIds(polled), is(expectedVehicleIds(5, 7)));
+        }
+    }
+
+    @Test
+    public void pollShouldThrowWhenTheNextEntryWasDeletedAfterASnapshot() throws Exception {
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 100);
+             JournalTailer tailer = new JournalTailer(directory)) {
+            tailer.readSnapshot(vehicleRecord -> fail());
+            commit(leader, 0, 10);
+            leader.snapshot(Lists::newArrayList);
+
+            try {
+                tailer.poll(entry -> fail());
+                fail();
+            } catch (JournalGapException e) {
+                //Expected, the segments before the snapshot are gone
+            }
+
+            assertThat(tailer.readSnapshot(vehicleRecord -> fail()), is(10L));
+            commit(leader, 10, 12);
+            List<JournalEntry> polled = Lists.newArrayList();
+            assertThat(tailer.poll(polled::add), is(2));
+            assertThat(vehicleIds(polled), is(expectedVehicleIds(10, 12)));
+        }
+    }
+
+    @Test
+    public void replicaShouldOnlyTakeCommitsOnceItIsPromoted() throws Exception {
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            commit(leader, 0, 3);
+        }
+
+        ReplicaJournal replica = new ReplicaJournal(new JournalTailer(directory),
+                () -> new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024));
+        List<JournalEntry> replayed = Lists.newArrayList();
+        replica.replay(vehicleRecord -> fail(), replayed::add);
+        assertThat(replayed.size(), is(3));
+
+        try {
+            replica.commit(entries -> fail());
+            fail();
+        } catch (IllegalStateException e) {
+            //Expected, a replica is read-only
+        }
+
+        replica.promote();
+        replica.commit(entries -> entries.add(entry("V3"))).get();
+        replica.close();
+
+        List<JournalEntry> written = Lists.newArrayList();
+        try (FileParkingJournal journal =
+                     new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.replay(vehicleRecord -> fail(), written::add);
+        }
+
+        assertThat(vehicleIds(written), is(expectedVehicleIds(0, 4)));
+    }
+
+    private static void commit(FileParkingJournal journal, int from, int to) throws Exception {
+        for (int x = from; x < to; ++x) {
+            JournalEntry entry = entry("V" + x);
+            journal.commit(entries -> entries.add(entry)).get();
+        }
+    }
+
+    private static JournalEntry entry(String vehicleId) {
+        return JournalEntry.builder().type(JournalEntry.Type.ENTERED).vehicleId(vehicleId).build();
+    }
+
+    private static List<String> vehicleIds(List<JournalEntry> entries) {
+        return entries.stream().map(JournalEntry::getVehicleId).collect(Collectors.toList());
+    }
+
+    private static List<String> expectedVehicleIds(int from, int to) {
+        List<String> vehicleIds = Lists.newArrayList();
+        for (int x = from; x < to; ++x) {
+            vehicleIds.add("V" + x);
+        }
+
+        return vehicleIds;
+    }
+}
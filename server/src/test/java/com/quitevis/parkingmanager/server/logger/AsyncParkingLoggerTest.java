@@ -0,0 +1,104 @@
+package com.quitevis.parkingmanager.server.logger;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class AsyncParkingLoggerTest {
+
+    @Test
+    public void eventsShouldBeWrittenInOrderWithTheirTime() {
+        List<String> written = Collections.synchronizedList(Lists.newArrayList());
+        ParkingLogger delegate = new ParkingLogger() {
+            @Override
+            public boolean log(VehicleRecord vehicleRecord, State state) {
+                throw new AssertionError("The time of the event must be passed");
+            }
+
+            @Override
+            public boolean log(VehicleRecord vehicleRecord, State state, long epochMicros) {
+                written.add(vehicleRecord.getVehicleId() + " " + state + " " + epochMicros);
+                return true;
+            }
+        };
+
+        AsyncParkingLogger logger = new AsyncParkingLogger(delegate, 16, AsyncParkingLogger.OverflowPolicy.BLOCK, 4);
+        for (int x = 0; x < 100; ++x) {
+            assertThat(logger.log(VehicleRecord.builder().vehicleId("V" + x).build(), ParkingLogger.State.PARKED, x),
+                    is(true));
+        }
+        logger.close();
+
+        assertThat(written.size(), is(100));
+        for (int x = 0; x < 100; ++x) {
+            assertThat(written.get(x), is("V" + x + " PARKED " + x));
+        }
+
+        assertThat(logger.getWrittenCount(), is(100L));
+        assertThat(logger.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void eventsShouldBeDroppedAndCountedWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ParkingLogger slowDelegate = (vehicleRecord, state) -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return true;
+        };
+
+        AsyncParkingLogger logger = new AsyncParkingLogger(slowDelegate, 2, AsyncParkingLogger.OverflowPolicy.DROP, 1);
+        VehicleRecord vehicleRecord = VehicleRecord.builder().vehicleId("A").build();
+
+        //The first event is being written, the next two fill the queue
+        logger.log(vehicleRecord, ParkingLogger.State.PARKED);
+        writing.await();
+        assertThat(logger.log(vehicleRecord, ParkingLogger.State.PARKED), is(true));
+        assertThat(logger.log(vehicleRecord, ParkingLogger.State.PARKED), is(true));
+        assertThat(logger.log(vehicleRecord, ParkingLogger.State.PARKED), is(false));
+        assertThat(logger.getDroppedCount(), is(1L));
+
+        release.countDown();
+        logger.close();
+        assertThat(logger.getWrittenCount(), is(3L));
+        assertThat(logger.log(vehicleRecord, ParkingLogger.State.PARKED), is(false));
+    }
+
+    @Test
+    public void eventsShouldBeTimedInMicroseconds() {
+        long[] epochMicros = new long[1];
+        ParkingLogger delegate = new ParkingLogger() {
+            @Override
+            public boolean log(VehicleRecord vehicleRecord, State state) {
+                throw new AssertionError("The time of the event must be passed");
+            }
+
+            @Override
+            public boolean log(VehicleRecord vehicleRecord, State state, long time) {
+                epochMicros[0] = time;
+                return true;
+            }
+        };
+
+        long before = System.currentTimeMillis();
+        AsyncParkingLogger logger = new AsyncParkingLogger(delegate, 16, AsyncParkingLogger.OverflowPolicy.BLOCK, 4);
+        assertThat(logger.log(VehicleRecord.builder().vehicleId("A").build(), ParkingLogger.State.PARKED), is(true));
+        logger.close();
+        long after = System.currentTimeMillis();
+
+        assertThat(epochMicros[0] >= before * 1000 && epochMicros[0] < (after + 1) * 1000, is(true));
+    }
+}
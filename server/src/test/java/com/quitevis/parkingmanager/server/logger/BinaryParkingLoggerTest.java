@@ -0,0 +1,139 @@
+package com.quitevis.parkingmanager.server.logger;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.eventlog.EventLogCsv;
+import com.quitevis.parkingmanager.eventlog.EventLogReader;
+import com.quitevis.parkingmanager.eventlog.EventType;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class BinaryParkingLoggerTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("events");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void eventsShouldBeReadBackFromTheFiles() throws IOException {
+        UUID ticketId = UUID.randomUUID();
+        try (BinaryParkingLogger logger = new BinaryParkingLogger(directory, 1024)) {
+            for (int x = 0; x < 100; ++x) {
+                VehicleRecord vehicleRecord = VehicleRecord.builder()
+                        .vehicleId("V" + (x % 10))
+                        .entryGate(1)
+                        .exitGate(2)
+                        .ticketId(ticketId)
+                        .build();
+                ParkingLogger.State state = x % 2 == 0 ? ParkingLogger.State.PARKED : ParkingLogger.State.EXITED_PARKING;
+                assertThat(logger.log(vehicleRecord, state, (1000L + x) * 1000), is(true));
+            }
+        }
+
+        List<Path> files = files();
+        assertThat(files.size() > 1, is(true));
+
+        int count = 0;
+        for (Path file : files) {
+            try (EventLogReader reader = new EventLogReader(file)) {
+                while (reader.next()) {
+                    EventType type = count % 2 == 0 ? EventType.PARKED : EventType.EXITED_PARKING;
+                    assertThat(reader.getType(), is(type));
+                    assertThat(reader.getEpochMicros(), is((1000L + count) * 1000));
+                    assertThat(reader.getGate(), is(type == EventType.PARKED ? 1 : 2));
+                    assertThat(reader.getTicketId(), is(ticketId));
+                    assertThat(reader.getVehicleId(), is("V" + (count % 10)));
+                    ++count;
+                }
+            }
+        }
+
+        assertThat(count, is(100));
+    }
+
+    @Test
+    public void gateDatesShouldBeTheTimesOfTheEnterAndExitEvents() throws IOException {
+        VehicleRecord vehicleRecord = VehicleRecord.builder()
+                .vehicleId("A")
+                .dateEntered(LocalDateTime.parse("2016-02-01T10:15:30.123456789"))
+                .dateExited(LocalDateTime.parse("2016-02-01T12:00:00.000001"))
+                .build();
+        try (BinaryParkingLogger logger = new BinaryParkingLogger(directory, 1024)) {
+            logger.log(vehicleRecord, ParkingLogger.State.PARKED, 1454400000000000L);
+            logger.log(vehicleRecord, ParkingLogger.State.EXITED_PARKING, 1454400000000000L);
+            logger.log(vehicleRecord, ParkingLogger.State.UNABLE_TO_PARK, 1454400000000000L);
+        }
+
+        try (EventLogReader reader = new EventLogReader(files().get(0))) {
+            assertThat(reader.next(), is(true));
+            assertThat(reader.getEpochMicros(), is(1454321730123456L));
+            assertThat(reader.next(), is(true));
+            assertThat(reader.getEpochMicros(), is(1454328000000001L));
+            assertThat(reader.next(), is(true));
+            assertThat(reader.getEpochMicros(), is(1454400000000000L));
+        }
+    }
+
+    @Test
+    public void incompleteEventAtTheEndShouldBeIgnored() throws IOException {
+        try (BinaryParkingLogger logger = new BinaryParkingLogger(directory, 1024)) {
+            logger.log(VehicleRecord.builder().vehicleId("A").build(), ParkingLogger.State.PARKED, 0);
+            logger.log(VehicleRecord.builder().vehicleId("B").build(), ParkingLogger.State.PARKED, 0);
+        }
+
+        //Simulate a crash in the middle of a write
+        Path file = files().get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+        try (EventLogReader reader = new EventLogReader(file)) {
+            assertThat(reader.next(), is(true));
+            assertThat(reader.getVehicleId(), is("A"));
+            assertThat(reader.getTicketId(), is(nullValue()));
+            assertThat(reader.next(), is(false));
+        }
+    }
+
+    @Test
+    public void eventsShouldBeConvertedToCsv() throws IOException {
+        UUID ticketId = UUID.randomUUID();
+        try (BinaryParkingLogger logger = new BinaryParkingLogger(directory, 1024 * 1024)) {
+            logger.log(VehicleRecord.builder().vehicleId("ABC123").entryGate(3).ticketId(ticketId).build(),
+                    ParkingLogger.State.PARKED, 1454321730123000L);
+            logger.log(VehicleRecord.builder().vehicleId("A,\"B\"").build(), ParkingLogger.State.UNABLE_TO_PARK, 0);
+        }
+
+        StringWriter csv = new StringWriter();
+        assertThat(EventLogCsv.convert(files().get(0), csv), is(2L));
+        assertThat(csv.toString(),
+                is("PARKED,1454321730123000,2016-02-01T10:15:30.123Z,3," + ticketId + ",ABC123\n"
+                        + "UNABLE_TO_PARK,0,1970-01-01T00:00:00Z,0,,\"A,\"\"B\"\"\"\n"));
+    }
+
+    private List<Path> files() throws IOException {
+        return Files.list(directory).sorted().collect(Collectors.toCollection(Lists::newArrayList));
+    }
+}
@@ -0,0 +1,140 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class CompactVehicleRegistryTest {
+
+    @Test
+    public void putIfAbsentShouldRejectVehicleWithSameId() {
+        CompactVehicleRegistry registry = new CompactVehicleRegistry(4, 16);
+
+        assertThat(registry.putIfAbsent(VehicleRecord.builder().vehicleId("ABC123").build()), is(true));
+        assertThat(registry.putIfAbsent(VehicleRecord.builder().vehicleId("ABC123").build()), is(false));
+        assertThat(registry.size(), is(1));
+    }
+
+    @Test
+    public void removeShouldReturnTheRegisteredGateTicketAndDate() {
+        CompactVehicleRegistry registry = new CompactVehicleRegistry(4, 16);
+        UUID ticketId = UUID.randomUUID();
+        LocalDateTime dateEntered = LocalDateTime.of(2016, 2, 1, 10, 15, 30, 123000000);
+
+        registry.putIfAbsent(VehicleRecord.builder().vehicleId("ABC123").entryGate(3).ticketId(ticketId)
+                .dateEntered(dateEntered).build());
+        VehicleRecord removed = registry.remove(VehicleRecord.builder().vehicleId("ABC123").build());
+
+        assertThat(removed.getVehicleId(), is("ABC123"));
+        assertThat(removed.getEntryGate(), is(3));
+        assertThat(removed.getTicketId(), is(ticketId));
+        assertThat(removed.getDateEntered(), is(dateEntered));
+        assertThat(registry.contains(removed), is(false));
+        assertThat(registry.remove(removed), nullValue());
+    }
+
+    @Test
+    public void removeWithATicketShouldOnlyRemoveTheVehicleHoldingIt() {
+        CompactVehicleRegistry registry = new CompactVehicleRegistry(4, 16);
+        UUID ticketId = UUID.randomUUID();
+        registry.putIfAbsent(VehicleRecord.builder().vehicleId("ABC123").ticketId(ticketId).build());
+        registry.putIfAbsent(VehicleRecord.builder().vehicleId("XYZ789").build());
+
+        assertThat(registry.remove(VehicleRecord.builder().vehicleId("ABC123").build(), UUID.randomUUID()),
+                is(nullValue()));
+        assertThat(registry.remove(VehicleRecord.builder().vehicleId("XYZ789").build(), ticketId), is(nullValue()));
+        assertThat(registry.size(), is(2));
+
+        VehicleRecord removed = registry.remove(VehicleRecord.builder().vehicleId("ABC123").build(), ticketId);
+        assertThat(removed.getTicketId(), is(ticketId));
+        assertThat(registry.size(), is(1));
+    }
+
+    @Test
+    public void registryShouldGrowAndKeepEveryVehicle() {
+        CompactVehicleRegistry registry = new CompactVehicleRegistry(1, 8);
+        int count = 10000;
+
+        for (int x = 0; x < count; ++x) {
+            assertThat(registry.putIfAbsent(VehicleRecord.builder().vehicleId("V" + x).entryGate(x % 7).build()),
+                    is(true));
+        }
+
+        //Remove every other vehicle to leave tombstones behind, then fill the table again
+        for (int x = 0; x < count; x += 2) {
+            assertThat(registry.remove(VehicleRecord.builder().vehicleId("V" + x).build()).getVehicleId(), is("V" + x));
+        }
+
+        for (int x = count; x < count * 2; ++x) {
+            assertThat(registry.putIfAbsent(VehicleRecord.builder().vehicleId("V" + x).build()), is(true));
+        }
+
+        Set<VehicleRecord> snapshot = registry.snapshot();
+        assertThat(registry.size(), is(count + count / 2));
+        assertThat(snapshot.size(), is(count + count / 2));
+        assertThat(snapshot.contains(VehicleRecord.builder().vehicleId("V1").build()), is(true));
+        assertThat(snapshot.contains(VehicleRecord.builder().vehicleId("V0").build()), is(false));
+        //The gates were moved along with the vehicles by every rehash
+        for (int x = 1; x < count; x += 2) {
+            assertThat(registry.remove(VehicleRecord.builder().vehicleId("V" + x).build()).getEntryGate(), is(x % 7));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putIfAbsentShouldRejectTooLongVehicleId() {
+        new CompactVehicleRegistry(4, 4).putIfAbsent(VehicleRecord.builder().vehicleId("ABC123").build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putIfAbsentShouldRejectNonAsciiVehicleId() {
+        new CompactVehicleRegistry(4, 16).putIfAbsent(VehicleRecord.builder().vehicleId("\u00C4BC123").build());
+    }
+
+    @Test
+    public void lockFreeAdmissionEngineShouldWorkOnCompactRegistry() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(2, new CompactVehicleRegistry(2, 16));
+        engine.admit(0, VehicleRecord.builder().vehicleId("ABC123").build());
+        engine.admit(0, VehicleRecord.builder().vehicleId("XYZ789").build());
+        engine.release(VehicleRecord.builder().vehicleId("ABC123").build());
+
+        assertThat(engine.getParkedCount(), is(1));
+        assertThat(engine.getParkedVehicles().iterator().next().getVehicleId(), is("XYZ789"));
+    }
+
+    @Test
+    public void iteratorShouldReturnTheVehiclesThatStayRegisteredWhileTheTableGrows() {
+        CompactVehicleRegistry registry = new CompactVehicleRegistry(1, 8);
+        int count = 5000;
+        for (int x = 0; x < count; ++x) {
+            registry.putIfAbsent(VehicleRecord.builder().vehicleId("V" + x).build());
+        }
+
+        Set<String> seen = new HashSet<>();
+        Iterator<VehicleRecord> iterator = registry.iterator();
+        for (int x = 0; x < 10; ++x) {
+            assertThat(seen.add(iterator.next().getVehicleId()), is(true));
+        }
+
+        //Enough new vehicles to rebuild the table while the iterator is half way
+        for (int x = count; x < count * 4; ++x) {
+            registry.putIfAbsent(VehicleRecord.builder().vehicleId("V" + x).build());
+        }
+
+        while (iterator.hasNext()) {
+            assertThat(seen.add(iterator.next().getVehicleId()), is(true));
+        }
+
+        for (int x = 0; x < count; ++x) {
+            assertThat(seen.contains("V" + x), is(true));
+        }
+    }
+}
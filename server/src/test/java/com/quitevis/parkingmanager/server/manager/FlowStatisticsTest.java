@@ -0,0 +1,77 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class FlowStatisticsTest {
+
+    @Test
+    public void samplesShouldHoldTheEntriesAndExitsOfEachSecond() {
+        AtomicInteger occupancy = new AtomicInteger();
+        FlowStatistics statistics = new FlowStatistics(2, 1, occupancy::get);
+        statistics.sample(100);
+
+        statistics.entered(0);
+        statistics.entered(1);
+        statistics.entered(1);
+        occupancy.set(3);
+        statistics.sample(101);
+
+        statistics.exited(0);
+        occupancy.set(2);
+        statistics.sample(102);
+        //Same second again
+        statistics.entered(0);
+        statistics.sample(102);
+
+        List<FlowSample> samples = statistics.getSamples(FlowStatistics.Resolution.SECOND, 10);
+        assertThat(samples.size(), is(2));
+        assertThat(samples.get(0).getEpochSecond(), is(100L));
+        assertThat(samples.get(0).getOccupancy(), is(3));
+        assertThat(samples.get(0).getEntries(), is(new long[] {1, 2}));
+        assertThat(samples.get(0).getExits(), is(new long[] {0}));
+        assertThat(samples.get(1).getEpochSecond(), is(101L));
+        assertThat(samples.get(1).getOccupancy(), is(2));
+        assertThat(samples.get(1).getEntries(), is(new long[] {0, 0}));
+        assertThat(samples.get(1).getExits(), is(new long[] {1}));
+
+        assertThat(statistics.getSamples(FlowStatistics.Resolution.SECOND, 1).get(0).getEpochSecond(), is(101L));
+    }
+
+    @Test
+    public void minutesShouldAddUpTheirSeconds() {
+        FlowStatistics statistics = new FlowStatistics(1, 1, () -> 0);
+        for (long second = 0; second < 180; ++second) {
+            statistics.sample(second);
+            statistics.entered(0);
+        }
+
+        statistics.sample(180);
+
+        List<FlowSample> samples = statistics.getSamples(FlowStatistics.Resolution.MINUTE, 10);
+        assertThat(samples.size(), is(3));
+        for (int x = 0; x < 3; ++x) {
+            assertThat(samples.get(x).getEpochSecond(), is(x * 60L));
+            assertThat(samples.get(x).getEntries(), is(new long[] {60}));
+        }
+    }
+
+    @Test
+    public void onlyTheLastHourOfSecondsShouldBeKept() {
+        FlowStatistics statistics = new FlowStatistics(1, 1, () -> 0);
+        for (long second = 0; second < 10000; ++second) {
+            statistics.entered(0);
+            statistics.sample(second);
+        }
+
+        List<FlowSample> samples = statistics.getSamples(FlowStatistics.Resolution.SECOND, Integer.MAX_VALUE);
+        assertThat(samples.size(), is(FlowStatistics.Resolution.SECOND.getSlots() - 1));
+        assertThat(samples.get(samples.size() - 1).getEpochSecond(), is(9998L));
+        assertThat(samples.get(0).getEntries(), is(new long[] {1}));
+    }
+}
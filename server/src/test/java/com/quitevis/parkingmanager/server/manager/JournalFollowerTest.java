@@ -0,0 +1,222 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.journal.FileParkingJournal;
+import com.quitevis.parkingmanager.server.journal.JournalEntry;
+import com.quitevis.parkingmanager.server.journal.JournalTailer;
+import com.quitevis.parkingmanager.server.journal.ReplicaJournal;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+public class JournalFollowerTest {
+    private Path directory;
+    private ExecutorService gatePool;
+    private ReplicaJournal replicaJournal;
+    private ParkingManager replica;
+    private JournalFollower follower;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        gatePool = ParkingManager.createGatePool(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+
+        if (replica != null) {
+            replica.close();
+        }
+
+        if (replicaJournal != null) {
+            replicaJournal.close();
+        }
+
+        gatePool.shutdown();
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void pollShouldApplyTheChangesOfTheLeaderAndMeasureTheLag() throws Exception {
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            startReplica(new LockFreeAdmissionEngine(10));
+            LocalDateTime made = LocalDateTime.now(ZoneOffset.UTC).minusSeconds(5).truncatedTo(ChronoUnit.MILLIS);
+            VehicleRecord v1 = enter(leader, "V1", 0, made);
+            enter(leader, "V2", 1, made);
+            exit(leader, "V2", 0, made);
+
+            follower.poll();
+
+            assertThat(follower.getSequence(), is(3L));
+            assertThat(vehicleIds(replica.getParkedVehicleIds()), is(Sets.newHashSet("V1")));
+            assertThat(replica.getInfo().getCurrentCapacity(), is(1));
+            VehicleRecord parked = replica.getParkedVehicleIds().iterator().next();
+            assertThat(parked.getEntryGate(), is(v1.getEntryGate()));
+            assertThat(parked.getTicketId(), is(v1.getTicketId()));
+            assertThat(parked.getDateEntered(), is(made));
+
+            //The changes were made 5 s before they were applied
+            assertThat(follower.getLagMillis(), greaterThanOrEqualTo(5000L));
+            assertThat(follower.getLagMillis(), lessThan(60000L));
+            assertThat(follower.getMillisSinceLastPoll(), lessThan(5000L));
+
+            //An idle leader leaves the lag where it was
+            long lagMillis = follower.getLagMillis();
+            follower.poll();
+            assertThat(follower.getSequence(), is(3L));
+            assertThat(follower.getLagMillis(), is(lagMillis));
+        }
+    }
+
+    @Test
+    public void replicaBehindTheSnapshotsShouldStartOverWithoutReleasingTheCarsStillParked() throws Exception {
+        //One entry per segment, so that the snapshot deletes the segment the replica is reading
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1)) {
+            LockFreeAdmissionEngine engine = spy(new LockFreeAdmissionEngine(10));
+            List<String> released = Lists.newArrayList();
+            doAnswer(invocation -> {
+                released.add(((VehicleRecord) invocation.getArguments()[0]).getVehicleId());
+                return invocation.callRealMethod();
+            }).when(engine).release(any(VehicleRecord.class));
+
+            startReplica(engine);
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+            enter(leader, "V1", 0, now);
+            VehicleRecord v2 = enter(leader, "V2", 1, now);
+            follower.poll();
+            assertThat(follower.getSequence(), is(2L));
+
+            //V1 leaves and V3 enters, then the snapshot deletes the segments the replica has not read
+            exit(leader, "V1", 0, now);
+            VehicleRecord v3 = enter(leader, "V3", 0, now);
+            leader.snapshot(() -> Lists.newArrayList(v2, v3));
+            enter(leader, "V4", 1, now);
+
+            follower.poll();
+
+            assertThat(follower.getSequence(), is(5L));
+            assertThat(vehicleIds(replica.getParkedVehicleIds()), is(Sets.newHashSet("V2", "V3", "V4")));
+            assertThat(replica.getInfo().getCurrentCapacity(), is(3));
+            //V2 is on the same stay, it was never taken out of the lot
+            assertThat(released, is(Lists.newArrayList("V1")));
+        }
+    }
+
+    @Test
+    public void promoteShouldApplyWhatIsLeftAndStopThePolls() throws Exception {
+        try (FileParkingJournal leader = new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+            enter(leader, "V1", 0, now);
+            startReplica(new LockFreeAdmissionEngine(100));
+            assertThat(replica.getCurrentCapacity(), is(1));
+
+            //The replica keeps polling while the leader goes on and goes down
+            follower.start();
+            for (int x = 2; x <= 50; ++x) {
+                enter(leader, "V" + x, x % 2, now);
+            }
+
+            leader.close();
+            follower.promote();
+
+            assertThat(follower.isPromoted(), is(true));
+            assertThat(follower.getSequence(), is(50L));
+            assertThat(replica.getCurrentCapacity(), is(50));
+        }
+
+        //The promoted replica takes the cars, and polls no longer apply anything
+        replica.enter(0, VehicleRecord.builder().vehicleId("V51").build()).get();
+        follower.poll();
+        assertThat(replica.getCurrentCapacity(), is(51));
+
+        try {
+            follower.promote();
+            fail();
+        } catch (IllegalStateException e) {
+            //Expected, a server is promoted only once
+        }
+
+        follower.close();
+        follower = null;
+        replica.close();
+        replica = null;
+        replicaJournal.close();
+        replicaJournal = null;
+
+        List<JournalEntry> written = Lists.newArrayList();
+        try (FileParkingJournal journal =
+                     new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024)) {
+            journal.replay(vehicleRecord -> fail(), written::add);
+        }
+
+        assertThat(written.size(), is(51));
+        assertThat(written.get(50).getVehicleId(), is("V51"));
+    }
+
+    private void startReplica(AdmissionEngine engine) throws IOException {
+        replicaJournal = new ReplicaJournal(new JournalTailer(directory),
+                () -> new FileParkingJournal(directory, FileParkingJournal.SyncMode.SYNC, 0, 1024));
+        replica = new ParkingManager(2, 2, engine, mock(ParkingLogger.class), gatePool, Integer.MAX_VALUE,
+                replicaJournal);
+        replica.recover();
+        follower = new JournalFollower(replica, replicaJournal, 1);
+    }
+
+    private static VehicleRecord enter(FileParkingJournal leader, String vehicleId, int gate, LocalDateTime date)
+            throws Exception {
+        VehicleRecord vehicleRecord = VehicleRecord.builder()
+                .vehicleId(vehicleId)
+                .entryGate(gate)
+                .ticketId(UUID.randomUUID())
+                .dateEntered(date)
+                .build();
+        JournalEntry entry = JournalEntry.entered(gate, vehicleRecord);
+        leader.commit(entries -> entries.add(entry)).get();
+        return vehicleRecord;
+    }
+
+    private static void exit(FileParkingJournal leader, String vehicleId, int gate, LocalDateTime date)
+            throws Exception {
+        JournalEntry entry = JournalEntry.builder()
+                .type(JournalEntry.Type.EXITED)
+                .gate(gate)
+                .vehicleId(vehicleId)
+                .date(date)
+                .build();
+        leader.commit(entries -> entries.add(entry)).get();
+    }
+
+    private static Set<String> vehicleIds(Set<VehicleRecord> vehicleRecords) {
+        return vehicleRecords.stream().map(VehicleRecord::getVehicleId).collect(Collectors.toSet());
+    }
+}
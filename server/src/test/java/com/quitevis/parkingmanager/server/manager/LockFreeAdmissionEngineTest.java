@@ -0,0 +1,168 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class LockFreeAdmissionEngineTest {
+
+    @Test
+    public void admitAndReleaseShouldResultInNoVehiclesParked() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(1);
+        VehicleRecord vehicleRecord = VehicleRecord.builder().vehicleId("ABC123").build();
+
+        engine.admit(0, vehicleRecord);
+        assertThat(engine.getCapacityLeft(), is(0));
+        engine.release(vehicleRecord);
+        assertThat(engine.getCapacityLeft(), is(1));
+        assertThat(engine.getParkedVehicles().isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void admitWhenFullThrowsException() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(1);
+        engine.admit(0, VehicleRecord.builder().vehicleId("ABC123").build());
+        engine.admit(0, VehicleRecord.builder().vehicleId("XYZ789").build());
+    }
+
+    @Test
+    public void admitWithSameVehicleShouldThrowExceptionAndKeepTheSlot() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(2);
+        engine.admit(0, VehicleRecord.builder().vehicleId("ABC123").build());
+
+        try {
+            engine.admit(0, VehicleRecord.builder().vehicleId("ABC123").build());
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expect exception
+        }
+
+        assertThat(engine.getParkedCount(), is(1));
+    }
+
+    @Test
+    public void admitAllShouldOnlyReserveSlotsForTheVehiclesNotParkedYet() {
+        List<Integer> capacityLeft = Lists.newArrayList();
+        LockFreeAdmissionEngine[] engine = new LockFreeAdmissionEngine[1];
+        engine[0] = new LockFreeAdmissionEngine(10, new ConcurrentVehicleRegistry() {
+            @Override
+            public boolean putIfAbsent(VehicleRecord vehicleRecord) {
+                //What the other gates see while the batch is being registered
+                capacityLeft.add(engine[0].getCapacityLeft());
+                return super.putIfAbsent(vehicleRecord);
+            }
+        });
+
+        VehicleRecord a = VehicleRecord.builder().vehicleId("A").build();
+        VehicleRecord b = VehicleRecord.builder().vehicleId("B").build();
+        engine[0].admit(0, a);
+        engine[0].admit(0, b);
+        capacityLeft.clear();
+
+        List<RuntimeException> errors = engine[0].admitAll(0, Lists.newArrayList(
+                a, VehicleRecord.builder().vehicleId("C").build(), b));
+
+        assertThat(errors.get(0) instanceof IllegalArgumentException, is(true));
+        assertThat(errors.get(1) == null, is(true));
+        assertThat(errors.get(2) instanceof IllegalArgumentException, is(true));
+        //A and B did not hold a slot while C was registered
+        assertThat(capacityLeft, is(Lists.newArrayList(7)));
+        assertThat(engine[0].getParkedCount(), is(3));
+    }
+
+    @Test
+    public void admitAllShouldGiveBackTheSlotOfAVehicleTwiceInTheBatch() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(2);
+        List<RuntimeException> errors = engine.admitAll(0, Lists.newArrayList(
+                VehicleRecord.builder().vehicleId("A").build(), VehicleRecord.builder().vehicleId("A").build()));
+
+        assertThat(errors.get(0) == null, is(true));
+        assertThat(errors.get(1) instanceof IllegalArgumentException, is(true));
+        assertThat(engine.getParkedCount(), is(1));
+        assertThat(engine.getCapacityLeft(), is(1));
+    }
+
+    @Test
+    public void releaseWithAnotherTicketShouldLeaveTheVehicleInItsSlot() {
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(1);
+        UUID ticketId = UUID.randomUUID();
+        engine.admit(0, VehicleRecord.builder().vehicleId("ABC123").ticketId(ticketId).build());
+
+        try {
+            engine.release(VehicleRecord.builder().vehicleId("ABC123").build(), UUID.randomUUID());
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expect exception, the ticket is from another stay
+        }
+
+        //The slot was never freed, so no other gate could have taken it
+        assertThat(engine.getCapacityLeft(), is(0));
+        assertThat(engine.release(VehicleRecord.builder().vehicleId("ABC123").build(), ticketId).getTicketId(),
+                is(ticketId));
+        assertThat(engine.getCapacityLeft(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseWithNoVehicleParkedShouldThrowException() {
+        new LockFreeAdmissionEngine(1).release(VehicleRecord.builder().vehicleId("ABC123").build());
+    }
+
+    @Test
+    public void concurrentAdmitAndReleaseShouldNotViolateInvariants() throws InterruptedException {
+        int capacity = 50;
+        int threads = 8;
+        int iterations = 10000;
+        LockFreeAdmissionEngine engine = new LockFreeAdmissionEngine(capacity);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger violations = new AtomicInteger();
+        List<VehicleRecord> vehicleRecords = Lists.newArrayList();
+
+        //Fewer vehicles than attempts so that the threads fight over the same vehicles and over the last slots
+        for (int x = 0; x < capacity * 2; ++x) {
+            vehicleRecords.add(VehicleRecord.builder().vehicleId("V" + x).build());
+        }
+
+        for (int t = 0; t < threads; ++t) {
+            int offset = t;
+            executor.submit(() -> {
+                start.await();
+                for (int x = 0; x < iterations; ++x) {
+                    VehicleRecord vehicleRecord = vehicleRecords.get((x * 7 + offset) % vehicleRecords.size());
+                    try {
+                        engine.admit(0, vehicleRecord);
+                        engine.release(vehicleRecord);
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        //Expected when the lot is full or another thread got the same vehicle first
+                    }
+
+                    int parked = engine.getParkedCount();
+                    if (parked < 0 || parked > capacity) {
+                        violations.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertThat(violations.get(), is(0));
+        assertThat(engine.getParkedCount(), is(0));
+        assertThat(engine.getCapacityLeft(), is(capacity));
+    }
+}
@@ -0,0 +1,128 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class ParkingLotsTest {
+    private Path directory;
+    private ExecutorService gatePool;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lots");
+        gatePool = ParkingManager.createGatePool(2);
+    }
+
+    @After
+    public void tearDown() {
+        gatePool.shutdown();
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void loadShouldCreateALotPerConfigFile() throws IOException, ExecutionException, InterruptedException {
+        writeConfig("north.properties", "parking.max.slot = 1", "parking.entry.count = 1", "parking.exit.count = 1");
+        writeConfig("south.properties", "parking.max.slot = 3", "parking.entry.count = 2", "parking.exit.count = 1",
+                "parking.admission.engine = lockfree");
+        writeConfig("not a lot.properties", "parking.max.slot = 1");
+        writeConfig("readme.txt", "not a config");
+
+        try (ParkingLots parkingLots = ParkingLots.load(directory, gatePool, mock(ParkingLogger.class))) {
+            assertThat(Lists.newArrayList(parkingLots.getLotIds()), is(Lists.newArrayList("north", "south")));
+            assertThat(parkingLots.get("east"), is(nullValue()));
+
+            ParkingManager north = parkingLots.get("north");
+            ParkingManager south = parkingLots.get("south");
+            assertThat(north.getMaxCapacity(), is(1));
+            assertThat(south.getMaxCapacity(), is(3));
+            assertThat(south.getEntryCount(), is(2));
+
+            //The lots are independent, the same car can park in both
+            VehicleRecord vehicleRecord = VehicleRecord.builder().vehicleId("ABC-123").build();
+            north.enter(0, vehicleRecord).get();
+            south.enter(1, VehicleRecord.builder().vehicleId("ABC-123").build()).get();
+            assertThat(north.getCapacityLeft(), is(0));
+            assertThat(south.getCapacityLeft(), is(2));
+        }
+    }
+
+    @Test
+    public void hostedLotsShouldOnlyCountTheGateTotals() throws IOException, ExecutionException, InterruptedException {
+        writeConfig("lot.properties", "parking.max.slot = 2", "parking.entry.count = 1", "parking.exit.count = 1");
+
+        try (ParkingLots parkingLots = ParkingLots.load(directory, gatePool, mock(ParkingLogger.class))) {
+            ParkingManager parkingManager = parkingLots.get("lot");
+            parkingManager.enter(0, VehicleRecord.builder().vehicleId("ABC-123").build()).get();
+
+            FlowStatistics flowStatistics = parkingManager.getFlowStatistics();
+            flowStatistics.sample(1);
+            flowStatistics.sample(2);
+            assertThat(flowStatistics.getEntryTotal(0), is(1L));
+            assertThat(flowStatistics.getSamples(FlowStatistics.Resolution.SECOND, 10).isEmpty(), is(true));
+            assertThat(parkingManager.getGateLatencies().getGateCount(GateLatencies.Direction.ENTRY), is(0));
+        }
+    }
+
+    @Test
+    public void loadShouldNameTheFileMissingARequiredKey() throws IOException {
+        writeConfig("north.properties", "parking.max.slot = 1", "parking.entry.count = 1");
+
+        try {
+            ParkingLots.load(directory, gatePool, mock(ParkingLogger.class));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().contains("north.properties"), is(true));
+            assertThat(e.getMessage().contains("parking.exit.count is missing"), is(true));
+        }
+    }
+
+    @Test
+    public void loadShouldCloseTheLotsAlreadyCreatedWhenALotFails() throws IOException {
+        for (String lotId : Lists.newArrayList("a", "b", "c")) {
+            writeConfig(lotId + ".properties", "parking.max.slot = 1", "parking.entry.count = 1",
+                    "parking.exit.count = 1", "parking.journal.sync = group",
+                    "parking.journal.dir = " + directory.resolve(lotId + "-journal"));
+        }
+
+        //The lots are created in the order of their ids, so z fails once the others have their journal open
+        writeConfig("z.properties", "parking.max.slot = many", "parking.entry.count = 1", "parking.exit.count = 1");
+        long flushers = countFlushers();
+
+        try {
+            ParkingLots.load(directory, gatePool, mock(ParkingLogger.class));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().contains("z.properties"), is(true));
+        }
+
+        assertThat(countFlushers(), is(flushers));
+    }
+
+    private static long countFlushers() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals("parking-journal-flusher"))
+                .count();
+    }
+
+    private void writeConfig(String fileName, String... lines) throws IOException {
+        Files.write(directory.resolve(fileName), Lists.newArrayList(lines), StandardCharsets.UTF_8);
+    }
+}
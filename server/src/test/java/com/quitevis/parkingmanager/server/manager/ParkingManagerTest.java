@@ -2,19 +2,31 @@ package com.quitevis.parkingmanager.server.manager;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
+import com.quitevis.parkingmanager.metrics.LatencyHistogram;
+import com.quitevis.parkingmanager.model.GateResult;
+import com.quitevis.parkingmanager.model.ParkingManagerInfo;
 import com.quitevis.parkingmanager.server.logger.ParkingLogger;
 import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.journal.JournalEntry;
+import com.quitevis.parkingmanager.server.journal.NoOpParkingJournal;
+import com.quitevis.parkingmanager.server.journal.ParkingJournal;
+import com.quitevis.parkingmanager.server.tariff.Tariff;
 import org.apache.commons.lang3.RandomUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -45,6 +57,26 @@ public class ParkingManagerTest {
         verify(logger).log(vehicleRecord, ParkingLogger.State.EXITED_PARKING);
     }
 
+    @Test
+    public void enterAndExitShouldRecordTheLatencyOfEachPhase() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(1, 2, 2, logger);
+        manager.enter(1, vehicleRecord).get();
+        manager.exit(0, vehicleRecord).get();
+
+        GateLatencies gateLatencies = manager.getGateLatencies();
+        for (GateLatencies.Phase phase : GateLatencies.Phase.values()) {
+            assertThat(gateLatencies.get(GateLatencies.Direction.ENTRY, phase, 0).getCount(), is(0L));
+            assertThat(gateLatencies.get(GateLatencies.Direction.ENTRY, phase, 1).getCount(), is(1L));
+            assertThat(gateLatencies.get(GateLatencies.Direction.EXIT, phase, 0).getCount(), is(1L));
+            assertThat(gateLatencies.get(GateLatencies.Direction.EXIT, phase, 1).getCount(), is(0L));
+        }
+
+        LatencyHistogram queue = gateLatencies.get(GateLatencies.Direction.ENTRY, GateLatencies.Phase.QUEUE, 1);
+        assertThat(queue.getValueAtPercentile(100) <= queue.getMaxNanos(), is(true));
+        assertThat(queue.getCountBelowPowerOfTwo(62), is(1L));
+        manager.close();
+    }
+
     @Test
     public void enterWhenFullThrowsException() throws ExecutionException, InterruptedException {
         ParkingManager manager = new ParkingManager(1, 1, 1, logger);
@@ -237,4 +269,220 @@ public class ParkingManagerTest {
         t.interrupt();
     }
 
+    @Test
+    public void enterBatchShouldAdmitAsManyVehiclesAsCapacityAllows() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(2, 1, 1, logger);
+        List<VehicleRecord> vehicleRecords = Lists.newArrayList(
+                VehicleRecord.builder().vehicleId("A").build(),
+                VehicleRecord.builder().vehicleId("A").build(),
+                VehicleRecord.builder().vehicleId("B").build(),
+                VehicleRecord.builder().vehicleId("C").build());
+
+        List<GateResult> results = manager.enterBatch(0, vehicleRecords).get();
+
+        assertThat(results.size(), is(4));
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(0).getTicketId(), is(vehicleRecords.get(0).getTicketId()));
+        //Same vehicle twice in the batch
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(results.get(2).isSuccess(), is(true));
+        //Lot is full
+        assertThat(results.get(3).isSuccess(), is(false));
+        assertThat(manager.getCapacityLeft(), is(0));
+
+        verify(logger).log(vehicleRecords.get(3), ParkingLogger.State.UNABLE_TO_PARK);
+    }
+
+    @Test
+    public void exitBatchShouldReleaseParkedVehiclesOnly() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(2, 1, 1, logger);
+        manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+
+        List<GateResult> results = manager.exitBatch(0, Lists.newArrayList(
+                VehicleRecord.builder().vehicleId("A").build(),
+                VehicleRecord.builder().vehicleId("B").build())).get();
+
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(manager.getCapacityLeft(), is(2));
+    }
+
+    @Test
+    public void exitShouldChargeTheStay() throws ExecutionException, InterruptedException {
+        Tariff tariff = (enteredEpochMillis, exitedEpochMillis) -> exitedEpochMillis >= enteredEpochMillis ? 250 : -1;
+        ExecutorService gatePool = ParkingManager.createGatePool(1);
+        ParkingManager manager = new ParkingManager(1, 1, new LockingAdmissionEngine(2), logger, gatePool,
+                Integer.MAX_VALUE, new NoOpParkingJournal(), tariff);
+        try {
+            manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+            manager.enter(0, VehicleRecord.builder().vehicleId("B").build()).get();
+
+            assertThat(manager.exit(0, VehicleRecord.builder().vehicleId("A").build()).get().getFee(), is(250L));
+            List<GateResult> results = manager.exitBatch(0, Lists.newArrayList(
+                    VehicleRecord.builder().vehicleId("B").build(),
+                    VehicleRecord.builder().vehicleId("C").build())).get();
+            assertThat(results.get(0).getFee(), is(250L));
+            assertThat(results.get(1).getFee() == null, is(true));
+        } finally {
+            manager.close();
+            gatePool.shutdown();
+        }
+    }
+
+    @Test
+    public void exitByTicketShouldReleaseTheVehicleHoldingTheTicket() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(2, 1, 1, logger);
+        VehicleRecord parked = VehicleRecord.builder().vehicleId("A").build();
+        UUID ticketId = manager.enter(0, parked).get();
+        manager.enter(0, VehicleRecord.builder().vehicleId("B").build()).get();
+
+        assertThat(ticketId, is(parked.getTicketId()));
+
+        VehicleRecord exited = manager.exitByTicket(0, ticketId).get();
+        assertThat(exited.getVehicleId(), is("A"));
+        assertThat(exited.getDateExited() != null, is(true));
+        assertThat(manager.getCapacityLeft(), is(1));
+
+        //The ticket cannot be used twice
+        try {
+            manager.exitByTicket(0, ticketId).get();
+            fail();
+        } catch (ExecutionException e) {
+            //Exception expected
+        }
+
+        assertThat(manager.getCapacityLeft(), is(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void changesThatAreNotDurableShouldBeUndone() throws ExecutionException, InterruptedException {
+        //The journal takes the first entry, then fails to write the next two
+        ParkingJournal journal = mock(ParkingJournal.class);
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("Disk full"));
+        boolean[] failing = new boolean[1];
+        when(journal.commit(any(Consumer.class))).thenAnswer(invocation -> {
+            ((Consumer<List<JournalEntry>>) invocation.getArguments()[0]).accept(Lists.newArrayList());
+            return failing[0] ? failed : CompletableFuture.<Void>completedFuture(null);
+        });
+
+        ExecutorService gatePool = ParkingManager.createGatePool(1);
+        ParkingManager manager = new ParkingManager(1, 1, new LockingAdmissionEngine(2), logger, gatePool,
+                Integer.MAX_VALUE, journal);
+        try {
+            VehicleRecord parked = VehicleRecord.builder().vehicleId("A").build();
+            UUID ticketId = manager.enter(0, parked).get();
+            failing[0] = true;
+
+            VehicleRecord rejected = VehicleRecord.builder().vehicleId("B").build();
+            try {
+                manager.enter(0, rejected).get();
+                fail();
+            } catch (ExecutionException e) {
+                //Exception expected, the entry of B is not durable
+            }
+
+            try {
+                manager.exitByTicket(0, ticketId).get();
+                fail();
+            } catch (ExecutionException e) {
+                //Exception expected, the exit of A is not durable
+            }
+
+            assertThat(manager.getCapacityLeft(), is(1));
+            assertThat(rejected.getTicketId() == null, is(true));
+            verify(logger, never()).log(rejected, ParkingLogger.State.PARKED);
+            verify(logger, never()).log(parked, ParkingLogger.State.EXITED_PARKING);
+
+            //Once the journal is back, B can park and A can still exit with its ticket
+            failing[0] = false;
+            manager.enter(0, VehicleRecord.builder().vehicleId("B").build()).get();
+            assertThat(manager.exitByTicket(0, ticketId).get().getVehicleId(), is("A"));
+            assertThat(manager.getCapacityLeft(), is(1));
+        } finally {
+            manager.close();
+            gatePool.shutdown();
+        }
+    }
+
+    @Test
+    public void exitByTicketShouldRejectTheTicketOfAnEarlierStay() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(1, 1, 1, logger);
+        UUID firstTicketId = manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+        manager.exit(0, VehicleRecord.builder().vehicleId("A").build()).get();
+        UUID secondTicketId = manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+
+        try {
+            manager.exitByTicket(0, firstTicketId).get();
+            fail();
+        } catch (ExecutionException e) {
+            //Exception expected, the car holds another ticket now
+        }
+
+        assertThat(manager.getCapacityLeft(), is(0));
+        VehicleRecord exited = manager.exitByTicket(0, secondTicketId).get();
+        assertThat(exited.getTicketId(), is(secondTicketId));
+        assertThat(manager.getCapacityLeft(), is(1));
+    }
+
+    @Test
+    public void exitByVehicleIdShouldInvalidateTheTicket() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(1, 1, 1, logger);
+        UUID ticketId = manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+        VehicleRecord exited = manager.exit(0, VehicleRecord.builder().vehicleId("A").build()).get();
+        assertThat(exited.getTicketId(), is(ticketId));
+
+        //A new car parks in the same spot, the old ticket must not let it out
+        manager.enter(0, VehicleRecord.builder().vehicleId("A").build()).get();
+        try {
+            manager.exitByTicket(0, ticketId).get();
+            fail();
+        } catch (ExecutionException e) {
+            //Exception expected
+        }
+
+        assertThat(manager.getCapacityLeft(), is(0));
+    }
+
+    @Test
+    public void parkedVehicleIdPagesShouldWalkTheWholeLotInOrder() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(10, 1, 1, logger);
+        List<VehicleRecord> vehicleRecords = Lists.newArrayList();
+        for (String vehicleId : new String[] {"E", "B", "G", "A", "D", "C", "F"}) {
+            vehicleRecords.add(VehicleRecord.builder().vehicleId(vehicleId).build());
+        }
+
+        manager.enterBatch(0, vehicleRecords).get();
+
+        assertThat(manager.getParkedVehicleIdPage(null, 3), is(Lists.newArrayList("A", "B", "C")));
+        assertThat(manager.getParkedVehicleIdPage("C", 3), is(Lists.newArrayList("D", "E", "F")));
+
+        //A car leaving before the cursor does not shift the next page
+        manager.exit(0, VehicleRecord.builder().vehicleId("B").build()).get();
+        assertThat(manager.getParkedVehicleIdPage("F", 3), is(Lists.newArrayList("G")));
+        assertThat(manager.getParkedVehicleIdPage("G", 3).isEmpty(), is(true));
+        manager.close();
+    }
+
+    @Test
+    public void infoShouldBePublishedWithAHigherVersionAfterEveryChange() throws ExecutionException, InterruptedException {
+        ParkingManager manager = new ParkingManager(2, 1, 1, logger);
+        ParkingManagerInfo initial = manager.getInfo();
+        assertThat(initial.getCurrentCapacity(), is(0));
+        assertThat(initial.getCapacityLeft(), is(2));
+
+        manager.enter(0, vehicleRecord).get();
+        ParkingManagerInfo entered = manager.getInfo();
+        assertThat(entered.getVersion() > initial.getVersion(), is(true));
+        assertThat(entered.getMaxCapacity(), is(2));
+        assertThat(entered.getCurrentCapacity(), is(1));
+        assertThat(entered.getCapacityLeft(), is(1));
+
+        manager.exit(0, vehicleRecord).get();
+        ParkingManagerInfo exited = manager.getInfo();
+        assertThat(exited.getVersion() > entered.getVersion(), is(true));
+        assertThat(exited.getCurrentCapacity(), is(0));
+        manager.close();
+    }
 }
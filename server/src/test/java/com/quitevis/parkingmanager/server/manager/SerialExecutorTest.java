@@ -0,0 +1,183 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void tasksShouldRunOneAtATimeInSubmissionOrder() throws InterruptedException {
+        ExecutorService pool = ParkingManager.createGatePool(4);
+        int gates = 1000;
+        int tasksPerGate = 50;
+        List<SerialExecutor> executors = Lists.newArrayList();
+        List<List<Integer>> results = Lists.newArrayList();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        for (int gate = 0; gate < gates; ++gate) {
+            executors.add(new SerialExecutor(pool));
+            results.add(Collections.synchronizedList(Lists.newArrayList()));
+        }
+
+        for (int x = 0; x < tasksPerGate; ++x) {
+            for (int gate = 0; gate < gates; ++gate) {
+                int task = x;
+                List<Integer> result = results.get(gate);
+                executors.get(gate).execute(() -> {
+                    //If another task of the same gate was running, the size would change under our feet
+                    int before = result.size();
+                    result.add(task);
+                    if (result.size() != before + 1) {
+                        overlaps.incrementAndGet();
+                    }
+                });
+            }
+        }
+
+        for (SerialExecutor executor : executors) {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+        }
+
+        assertThat(overlaps.get(), is(0));
+        for (List<Integer> result : results) {
+            assertThat(result.size(), is(tasksPerGate));
+            for (int x = 0; x < tasksPerGate; ++x) {
+                assertThat(result.get(x), is(x));
+            }
+        }
+
+        pool.shutdown();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void executeAfterShutdownShouldBeRejected() {
+        ExecutorService pool = ParkingManager.createGatePool(1);
+        SerialExecutor executor = new SerialExecutor(pool);
+        executor.shutdown();
+
+        try {
+            executor.execute(() -> { });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void executeShouldBeRejectedWhenTheQueueIsFull() throws InterruptedException {
+        ExecutorService pool = ParkingManager.createGatePool(1);
+        SerialExecutor executor = new SerialExecutor(pool, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+
+        //The running task does not count, so two more fit in the queue
+        executor.execute(() -> { });
+        executor.execute(() -> { });
+        assertThat(executor.getQueueDepth(), is(2));
+
+        try {
+            executor.execute(() -> { });
+            fail();
+        } catch (GateOverloadedException e) {
+            assertThat(e.getQueueDepth(), is(2));
+        }
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+        assertThat(executor.getQueueDepth(), is(0));
+        pool.shutdown();
+    }
+
+    @Test
+    public void taskThrowingAnErrorShouldNotStallTheGate() throws InterruptedException {
+        ExecutorService pool = ParkingManager.createGatePool(1);
+        try {
+            SerialExecutor executor = new SerialExecutor(pool);
+            CountDownLatch ran = new CountDownLatch(1);
+            executor.execute(() -> {
+                throw new Error("Thrown by the test");
+            });
+            executor.execute(ran::countDown);
+
+            assertThat(ran.await(10, TimeUnit.SECONDS), is(true));
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void tasksStillQueuedWhenThePoolShutsDownShouldFailTheirFuture() throws Exception {
+        ExecutorService pool = ParkingManager.createGatePool(1);
+        SerialExecutor executor = new SerialExecutor(pool);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<Integer>> futures = Lists.newArrayList();
+        futures.add(executor.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return 0;
+        }));
+        started.await();
+
+        //More than one drain takes, so the gate has to be handed back to the pool, which refuses it by then
+        for (int x = 1; x < 200; ++x) {
+            int task = x;
+            futures.add(executor.submit(() -> task));
+        }
+
+        pool.shutdown();
+        release.countDown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+
+        int ran = 0;
+        int rejected = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            try {
+                assertThat(future.get(10, TimeUnit.SECONDS), is(ran));
+                ran++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+                rejected++;
+            }
+        }
+
+        //The tasks ran in order until the pool refused the gate, and every other one failed
+        assertThat(ran > 0, is(true));
+        assertThat(rejected > 0, is(true));
+        assertThat(ran + rejected, is(200));
+        assertThat(executor.getQueueDepth(), is(0));
+    }
+}
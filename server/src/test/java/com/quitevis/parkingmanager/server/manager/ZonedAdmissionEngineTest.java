@@ -0,0 +1,119 @@
+package com.quitevis.parkingmanager.server.manager;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.model.ZoneInfo;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class ZonedAdmissionEngineTest {
+
+    private ZonedAdmissionEngine createEngine(ZonedAdmissionEngine.SpilloverPolicy spilloverPolicy) {
+        //Gate 0 leads to L1, gate 1 leads to L2
+        return new ZonedAdmissionEngine(
+                Lists.newArrayList(new ParkingZone("L1", 1), new ParkingZone("L2", 2)),
+                ImmutableMap.of(0, 0, 1, 1),
+                spilloverPolicy);
+    }
+
+    private static VehicleRecord vehicle(String vehicleId) {
+        return VehicleRecord.builder().vehicleId(vehicleId).build();
+    }
+
+    @Test
+    public void admitShouldUsePreferredZoneOfTheGate() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT);
+        engine.admit(1, vehicle("A"));
+
+        List<ZoneInfo> zones = engine.getZones();
+        assertThat(zones.get(0).getCurrentCapacity(), is(0));
+        assertThat(zones.get(1).getCurrentCapacity(), is(1));
+        assertThat(engine.getCapacity(), is(3));
+        assertThat(engine.getCapacityLeft(), is(2));
+    }
+
+    @Test
+    public void releaseWithAnotherTicketShouldLeaveTheVehicleInItsZone() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT);
+        UUID ticketId = UUID.randomUUID();
+        engine.admit(0, VehicleRecord.builder().vehicleId("A").ticketId(ticketId).build());
+
+        try {
+            engine.release(vehicle("A"), UUID.randomUUID());
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expect exception, the ticket is from another stay
+        }
+
+        assertThat(engine.getZones().get(0).getCurrentCapacity(), is(1));
+        assertThat(engine.release(vehicle("A"), ticketId).getTicketId(), is(ticketId));
+        assertThat(engine.getZones().get(0).getCurrentCapacity(), is(0));
+    }
+
+    @Test
+    public void admitShouldSpillOverToNextZoneWhenPreferredZoneIsFull() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT);
+        engine.admit(0, vehicle("A"));
+        engine.admit(0, vehicle("B"));
+        engine.admit(0, vehicle("C"));
+
+        List<ZoneInfo> zones = engine.getZones();
+        assertThat(zones.get(0).getCurrentCapacity(), is(1));
+        assertThat(zones.get(1).getCurrentCapacity(), is(2));
+
+        try {
+            engine.admit(0, vehicle("D"));
+            fail();
+        } catch (IllegalStateException e) {
+            //Expect exception, every zone is full
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void admitShouldNotSpillOverWhenPolicyIsNone() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NONE);
+        engine.admit(0, vehicle("A"));
+        engine.admit(0, vehicle("B"));
+    }
+
+    @Test
+    public void admitWithSameVehicleOnAnotherZoneShouldThrowException() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT);
+        engine.admit(0, vehicle("A"));
+
+        try {
+            engine.admit(1, vehicle("A"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expect exception
+        }
+
+        assertThat(engine.getZones().get(1).getCurrentCapacity(), is(0));
+        assertThat(engine.getParkedCount(), is(1));
+    }
+
+    @Test
+    public void releaseShouldGiveTheSlotBackToTheZoneWhereTheVehicleParked() {
+        ZonedAdmissionEngine engine = createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT);
+        engine.admit(0, vehicle("A"));
+        engine.admit(0, vehicle("B"));
+
+        engine.release(vehicle("B"));
+
+        List<ZoneInfo> zones = engine.getZones();
+        assertThat(zones.get(0).getCurrentCapacity(), is(1));
+        assertThat(zones.get(1).getCurrentCapacity(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseWithNoVehicleParkedShouldThrowException() {
+        createEngine(ZonedAdmissionEngine.SpilloverPolicy.NEXT).release(vehicle("A"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.server.manager.ParkingManagerModule;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class BandedTariffTest {
+    private final Tariff tariff = new BandedTariff(Lists.newArrayList(
+            new BandedTariff.Band(LocalTime.of(7, 0), 300),
+            new BandedTariff.Band(LocalTime.MIDNIGHT, 100),
+            new BandedTariff.Band(LocalTime.of(19, 0), 150)), 2000, 15, ZoneOffset.UTC);
+
+    @Test
+    public void feeShouldAddTheBandsTheStayGoesThrough() {
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-10T10:00:00Z"), is(600L));
+        assertThat(fee(tariff, "2026-03-10T06:30:00Z", "2026-03-10T07:30:00Z"), is(200L));
+        assertThat(fee(tariff, "2026-03-10T18:00:00Z", "2026-03-10T20:30:00Z"), is(525L));
+        //The last band runs past midnight until the first one
+        assertThat(fee(tariff, "2026-03-10T23:00:00Z", "2026-03-11T01:00:00Z"), is(250L));
+    }
+
+    @Test
+    public void feeShouldChargeEveryStartedMinuteOnceTheGracePeriodIsOver() {
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-10T08:15:00Z"), is(0L));
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-10T08:16:01Z"), is(85L));
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-10T07:00:00Z"), is(0L));
+
+        //A minute at one dollar an hour is rounded up to the cent
+        Tariff flat = new BandedTariff(Lists.newArrayList(new BandedTariff.Band(LocalTime.NOON, 100)), 0, 0,
+                ZoneOffset.UTC);
+        assertThat(fee(flat, "2026-03-10T08:00:00Z", "2026-03-10T08:01:00Z"), is(2L));
+        assertThat(fee(flat, "2026-03-10T08:00:00Z", "2026-03-13T08:00:00Z"), is(7200L));
+    }
+
+    @Test
+    public void everyDayOfTheStayShouldBeCapped() {
+        //A whole day costs 5050 without the cap
+        assertThat(fee(tariff, "2026-03-10T00:00:00Z", "2026-03-11T00:00:00Z"), is(2000L));
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-13T09:00:00Z"), is(6300L));
+        assertThat(fee(tariff, "2026-03-10T08:00:00Z", "2026-03-13T20:00:00Z"), is(8000L));
+    }
+
+    @Test
+    public void bandsShouldBeReadInTheTimeZoneOfTheLot() {
+        Properties properties = new Properties();
+        properties.setProperty("parking.tariff", ParkingManagerModule.TARIFF_BANDED);
+        properties.setProperty("parking.tariff.bands", "00:00=0, 08:00=600");
+        properties.setProperty("parking.tariff.zone", "Europe/Paris");
+        Tariff paris = ParkingManagerModule.createTariff(properties);
+
+        //08:00 to 09:00 in Paris in the winter, 09:00 to 10:00 in the summer
+        assertThat(fee(paris, "2026-01-10T07:00:00Z", "2026-01-10T08:00:00Z"), is(600L));
+        assertThat(fee(paris, "2026-07-10T05:00:00Z", "2026-07-10T06:00:00Z"), is(0L));
+        assertThat(fee(paris, "2026-07-10T06:00:00Z", "2026-07-10T07:00:00Z"), is(600L));
+
+        Tariff utc = new BandedTariff(Lists.newArrayList(new BandedTariff.Band(LocalTime.MIDNIGHT, 0),
+                new BandedTariff.Band(LocalTime.of(8, 0), 600)), 0, 0, ZoneId.of("UTC"));
+        assertThat(fee(utc, "2026-01-10T07:00:00Z", "2026-01-10T08:00:00Z"), is(0L));
+        assertThat(ParkingManagerModule.createTariff(new Properties()), is(Tariff.FREE));
+    }
+
+    private static long fee(Tariff tariff, String entered, String exited) {
+        return tariff.fee(Instant.parse(entered).toEpochMilli(), Instant.parse(exited).toEpochMilli());
+    }
+}
@@ -0,0 +1,132 @@
+package com.quitevis.parkingmanager.server.tariff;
+
+import com.google.common.collect.Lists;
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.logger.BinaryParkingLogger;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class BillingRunTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("events");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    public void billShouldChargeTheCarsThatExitedDuringTheDay() throws IOException {
+        UUID overnight = UUID.randomUUID();
+        UUID sameDay = UUID.randomUUID();
+        UUID nextDay = UUID.randomUUID();
+        UUID lostEntry = UUID.randomUUID();
+
+        //Small files, so that entries and exits end up in different files
+        try (BinaryParkingLogger logger = new BinaryParkingLogger(directory, 128)) {
+            log(logger, "A", overnight, ParkingLogger.State.PARKED, "2026-03-09T22:00:00Z");
+            log(logger, "X", UUID.randomUUID(), ParkingLogger.State.PARKED, "2026-03-10T00:30:00Z");
+            log(logger, "A", overnight, ParkingLogger.State.EXITED_PARKING, "2026-03-10T08:00:00Z");
+            log(logger, "B", sameDay, ParkingLogger.State.PARKED, "2026-03-10T09:00:00Z");
+            log(logger, "D", null, ParkingLogger.State.EXITED_PARKING, "2026-03-10T09:30:00Z");
+            log(logger, "B", sameDay, ParkingLogger.State.EXITED_PARKING, "2026-03-10T10:00:00Z");
+            log(logger, "E", lostEntry, ParkingLogger.State.EXITED_PARKING, "2026-03-10T10:30:00Z");
+            log(logger, "C", nextDay, ParkingLogger.State.PARKED, "2026-03-10T11:00:00Z");
+            log(logger, "C", nextDay, ParkingLogger.State.EXITED_PARKING, "2026-03-11T01:00:00Z");
+        }
+
+        List<Path> files = files();
+        assertThat(files.size() > 1, is(true));
+
+        //Two cents a minute, all day long
+        Tariff tariff = new BandedTariff(Lists.newArrayList(new BandedTariff.Band(LocalTime.MIDNIGHT, 120)), 0, 0,
+                ZoneOffset.UTC);
+        BillingReport report = new BillingRun(tariff, ZoneOffset.UTC).bill(LocalDate.of(2026, 3, 10), files);
+
+        List<Bill> bills = report.getBills();
+        assertThat(bills.size(), is(2));
+        assertThat(bills.get(0).getTicketId(), is(overnight));
+        assertThat(bills.get(0).getVehicleId(), is("A"));
+        assertThat(bills.get(0).getEnteredEpochMillis(), is(epochMillis("2026-03-09T22:00:00Z")));
+        assertThat(bills.get(0).getFee(), is(1200L));
+        assertThat(bills.get(1).getTicketId(), is(sameDay));
+        assertThat(bills.get(1).getFee(), is(120L));
+        assertThat(report.getUnmatched(), is(2));
+        assertThat(report.getTotal(), is(1320L));
+    }
+
+    @Test
+    public void onlyTheConfigOfASingleLotThatNeverDropsEventsShouldBeBilled() {
+        Properties properties = new Properties();
+        properties.setProperty("parking.logger", "binary");
+        properties.setProperty("parking.logger.overflow", "block");
+        BillingRun.checkServerConfig(properties);
+
+        properties.setProperty("parking.lots.dir", "lots");
+        try {
+            BillingRun.checkServerConfig(properties);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expected, the lots log together without their lot id
+        }
+
+        properties.remove("parking.lots.dir");
+        properties.setProperty("parking.logger.overflow", "drop");
+        try {
+            BillingRun.checkServerConfig(properties);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //Expected, exits may be missing from the logs
+        }
+    }
+
+    private static void log(BinaryParkingLogger logger, String vehicleId, UUID ticketId, ParkingLogger.State state,
+                            String date) {
+        //The gate dates are the times of the events, not the time the logger got them, which would add a minute to
+        //the fees
+        LocalDateTime gateDate = LocalDateTime.ofInstant(Instant.parse(date), ZoneOffset.UTC);
+        VehicleRecord vehicleRecord = VehicleRecord.builder()
+                .vehicleId(vehicleId)
+                .ticketId(ticketId)
+                .dateEntered(state == ParkingLogger.State.PARKED ? gateDate : null)
+                .dateExited(state == ParkingLogger.State.EXITED_PARKING ? gateDate : null)
+                .build();
+        long loggedEpochMillis = epochMillis(date) + (state == ParkingLogger.State.EXITED_PARKING ? 59000 : 0);
+        assertThat(logger.log(vehicleRecord, state, loggedEpochMillis * 1000), is(true));
+    }
+
+    private static long epochMillis(String date) {
+        return Instant.parse(date).toEpochMilli();
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
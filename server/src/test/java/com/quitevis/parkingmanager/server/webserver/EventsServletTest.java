@@ -0,0 +1,96 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+
+public class EventsServletTest {
+    private ParkingManager parkingManager;
+    private OccupancyBroadcaster broadcaster;
+    private Server server;
+    private HttpURLConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        parkingManager = new ParkingManager(10, 1, 1, mock(ParkingLogger.class));
+        broadcaster = new OccupancyBroadcaster(parkingManager, 10);
+        broadcaster.start();
+
+        ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        handler.setContextPath("/rest");
+        handler.addServlet(WebServer.asyncHolder(new EventsServlet(broadcaster)), "/events");
+        server = new Server(0);
+        server.setHandler(handler);
+        server.start();
+
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        connection = (HttpURLConnection) new URL("http://localhost:" + port + "/rest/events").openConnection();
+        connection.setReadTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.disconnect();
+        server.stop();
+        broadcaster.close();
+        parkingManager.close();
+    }
+
+    @Test
+    public void changesShouldBeStreamedAsServerSentEvents() throws IOException {
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getContentType().startsWith("text/event-stream"), is(true));
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String first = readEvent(reader);
+            assertThat(first.startsWith("retry: 2000\nid: "), is(true));
+            assertThat(first.contains("event: occupancy\n"), is(true));
+            assertThat(first.contains("\"currentCapacity\":0"), is(true));
+            assertThat(broadcaster.getSubscriberCount(), is(1));
+
+            parkingManager.enter(0, VehicleRecord.builder().vehicleId("A").build()).join();
+            boolean occupancy = false;
+            boolean flow = false;
+            while (!occupancy || !flow) {
+                String event = readEvent(reader);
+                occupancy |= event.contains("event: occupancy\n") && event.contains("\"currentCapacity\":1");
+                flow |= event.contains("event: flow\ndata: {\"entered\":1,\"exited\":0}");
+            }
+        }
+    }
+
+    /**
+     * Reads the lines up to the blank line that ends an event. Fails on the read timeout if no event comes.
+     */
+    private static String readEvent(BufferedReader reader) throws IOException {
+        StringBuilder event = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            event.append(line).append('\n');
+        }
+
+        if (line == null) {
+            throw new IOException("The stream ended");
+        }
+
+        return event.toString();
+    }
+}
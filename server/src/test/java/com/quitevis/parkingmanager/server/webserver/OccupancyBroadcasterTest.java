@@ -0,0 +1,157 @@
+package com.quitevis.parkingmanager.server.webserver;
+
+import com.quitevis.parkingmanager.model.VehicleRecord;
+import com.quitevis.parkingmanager.server.logger.ParkingLogger;
+import com.quitevis.parkingmanager.server.manager.ParkingManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OccupancyBroadcasterTest {
+    private ParkingManager parkingManager;
+    private OccupancyBroadcaster broadcaster;
+    private AsyncContext context;
+    private CountDownLatch completed;
+    private FakeOutputStream output;
+
+    @Before
+    public void setUp() {
+        parkingManager = new ParkingManager(1, 1, 1, mock(ParkingLogger.class));
+        broadcaster = new OccupancyBroadcaster(parkingManager, 1);
+        context = mock(AsyncContext.class);
+        completed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            completed.countDown();
+            return null;
+        }).when(context).complete();
+        output = new FakeOutputStream();
+    }
+
+    @After
+    public void tearDown() {
+        broadcaster.close();
+        parkingManager.close();
+    }
+
+    @Test
+    public void nothingShouldBeWrittenBeforeTheOutputIsReady() throws IOException {
+        subscribe();
+        assertThat(output.written(), is(""));
+        assertThat(broadcaster.getSubscriberCount(), is(1));
+
+        output.writeListener.onWritePossible();
+        assertThat(output.written().startsWith("retry: 2000\nid: "), is(true));
+        assertThat(output.written().contains("event: occupancy\ndata: {"), is(true));
+        assertThat(output.flushCount, is(1));
+    }
+
+    @Test
+    public void eventsShouldWaitForTheConnectionInsteadOfBlocking() throws IOException, InterruptedException {
+        output.ready = false;
+        subscribe();
+        output.writeListener.onWritePossible();
+        broadcaster.start();
+
+        parkingManager.enter(0, VehicleRecord.builder().vehicleId("A").build()).join();
+        //Give the broadcaster a few periods to queue the events while the connection is busy
+        Thread.sleep(50);
+        assertThat(output.written(), is(""));
+
+        output.ready = true;
+        output.writeListener.onWritePossible();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!output.written().contains("event: flow\ndata: {\"entered\":1,\"exited\":0}")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertThat(output.written().startsWith("retry: 2000\n"), is(true));
+        assertThat(output.written().contains("event: flow\ndata: {\"entered\":1,\"exited\":0}"), is(true));
+        verify(context, never()).complete();
+    }
+
+    @Test
+    public void subscriberTooFarBehindShouldBeDisconnected() throws IOException, InterruptedException {
+        output.ready = false;
+        subscribe();
+        output.writeListener.onWritePossible();
+        broadcaster.start();
+
+        //Every change of the lot is an event the subscriber cannot take
+        VehicleRecord vehicleRecord = VehicleRecord.builder().vehicleId("A").build();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!completed.await(1, TimeUnit.MILLISECONDS) && System.currentTimeMillis() < deadline) {
+            parkingManager.enter(0, vehicleRecord).join();
+            parkingManager.exit(0, vehicleRecord).join();
+        }
+
+        assertThat(completed.getCount(), is(0L));
+        assertThat(broadcaster.getSubscriberCount(), is(0));
+        assertThat(output.written(), is(""));
+    }
+
+    private void subscribe() throws IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.startAsync()).thenReturn(context);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(output);
+        broadcaster.subscribe(request, response);
+    }
+
+    /**
+     * Output that takes writes only while it is ready, like a non-blocking connection
+     */
+    private static final class FakeOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private volatile boolean ready = true;
+        private volatile WriteListener writeListener;
+        private volatile int flushCount;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.writeListener = writeListener;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (!ready) {
+                throw new IllegalStateException("Written while not ready");
+            }
+
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void flush() {
+            ++flushCount;
+        }
+
+        private synchronized String written() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}